@@ -36,6 +36,8 @@ import wtf.choco.dragoneggdrop.listeners.DragonLifeListeners;
 import wtf.choco.dragoneggdrop.listeners.LootListeners;
 import wtf.choco.dragoneggdrop.listeners.PortalClickListener;
 import wtf.choco.dragoneggdrop.listeners.RespawnListeners;
+import wtf.choco.dragoneggdrop.particle.ParticleDetailController;
+import wtf.choco.dragoneggdrop.particle.ParticleSessionManager;
 import wtf.choco.dragoneggdrop.particle.ParticleShapeDefinition;
 import wtf.choco.dragoneggdrop.particle.condition.ConditionFactory;
 import wtf.choco.dragoneggdrop.placeholder.DragonEggDropPlaceholders;
@@ -64,6 +66,8 @@ public final class DragonEggDrop extends JavaPlugin {
     private DragonTemplateRegistry dragonTemplateRegistry = new DragonTemplateRegistry();
     private Registry<@NotNull DragonLootTable> lootTableRegistry = new HashRegistry<>();
     private Registry<@NotNull ParticleShapeDefinition> particleShapeDefinitionRegistry = new HashRegistry<>();
+    private ParticleDetailController particleDetailController = new ParticleDetailController(this);
+    private ParticleSessionManager particleSessionManager = new ParticleSessionManager(this, particleDetailController);
 
     private BukkitTask updateTask;
     private File tempDataFile;
@@ -154,6 +158,8 @@ public final class DragonEggDrop extends JavaPlugin {
             this.updateTask.cancel();
         }
 
+        this.particleSessionManager.clear();
+
         try {
             DataFileUtils.writeTempData(tempDataFile);
         } catch (IOException e) {
@@ -202,6 +208,26 @@ public final class DragonEggDrop extends JavaPlugin {
         return particleShapeDefinitionRegistry;
     }
 
+    /**
+     * Get the controller adapting the detail of particle animations to the server's load.
+     *
+     * @return the particle detail controller
+     */
+    @NotNull
+    public ParticleDetailController getParticleDetailController() {
+        return particleDetailController;
+    }
+
+    /**
+     * Get the manager by which all particle animations are ticked.
+     *
+     * @return the particle session manager
+     */
+    @NotNull
+    public ParticleSessionManager getParticleSessionManager() {
+        return particleSessionManager;
+    }
+
     /**
      * Get the directory in which dragon templates are located.
      *
@@ -16,6 +16,7 @@ import wtf.choco.commons.util.UpdateChecker;
 import wtf.choco.commons.util.UpdateChecker.UpdateReason;
 import wtf.choco.commons.util.UpdateChecker.UpdateResult;
 import wtf.choco.dragoneggdrop.DragonEggDrop;
+import wtf.choco.dragoneggdrop.dragon.DamageHistory;
 import wtf.choco.dragoneggdrop.utils.DEDConstants;
 import wtf.choco.dragoneggdrop.utils.DataFileUtils;
 
@@ -50,6 +51,10 @@ public final class CommandDragonEggDrop implements TabExecutor {
                 }
             }
 
+            if (sender.isOp()) {
+                sender.sendMessage(ChatColor.GRAY + "Damage histories: " + ChatColor.YELLOW + DamageHistory.getLiveHistoryCount() + ChatColor.GRAY + " (~" + ChatColor.YELLOW + (DamageHistory.getLiveHistoryEstimatedBytes() / 1024) + " KB" + ChatColor.GRAY + ")");
+            }
+
             sender.sendMessage("");
             sender.sendMessage(ChatColor.GOLD + "" + ChatColor.BOLD + ChatColor.STRIKETHROUGH + "--------------------------------------------");
             return true;
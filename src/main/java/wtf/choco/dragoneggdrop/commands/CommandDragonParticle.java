@@ -3,8 +3,12 @@ package wtf.choco.dragoneggdrop.commands;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.math.NumberUtils;
 import org.bukkit.Bukkit;
@@ -16,16 +20,28 @@ import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabExecutor;
 import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.util.StringUtil;
 import org.jetbrains.annotations.NotNull;
 
 import wtf.choco.dragoneggdrop.DragonEggDrop;
 import wtf.choco.dragoneggdrop.particle.AnimatedParticleSession;
+import wtf.choco.dragoneggdrop.particle.ParticleRendererBenchmark;
+import wtf.choco.dragoneggdrop.particle.ParticleSessionManager;
+import wtf.choco.dragoneggdrop.particle.ParticleShapeCost;
 import wtf.choco.dragoneggdrop.particle.ParticleShapeDefinition;
 
 public final class CommandDragonParticle implements TabExecutor {
 
-    // /dragonparticle <particle> [x y z] [world] [startY]
+    // /dragonparticle <particle> [x y z] [world] [startY] [seed]
+    // /dragonparticle <particle> info
+    // /dragonparticle <particle> benchmark
+
+    private static final int BENCHMARK_MAX_FRAMES = 2000;
+    private static final long BENCHMARK_NANOS_PER_TICK = TimeUnit.MILLISECONDS.toNanos(10);
+
+    // Shapes currently being benchmarked. Concurrent benchmarks of the same shape would invalidate each other's frame cache
+    private final Set<@NotNull String> benchmarkingShapes = new HashSet<>();
 
     private final DragonEggDrop plugin;
 
@@ -35,11 +51,6 @@ public final class CommandDragonParticle implements TabExecutor {
 
     @Override
     public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, String @NotNull [] args) {
-        if (!(sender instanceof Player)) {
-            sender.sendMessage("Only players may use this command. You can't see particles from the console, silly");
-            return true;
-        }
-
         if (args.length < 1) {
             DragonEggDrop.sendMessage(sender, "Missing arguments... " + ChatColor.YELLOW + "/" + label + " <particle>");
             return true;
@@ -51,9 +62,58 @@ public final class CommandDragonParticle implements TabExecutor {
             return true;
         }
 
+        if (args.length == 2 && args[1].equalsIgnoreCase("info")) {
+            ParticleShapeCost cost = particleShapeDefinition.getCost();
+
+            DragonEggDrop.sendMessage(sender, "Estimated cost of particle shape " + ChatColor.YELLOW + particleShapeDefinition.getId() + ChatColor.GRAY + ":");
+            sender.sendMessage(ChatColor.GRAY + " Expressions: " + ChatColor.AQUA + cost.getExpressionNodes() + " nodes " + ChatColor.GRAY + "(depth " + ChatColor.AQUA + cost.getExpressionDepth() + ChatColor.GRAY + ")");
+            sender.sendMessage(ChatColor.GRAY + " Evaluations per tick: " + ChatColor.AQUA + String.format("%.1f", cost.getEvaluationsPerTick()));
+            sender.sendMessage(ChatColor.GRAY + " Particles per second: " + ChatColor.AQUA + String.format("%.0f", cost.getParticlesPerSecond()));
+            sender.sendMessage(ChatColor.GRAY + " Total frames: " + ChatColor.AQUA + cost.getTotalFrames() + ChatColor.GRAY + " (from y = " + particleShapeDefinition.getStartY() + ")");
+            sender.sendMessage(ChatColor.GRAY + " Renderer: " + ChatColor.AQUA + particleShapeDefinition.getRenderer().getName());
+            sender.sendMessage(ChatColor.GRAY + " Cached frames: " + (particleShapeDefinition.isCachingFrames() ? ChatColor.GREEN + "yes" : ChatColor.RED + "no"));
+            return true;
+        }
+
+        if (!(sender instanceof Player)) {
+            sender.sendMessage("Only players may use this command. You can't see particles from the console, silly");
+            return true;
+        }
+
         Player player = (Player) sender;
         Location endLocation = player.getLocation();
 
+        if (args.length == 2 && args[1].equalsIgnoreCase("benchmark")) {
+            String shapeId = particleShapeDefinition.getId();
+            if (!benchmarkingShapes.add(shapeId)) {
+                DragonEggDrop.sendMessage(player, ChatColor.RED + "Particle shape " + ChatColor.YELLOW + shapeId + ChatColor.RED + " is already being benchmarked");
+                return true;
+            }
+
+            World world = player.getWorld();
+            ParticleRendererBenchmark benchmark = new ParticleRendererBenchmark(particleShapeDefinition, world, endLocation.getX(), particleShapeDefinition.getStartY(), endLocation.getZ(), 0L, BENCHMARK_MAX_FRAMES);
+
+            // Spread over as many ticks as required such that large shapes do not stall the server
+            DragonEggDrop.sendMessage(player, "Benchmarking renderers of particle shape " + ChatColor.YELLOW + shapeId + ChatColor.GRAY + "...");
+            new BukkitRunnable() {
+                @Override
+                public void run() {
+                    if (!benchmark.step(BENCHMARK_NANOS_PER_TICK)) {
+                        return;
+                    }
+
+                    this.cancel();
+                    benchmarkingShapes.remove(shapeId);
+
+                    if (player.isOnline()) {
+                        sendBenchmarkResults(player, shapeId, benchmark);
+                    }
+                }
+            }.runTaskTimer(plugin, 0L, 1L);
+
+            return true;
+        }
+
         // Specify an end location
         if (args.length >= 2) {
             if (args.length < 4 || !NumberUtils.isNumber(args[1]) || !NumberUtils.isNumber(args[2]) || !NumberUtils.isNumber(args[3])) {
@@ -84,20 +144,28 @@ public final class CommandDragonParticle implements TabExecutor {
             return true;
         }
 
+        long seed = ThreadLocalRandom.current().nextLong();
+        if (args.length >= 7) {
+            try {
+                seed = Long.parseLong(args[6]);
+            } catch (NumberFormatException e) {
+                DragonEggDrop.sendMessage(player, ChatColor.RED + "Invalid seed, " + ChatColor.YELLOW + args[6]);
+                return true;
+            }
+        }
+
         Location finalEndLocation = endLocation;
         World endLocationWorld = endLocation.getWorld();
         assert endLocationWorld != null; // Theoretically impossible
 
-        AnimatedParticleSession particleSession = particleShapeDefinition.createSession(endLocationWorld, endLocation.getX(), startY, endLocation.getZ());
+        AnimatedParticleSession particleSession = particleShapeDefinition.createSession(endLocationWorld, endLocation.getX(), startY, endLocation.getZ(), seed);
 
-        Bukkit.getScheduler().runTaskTimer(plugin, task -> {
-            particleSession.tick();
-
-            if (particleSession.shouldStop() || particleSession.getCurrentLocation().getY() < finalEndLocation.getY()) {
-                DragonEggDrop.sendMessage(player, ChatColor.GREEN + "Done! " + ChatColor.GRAY + "(" + ChatColor.YELLOW + particleShapeDefinition.getId() + ChatColor.GRAY + ")");
-                task.cancel();
-            }
-        }, 0L, 1L);
+        this.plugin.getParticleSessionManager().start(particleSession, ParticleSessionManager.Priority.PREVIEW,
+                session -> session.shouldStop() || session.getCurrentLocation().getY() < finalEndLocation.getY(),
+                session -> {
+                    String merged = (session.getMergedEmissions() > 0) ? ", " + ChatColor.AQUA + session.getMergedEmissions() + ChatColor.GRAY + " emissions merged" : "";
+                    DragonEggDrop.sendMessage(player, ChatColor.GREEN + "Done! " + ChatColor.GRAY + "(" + ChatColor.YELLOW + particleShapeDefinition.getId() + ChatColor.GRAY + merged + ")");
+                });
 
         String suffix = "";
         if (!endLocation.equals(player.getLocation())) {
@@ -107,12 +175,23 @@ public final class CommandDragonParticle implements TabExecutor {
                 suffix += ChatColor.GRAY + " in world " + ChatColor.GREEN + endLocationWorld.getName();
             }
         }
-        suffix += ChatColor.GRAY + ".";
+        suffix += ChatColor.GRAY + " (seed " + ChatColor.YELLOW + seed + ChatColor.GRAY + ").";
 
         DragonEggDrop.sendMessage(player, "Playing particle animation " + ChatColor.YELLOW + particleShapeDefinition.getId() + suffix);
         return true;
     }
 
+    private void sendBenchmarkResults(@NotNull Player player, @NotNull String shapeId, @NotNull ParticleRendererBenchmark benchmark) {
+        List<ParticleRendererBenchmark.Result> results = benchmark.getResults();
+        long referenceChecksum = results.get(0).getChecksum();
+
+        DragonEggDrop.sendMessage(player, "Renderer benchmark of particle shape " + ChatColor.YELLOW + shapeId + ChatColor.GRAY + " (" + results.get(0).getFrames() + " frames):");
+        for (ParticleRendererBenchmark.Result result : results) {
+            String matches = !benchmark.isComparable() ? ChatColor.GRAY + "n/a" : (result.getChecksum() == referenceChecksum ? ChatColor.GREEN + "yes" : ChatColor.RED + "no");
+            player.sendMessage(ChatColor.GRAY + " " + result.getName() + ": " + ChatColor.AQUA + String.format("%.0f", result.getNanosPerFrame()) + " ns/frame" + ChatColor.GRAY + ", " + ChatColor.AQUA + result.getEvaluations() + ChatColor.GRAY + " evaluations, matches: " + matches);
+        }
+    }
+
     @NotNull
     @Override
     @SuppressWarnings("null") // Eclipse weirdness
@@ -129,13 +208,20 @@ public final class CommandDragonParticle implements TabExecutor {
             return suggestions;
         }
 
+        else if (args.length == 2 && !args[1].isEmpty() && ("info".startsWith(args[1].toLowerCase()) || "benchmark".startsWith(args[1].toLowerCase()))) {
+            return StringUtil.copyPartialMatches(args[1].toLowerCase(), Arrays.asList("info", "benchmark"), new ArrayList<>());
+        }
+
         // Target block completion
         else if (args.length >= 2 && args.length < 6 && sender instanceof Player) {
             Player player = (Player) sender;
             Block target = player.getTargetBlockExact(6);
 
             if (target == null) {
-                if (args.length >= 2 && args.length < 5 && args[1].isEmpty()) {
+                if (args.length == 2 && args[1].isEmpty()) {
+                    return Arrays.asList("[x y z]", "info", "benchmark");
+                }
+                else if (args.length >= 2 && args.length < 5 && args[1].isEmpty()) {
                     return Arrays.asList("[x y z]");
                 }
                 else if (args.length >= 5 && args[4].isEmpty()) {
@@ -157,7 +243,7 @@ public final class CommandDragonParticle implements TabExecutor {
 
             // Switch expressions please :((
             switch (args.length) {
-                case 2: return StringUtil.copyPartialMatches(args[1], Arrays.asList(String.valueOf(target.getX())), new ArrayList<>());
+                case 2: return StringUtil.copyPartialMatches(args[1], Arrays.asList(String.valueOf(target.getX()), "info", "benchmark"), new ArrayList<>());
                 case 3: return StringUtil.copyPartialMatches(args[2], Arrays.asList(String.valueOf(target.getY())), new ArrayList<>());
                 case 4: return StringUtil.copyPartialMatches(args[3], Arrays.asList(String.valueOf(target.getZ())), new ArrayList<>());
                 case 5:
@@ -170,6 +256,10 @@ public final class CommandDragonParticle implements TabExecutor {
             return Arrays.asList("[startY]");
         }
 
+        else if (args.length == 7 && args[6].isEmpty()) {
+            return Arrays.asList("[seed]");
+        }
+
         return Collections.emptyList();
     }
 
@@ -5,21 +5,20 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Deque;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.UUID;
 
 import org.bukkit.Bukkit;
+import org.bukkit.World;
 import org.bukkit.entity.Entity;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import wtf.choco.dragoneggdrop.DragonEggDrop;
+import wtf.choco.dragoneggdrop.utils.DEDConstants;
 import wtf.choco.dragoneggdrop.utils.JsonUtils;
 
 /**
@@ -31,12 +30,57 @@ public final class DamageHistory {
 
     private static final Map<@NotNull UUID, @NotNull DamageHistory> ENTITY_DAMAGE_HISTORY = new HashMap<>();
 
+    // The amount of time buckets after which the bucket width is doubled, such that aggregates never exceed this many per damager
+    private static final int MAX_BUCKETS = 64;
+
+    // A rough estimate of the size of a history's fields and array headers, excluding array elements
+    private static final int BASE_BYTES = 256;
+
+    // The timestamp of logged damage whose time is not known, deserialized from records predating timestamps
+    private static final long UNKNOWN_TIMESTAMP = Long.MIN_VALUE;
+
     private final UUID entityUUID;
-    private final Map<@NotNull UUID, @NotNull Double> totalDamage = new HashMap<>();
-    private final Deque<@NotNull DamageEntry> damageHistory = new ArrayDeque<>();
+    private UUID worldUUID;
+
+    private final DamageLog log;
+
+    // Damage evicted from the log, folded into aggregates per source and time bucket. Aggregates are ordered by bucket
+    private long[] aggregateMostBits = new long[0], aggregateLeastBits = new long[0];
+    private int[] aggregateBucket = new int[0];
+    private double[] aggregateDamage = new double[0];
+    private int aggregateCount = 0;
+    private long bucketOrigin = Long.MIN_VALUE;
+    private long bucketMillis;
+    private final long baseBucketMillis;
+
+    // Damagers are stored in parallel arrays in the order in which they first dealt damage. They are looked up by the bits of
+    // their UUID in an open addressed table of damager indices + 1, such that no objects are allocated when recording damage
+    private long[] damagerMostBits = new long[8], damagerLeastBits = new long[8];
+    private double[] damagerTotal = new double[8];
+    private int[] damagerRank = new int[8];
+    private int damagerCount = 0;
+    private int[] damagerTable = new int[16];
+
+    // Damager indices ordered by total damage (most first), kept sorted as damage is recorded
+    private int[] ranking = new int[8];
 
-    private DamageHistory(@NotNull UUID entityUUID) {
+    /**
+     * Construct a new {@link DamageHistory} independent of the plugin's configuration.
+     *
+     * @param entityUUID the UUID of the entity to which the history belongs
+     * @param maxLogSize the maximum amount of recent hits to log. If negative, the log is unbounded
+     * @param bucketMillis the initial width (in milliseconds) of the time buckets into which
+     * damage evicted from the log is aggregated
+     */
+    DamageHistory(@NotNull UUID entityUUID, int maxLogSize, long bucketMillis) {
         this.entityUUID = entityUUID;
+        this.log = new DamageLog(maxLogSize);
+        this.bucketMillis = Math.max(bucketMillis, 1);
+        this.baseBucketMillis = this.bucketMillis;
+    }
+
+    private DamageHistory(@NotNull UUID entityUUID) {
+        this(entityUUID, getConfiguredRecentEntries(), getConfiguredBucketMillis());
     }
 
     /**
@@ -85,7 +129,8 @@ public final class DamageHistory {
      * @return the amount of damage caused by the entity
      */
     public double getTotalDamageFrom(@NotNull UUID uuid) {
-        return (uuid != null && totalDamage.containsKey(uuid)) ? totalDamage.get(uuid) : 0.0;
+        int damager = (uuid != null) ? findDamager(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) : -1;
+        return (damager >= 0) ? damagerTotal[damager] : 0.0;
     }
 
     /**
@@ -96,11 +141,7 @@ public final class DamageHistory {
      */
     @Nullable
     public DamageEntry getTopDamager() {
-        if (totalDamage.isEmpty()) {
-            return null;
-        }
-
-        return totalDamage.entrySet().stream().sorted(Map.Entry.comparingByValue((v1, v2) -> -v1.compareTo(v2))).findFirst().map(DamageEntry::new).get();
+        return (damagerCount > 0) ? toEntry(ranking[0]) : null;
     }
 
     /**
@@ -115,17 +156,15 @@ public final class DamageHistory {
      */
     @Nullable
     public DamageEntry getTopDamager(int offset) {
-        if (totalDamage.isEmpty()) {
+        if (damagerCount == 0) {
             return null;
         }
 
-        if (offset >= totalDamage.size()) {
-            throw new IllegalArgumentException("Tried to get top damager at unavailable offset (damagers recorded = " + totalDamage.size() + ")");
+        if (offset >= damagerCount) {
+            throw new IllegalArgumentException("Tried to get top damager at unavailable offset (damagers recorded = " + damagerCount + ")");
         }
 
-        List<Entry<UUID, Double>> entries = new ArrayList<>(totalDamage.entrySet());
-        entries.sort(Map.Entry.comparingByValue((v1, v2) -> -v1.compareTo(v2)));
-        return new DamageEntry(entries.get(offset));
+        return toEntry(ranking[offset]);
     }
 
     /**
@@ -146,19 +185,8 @@ public final class DamageHistory {
         Preconditions.checkArgument(amount > 0, "Invalid history amount. Must be > 0");
         DamageEntry[] topDamagers = new DamageEntry[amount];
 
-        if (totalDamage.isEmpty()) {
-            return topDamagers;
-        }
-
-        List<Entry<UUID, Double>> entries = new ArrayList<>(totalDamage.entrySet());
-        entries.sort(Map.Entry.comparingByValue((v1, v2) -> -v1.compareTo(v2)));
-
-        for (int i = 0; i < amount; i++) {
-            if (i >= entries.size()) {
-                break;
-            }
-
-            topDamagers[i] = new DamageEntry(entries.get(i));
+        for (int i = 0; i < amount && i < damagerCount; i++) {
+            topDamagers[i] = toEntry(ranking[i]);
         }
 
         return topDamagers;
@@ -171,11 +199,194 @@ public final class DamageHistory {
      * @param damage the damage to record
      */
     public void recordDamage(@NotNull UUID source, double damage) {
+        this.recordDamage(source, damage, System.currentTimeMillis());
+    }
+
+    /**
+     * Record damage to this history at the given time. Damage must be recorded in
+     * chronological order.
+     *
+     * @param source the UUID of the damage's source entity
+     * @param damage the damage to record
+     * @param timestamp the time at which the damage was dealt, in milliseconds since the epoch
+     */
+    void recordDamage(@NotNull UUID source, double damage, long timestamp) {
         Preconditions.checkArgument(source != null, "source must not be null");
         Preconditions.checkArgument(damage > 0.0, "damage must be greater than 0");
 
-        this.totalDamage.merge(source, damage, Double::sum);
-        this.damageHistory.push(new DamageEntry(source, damage));
+        long mostBits = source.getMostSignificantBits(), leastBits = source.getLeastSignificantBits();
+        this.addTotalDamage(mostBits, leastBits, damage);
+        this.log(mostBits, leastBits, damage, timestamp);
+    }
+
+    private void addTotalDamage(long mostBits, long leastBits, double damage) {
+        int damager = findDamager(mostBits, leastBits);
+        if (damager < 0) {
+            damager = addDamager(mostBits, leastBits);
+        }
+
+        this.damagerTotal[damager] += damage;
+        this.promote(damager);
+    }
+
+    private void log(long mostBits, long leastBits, double damage, long timestamp) {
+        if (log.isFull()) {
+            if (log.size() == 0) { // Nothing is logged at all
+                this.aggregate(mostBits, leastBits, damage, timestamp);
+                return;
+            }
+
+            int oldest = log.size() - 1;
+            this.aggregate(log.getMostBits(oldest), log.getLeastBits(oldest), log.getDamage(oldest), log.getTimestamp(oldest));
+            this.log.removeOldest();
+        }
+
+        this.log.append(timestamp, mostBits, leastBits, damage);
+    }
+
+    // Damage is aggregated in chronological order, so only the aggregates of the last bucket may need to be added to
+    private void aggregate(long mostBits, long leastBits, double damage, long timestamp) {
+        if (timestamp == UNKNOWN_TIMESTAMP) { // Only accounted for by the damager's total damage
+            return;
+        }
+
+        if (bucketOrigin == Long.MIN_VALUE) {
+            this.bucketOrigin = timestamp;
+        }
+
+        int bucket;
+        while ((bucket = getBucket(timestamp)) >= MAX_BUCKETS) {
+            this.coalesceBuckets();
+        }
+
+        this.addAggregate(mostBits, leastBits, bucket, damage);
+    }
+
+    // Timestamps preceding the last bucket (i.e. if the clock was turned back) are counted towards the last bucket
+    private int getBucket(long timestamp) {
+        int lastBucket = (aggregateCount > 0) ? aggregateBucket[aggregateCount - 1] : 0;
+        return (int) Math.max(Math.min((timestamp - bucketOrigin) / bucketMillis, Integer.MAX_VALUE), lastBucket);
+    }
+
+    private void addAggregate(long mostBits, long leastBits, int bucket, double damage) {
+        for (int i = aggregateCount - 1; i >= 0 && aggregateBucket[i] == bucket; i--) {
+            if (aggregateMostBits[i] == mostBits && aggregateLeastBits[i] == leastBits) {
+                this.aggregateDamage[i] += damage;
+                return;
+            }
+        }
+
+        if (aggregateCount == aggregateDamage.length) {
+            int capacity = Math.max(aggregateCount * 2, 16);
+            this.aggregateMostBits = Arrays.copyOf(aggregateMostBits, capacity);
+            this.aggregateLeastBits = Arrays.copyOf(aggregateLeastBits, capacity);
+            this.aggregateBucket = Arrays.copyOf(aggregateBucket, capacity);
+            this.aggregateDamage = Arrays.copyOf(aggregateDamage, capacity);
+        }
+
+        this.aggregateMostBits[aggregateCount] = mostBits;
+        this.aggregateLeastBits[aggregateCount] = leastBits;
+        this.aggregateBucket[aggregateCount] = bucket;
+        this.aggregateDamage[aggregateCount++] = damage;
+    }
+
+    // Doubles the bucket width, merging the aggregates of each pair of buckets
+    private void coalesceBuckets() {
+        int count = aggregateCount;
+        this.aggregateCount = 0;
+        this.bucketMillis *= 2;
+
+        // Aggregates are only ever moved towards the front, so they are merged in place
+        for (int i = 0; i < count; i++) {
+            this.addAggregate(aggregateMostBits[i], aggregateLeastBits[i], aggregateBucket[i] / 2, aggregateDamage[i]);
+        }
+    }
+
+    private int findDamager(long mostBits, long leastBits) {
+        int mask = damagerTable.length - 1;
+
+        for (int slot = hashDamager(mostBits, leastBits) & mask; damagerTable[slot] != 0; slot = (slot + 1) & mask) {
+            int damager = damagerTable[slot] - 1;
+            if (damagerMostBits[damager] == mostBits && damagerLeastBits[damager] == leastBits) {
+                return damager;
+            }
+        }
+
+        return -1;
+    }
+
+    // New damagers have dealt no damage yet, and are therefore ranked last
+    private int addDamager(long mostBits, long leastBits) {
+        if (damagerCount == damagerTotal.length) {
+            int capacity = Math.max(Integer.highestOneBit(damagerCount) * 2, 8); // Compacted arrays may not be a power of two
+            this.damagerMostBits = Arrays.copyOf(damagerMostBits, capacity);
+            this.damagerLeastBits = Arrays.copyOf(damagerLeastBits, capacity);
+            this.damagerTotal = Arrays.copyOf(damagerTotal, capacity);
+            this.damagerRank = Arrays.copyOf(damagerRank, capacity);
+            this.ranking = Arrays.copyOf(ranking, capacity);
+
+            // The table is kept at most half full
+            this.damagerTable = new int[capacity * 2];
+            for (int i = 0; i < damagerCount; i++) {
+                this.insertDamager(i);
+            }
+        }
+
+        int damager = damagerCount++;
+        this.damagerMostBits[damager] = mostBits;
+        this.damagerLeastBits[damager] = leastBits;
+        this.damagerTotal[damager] = 0.0;
+        this.damagerRank[damager] = damager;
+        this.ranking[damager] = damager;
+        this.insertDamager(damager);
+        return damager;
+    }
+
+    private void insertDamager(int damager) {
+        int mask = damagerTable.length - 1;
+        int slot = hashDamager(damagerMostBits[damager], damagerLeastBits[damager]) & mask;
+
+        while (damagerTable[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+
+        this.damagerTable[slot] = damager + 1;
+    }
+
+    // Damage only ever increases, so a damager can only ever move up the ranking. Ties keep the damager that reached the total first
+    private void promote(int damager) {
+        double total = damagerTotal[damager];
+        int rank = damagerRank[damager];
+        int low = 0, high = rank;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (damagerTotal[ranking[middle]] >= total) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        if (low == rank) {
+            return;
+        }
+
+        System.arraycopy(ranking, low, ranking, low + 1, rank - low);
+        this.ranking[low] = damager;
+
+        for (int i = low; i <= rank; i++) {
+            this.damagerRank[ranking[i]] = i;
+        }
+    }
+
+    @NotNull
+    private DamageEntry toLogEntry(int offset) {
+        return new DamageEntry(new UUID(log.getMostBits(offset), log.getLeastBits(offset)), log.getDamage(offset));
+    }
+
+    @NotNull
+    private DamageEntry toEntry(int damager) {
+        return new DamageEntry(new UUID(damagerMostBits[damager], damagerLeastBits[damager]), damagerTotal[damager]);
     }
 
     /**
@@ -195,7 +406,7 @@ public final class DamageHistory {
      */
     @Nullable
     public DamageEntry getMostRecentDamage() {
-        return damageHistory.peek();
+        return (log.size() > 0) ? toLogEntry(0) : null;
     }
 
     /**
@@ -210,32 +421,66 @@ public final class DamageHistory {
      */
     @Nullable
     public DamageEntry getMostRecentDamage(int offset) {
-        if (offset >= damageHistory.size()) {
-            throw new IllegalArgumentException("Tried to get recent damage at unavailable offset (oldest damage recorded = " + damageHistory.size() + ")");
+        if (offset >= log.size()) {
+            throw new IllegalArgumentException("Tried to get recent damage at unavailable offset (oldest damage recorded = " + log.size() + ")");
         }
 
-        if (offset == 0) { // Save unnecessary Iterator creation and just peek at the top value
-            return getMostRecentDamage();
+        return toLogEntry(offset);
+    }
+
+    /**
+     * Get the total amount of damage caused by the specified entity's UUID at or after the
+     * given time. Damage older than the most recent {@link #size()} entries is only known
+     * per time bucket, and is counted if its bucket ends after the given time. Damage whose
+     * time is not known (deserialized from records predating timestamps) is only counted if
+     * the given time is {@link Long#MIN_VALUE}.
+     *
+     * @param uuid the UUID of the entity whose damage to retrieve
+     * @param since the time (in milliseconds since the epoch) from which to count damage
+     *
+     * @return the amount of damage caused by the entity since the given time
+     */
+    public double getTotalDamageFrom(@NotNull UUID uuid, long since) {
+        Preconditions.checkArgument(uuid != null, "uuid must not be null");
+
+        long mostBits = uuid.getMostSignificantBits(), leastBits = uuid.getLeastSignificantBits();
+        double damage = 0.0;
+
+        for (int i = 0; i < aggregateCount; i++) {
+            if (aggregateMostBits[i] == mostBits && aggregateLeastBits[i] == leastBits && bucketOrigin + ((aggregateBucket[i] + 1) * bucketMillis) > since) {
+                damage += aggregateDamage[i];
+            }
         }
 
-        int i = 0;
-        for (Iterator<@NotNull DamageEntry> iterator = damageHistory.iterator(); iterator.hasNext(); i++) {
-            DamageEntry entry = iterator.next();
-            if (i == offset) {
-                return entry;
+        for (int i = 0; i < log.size(); i++) {
+            if (log.getMostBits(i) == mostBits && log.getLeastBits(i) == leastBits && log.getTimestamp(i) >= since) {
+                damage += log.getDamage(i);
             }
         }
 
-        return null;
+        return damage;
     }
 
     /**
-     * Get the amount of history recorded by this record.
+     * Get the amount of history recorded by this record. If the history is bounded, this is
+     * at most the amount of recent entries configured to be retained. Older damage is still
+     * accounted for by the total damage of each entity.
      *
      * @return the history size
      */
     public int size() {
-        return damageHistory.size();
+        return log.size();
+    }
+
+    /**
+     * Get the log of the most recent hits recorded by this history. Use this rather than
+     * {@link #getMostRecentDamage(int)} to iterate over or export many hits.
+     *
+     * @return the damage log
+     */
+    @NotNull
+    public DamageLog getDamageLog() {
+        return log;
     }
 
     /**
@@ -244,21 +489,25 @@ public final class DamageHistory {
      * @return the amount of unique damagers
      */
     public int uniqueDamagers() {
-        return totalDamage.size();
+        return damagerCount;
     }
 
     /**
      * Reset all total damage from all entities in this history to zero.
      */
     public void clearTotalDamage() {
-        this.totalDamage.clear();
+        Arrays.fill(damagerTable, 0);
+        this.damagerCount = 0;
     }
 
     /**
      * Clear all damage history from this history.
      */
     public void clearDamageHistory() {
-        this.damageHistory.clear();
+        this.log.clear();
+        this.aggregateCount = 0;
+        this.bucketOrigin = Long.MIN_VALUE;
+        this.bucketMillis = baseBucketMillis;
     }
 
     /**
@@ -270,6 +519,47 @@ public final class DamageHistory {
         this.clearDamageHistory();
     }
 
+    /**
+     * Compact this history such that it occupies no more memory than is required for the
+     * damage it has recorded. Damage may still be recorded after compaction, though doing so
+     * will grow the history again.
+     */
+    public void compact() {
+        this.damagerMostBits = Arrays.copyOf(damagerMostBits, damagerCount);
+        this.damagerLeastBits = Arrays.copyOf(damagerLeastBits, damagerCount);
+        this.damagerTotal = Arrays.copyOf(damagerTotal, damagerCount);
+        this.damagerRank = Arrays.copyOf(damagerRank, damagerCount);
+        this.ranking = Arrays.copyOf(ranking, damagerCount);
+
+        // The table must remain a power of two at most half full
+        this.damagerTable = new int[Integer.highestOneBit(Math.max(damagerCount * 2 - 1, 1)) << 1];
+        for (int i = 0; i < damagerCount; i++) {
+            this.insertDamager(i);
+        }
+
+        this.aggregateMostBits = Arrays.copyOf(aggregateMostBits, aggregateCount);
+        this.aggregateLeastBits = Arrays.copyOf(aggregateLeastBits, aggregateCount);
+        this.aggregateBucket = Arrays.copyOf(aggregateBucket, aggregateCount);
+        this.aggregateDamage = Arrays.copyOf(aggregateDamage, aggregateCount);
+
+        this.log.trim();
+    }
+
+    /**
+     * Get an estimate of the amount of memory (in bytes) occupied by this history, including
+     * the off-heap memory occupied by its {@link DamageLog}.
+     *
+     * @return the estimated bytes
+     */
+    public long getEstimatedBytes() {
+        long bytes = BASE_BYTES;
+        bytes += (long) damagerTotal.length * ((Long.BYTES * 2) + Double.BYTES + (Integer.BYTES * 2)); // Including the ranking
+        bytes += (long) damagerTable.length * Integer.BYTES;
+        bytes += (long) aggregateDamage.length * ((Long.BYTES * 2) + Integer.BYTES + Double.BYTES);
+        bytes += log.getAllocatedBytes();
+        return bytes;
+    }
+
     /**
      * Serialize this damage history to a {@link JsonObject}.
      *
@@ -281,49 +571,138 @@ public final class DamageHistory {
 
         object.addProperty("entityUUID", entityUUID.toString());
 
-        if (!damageHistory.isEmpty()) {
+        if (log.size() > 0) {
             JsonArray damageEntriesArray = new JsonArray();
-            this.damageHistory.forEach(entry -> {
+            for (int i = 0; i < log.size(); i++) { // Most recent first
                 JsonObject entryObject = new JsonObject();
 
-                entryObject.addProperty("source", entry.source.toString());
-                entryObject.addProperty("damage", entry.getDamage());
+                entryObject.addProperty("source", new UUID(log.getMostBits(i), log.getLeastBits(i)).toString());
+                entryObject.addProperty("damage", log.getDamage(i));
+
+                long timestamp = log.getTimestamp(i);
+                if (timestamp != UNKNOWN_TIMESTAMP) {
+                    entryObject.addProperty("timestamp", timestamp);
+                }
 
                 damageEntriesArray.add(entryObject);
-            });
+            }
 
             object.add("damageEntries", damageEntriesArray);
         }
 
+        if (aggregateCount > 0) {
+            JsonObject aggregatesObject = new JsonObject();
+            aggregatesObject.addProperty("origin", bucketOrigin);
+            aggregatesObject.addProperty("bucketMillis", bucketMillis);
+
+            JsonArray bucketsArray = new JsonArray();
+            for (int i = 0; i < aggregateCount; i++) {
+                JsonObject bucketObject = new JsonObject();
+
+                bucketObject.addProperty("source", new UUID(aggregateMostBits[i], aggregateLeastBits[i]).toString());
+                bucketObject.addProperty("bucket", aggregateBucket[i]);
+                bucketObject.addProperty("damage", aggregateDamage[i]);
+
+                bucketsArray.add(bucketObject);
+            }
+
+            aggregatesObject.add("buckets", bucketsArray);
+            object.add("damageAggregates", aggregatesObject);
+        }
+
         return object;
     }
 
     /**
-     * Deserialize a {@link DamageHistory} instance from the given {@link JsonObject}.
+     * Deserialize a {@link DamageHistory} instance from the given {@link JsonObject}. Damage
+     * serialized without a timestamp is only accounted for by total damage.
      *
      * @param object the object from which to deserialize
      *
      * @return the damage history instance
+     *
+     * @see #fromJson(JsonObject, long)
      */
     @NotNull
     public static DamageHistory fromJson(@NotNull JsonObject object) {
+        return fromJson(object, -1);
+    }
+
+    /**
+     * Deserialize a {@link DamageHistory} instance from the given {@link JsonObject}. Damage
+     * serialized by older versions has no timestamp, and is assumed to have been dealt at
+     * the given time instead.
+     *
+     * @param object the object from which to deserialize
+     * @param defaultTimestamp the time (in milliseconds since the epoch) at which damage
+     * without a timestamp was dealt, such as the time at which the entity died. If negative,
+     * such damage is only accounted for by total damage
+     *
+     * @return the damage history instance
+     */
+    @NotNull
+    public static DamageHistory fromJson(@NotNull JsonObject object, long defaultTimestamp) {
+        return fromJson(object, defaultTimestamp, getConfiguredRecentEntries(), getConfiguredBucketMillis());
+    }
+
+    /**
+     * Deserialize a {@link DamageHistory} instance from the given {@link JsonObject},
+     * independent of the plugin's configuration.
+     *
+     * @param object the object from which to deserialize
+     * @param defaultTimestamp the time at which damage without a timestamp was dealt. If
+     * negative, such damage is only accounted for by total damage
+     * @param maxLogSize the maximum amount of recent hits to log. If negative, the log is unbounded
+     * @param bucketMillis the initial width of the time buckets into which damage is aggregated
+     *
+     * @return the damage history instance
+     */
+    @NotNull
+    static DamageHistory fromJson(@NotNull JsonObject object, long defaultTimestamp, int maxLogSize, long bucketMillis) {
         UUID entityUUID = JsonUtils.getRequiredField(object, "entityUUID", element -> UUID.fromString(element.getAsString()));
         JsonArray damageEntriesArray = JsonUtils.getOptionalField(object, "damageEntries", JsonElement::getAsJsonArray, new JsonArray());
 
-        DamageHistory damageHistory = new DamageHistory(entityUUID);
+        DamageHistory damageHistory = new DamageHistory(entityUUID, maxLogSize, bucketMillis);
+        long missingTimestamp = (defaultTimestamp >= 0) ? defaultTimestamp : UNKNOWN_TIMESTAMP;
+
+        // Aggregates are older than every entry, so they are restored first
+        if (object.has("damageAggregates")) {
+            JsonObject aggregatesObject = JsonUtils.getRequiredField(object, "damageAggregates", JsonElement::getAsJsonObject);
+            damageHistory.bucketOrigin = JsonUtils.getRequiredField(aggregatesObject, "origin", JsonElement::getAsLong);
+            damageHistory.bucketMillis = Math.max(JsonUtils.getRequiredField(aggregatesObject, "bucketMillis", JsonElement::getAsLong), 1);
+
+            for (JsonElement bucketElement : JsonUtils.getRequiredField(aggregatesObject, "buckets", JsonElement::getAsJsonArray)) {
+                if (!bucketElement.isJsonObject()) {
+                    continue;
+                }
+
+                JsonObject bucketObject = bucketElement.getAsJsonObject();
+
+                UUID source = UUID.fromString(bucketObject.get("source").getAsString());
+                int bucket = bucketObject.get("bucket").getAsInt();
+                double damage = bucketObject.get("damage").getAsDouble();
 
-        damageEntriesArray.forEach(damageEntryElement -> {
+                damageHistory.addTotalDamage(source.getMostSignificantBits(), source.getLeastSignificantBits(), damage);
+                damageHistory.addAggregate(source.getMostSignificantBits(), source.getLeastSignificantBits(), bucket, damage);
+            }
+        }
+
+        // Entries are stored most recent first
+        for (int i = damageEntriesArray.size() - 1; i >= 0; i--) {
+            JsonElement damageEntryElement = damageEntriesArray.get(i);
             if (!damageEntryElement.isJsonObject()) {
-                return;
+                continue;
             }
 
             JsonObject damageEntryObject = damageEntryElement.getAsJsonObject();
 
             UUID source = UUID.fromString(damageEntryObject.get("source").getAsString());
             double damage = damageEntryObject.get("damage").getAsDouble();
+            long timestamp = JsonUtils.getOptionalField(damageEntryObject, "timestamp", JsonElement::getAsLong, missingTimestamp);
 
-            damageHistory.recordDamage(source, damage);
-        });
+            damageHistory.addTotalDamage(source.getMostSignificantBits(), source.getLeastSignificantBits(), damage);
+            damageHistory.log(source.getMostSignificantBits(), source.getLeastSignificantBits(), damage, timestamp);
+        }
 
         return damageHistory;
     }
@@ -353,7 +732,85 @@ public final class DamageHistory {
     @NotNull
     public static DamageHistory forEntity(@NotNull Entity entity) {
         Preconditions.checkArgument(entity != null, "Cannot get damage history for null entity");
-        return forEntity(entity.getUniqueId());
+
+        DamageHistory history = forEntity(entity.getUniqueId());
+        history.worldUUID = entity.getWorld().getUID();
+        return history;
+    }
+
+    /**
+     * Release the {@link DamageHistory} associated with the given entity UUID such that it is
+     * no longer retained. The released history is compacted and may still be used, though it
+     * will no longer be returned by {@link #forEntity(UUID)}.
+     *
+     * @param uuid the entity whose history to release
+     *
+     * @return the released history. null if the entity had no history
+     */
+    @Nullable
+    public static DamageHistory release(@NotNull UUID uuid) {
+        Preconditions.checkArgument(uuid != null, "Cannot release damage history for null UUID");
+
+        DamageHistory history = ENTITY_DAMAGE_HISTORY.remove(uuid);
+        if (history != null) {
+            history.compact();
+        }
+
+        return history;
+    }
+
+    /**
+     * Release the {@link DamageHistory} of every entity last known to be in the given world.
+     * Histories retrieved only by UUID are not known to be in any world and are therefore
+     * not released.
+     *
+     * @param world the world whose histories to release
+     *
+     * @return the amount of histories released
+     *
+     * @see #release(UUID)
+     */
+    public static int releaseAll(@NotNull World world) {
+        Preconditions.checkArgument(world != null, "Cannot release damage history for null world");
+
+        UUID worldUUID = world.getUID();
+        int released = 0;
+
+        Iterator<@NotNull DamageHistory> iterator = ENTITY_DAMAGE_HISTORY.values().iterator();
+        while (iterator.hasNext()) {
+            if (worldUUID.equals(iterator.next().worldUUID)) {
+                iterator.remove();
+                released++;
+            }
+        }
+
+        return released;
+    }
+
+    /**
+     * Get the amount of histories currently retained for entities.
+     *
+     * @return the live history count
+     */
+    public static int getLiveHistoryCount() {
+        return ENTITY_DAMAGE_HISTORY.size();
+    }
+
+    /**
+     * Get an estimate of the amount of memory (in bytes) occupied by all histories currently
+     * retained for entities.
+     *
+     * @return the estimated bytes of all live histories
+     *
+     * @see #getEstimatedBytes()
+     */
+    public static long getLiveHistoryEstimatedBytes() {
+        long bytes = 0;
+        for (DamageHistory history : ENTITY_DAMAGE_HISTORY.values()) {
+            bytes += history.getEstimatedBytes();
+        }
+
+        return bytes;
     }
 
     /**
@@ -375,6 +832,19 @@ public final class DamageHistory {
         ENTITY_DAMAGE_HISTORY.clear();
     }
 
+    private static int getConfiguredRecentEntries() {
+        return DragonEggDrop.getInstance().getConfig().getInt(DEDConstants.CONFIG_DAMAGE_HISTORY_RECENT_ENTRIES, 1000);
+    }
+
+    private static long getConfiguredBucketMillis() {
+        return (long) (DragonEggDrop.getInstance().getConfig().getDouble(DEDConstants.CONFIG_DAMAGE_HISTORY_BUCKET_SECONDS, 10.0) * 1000);
+    }
+
+    private static int hashDamager(long mostBits, long leastBits) {
+        long hash = (mostBits * 0x9E3779B97F4A7C15L) ^ (leastBits * 0xC2B2AE3D27D4EB4FL);
+        return (int) (hash ^ (hash >>> 32));
+    }
+
 
     /**
      * Represents a mapping of an entity's UUID to an amount of damage.
@@ -391,10 +861,6 @@ public final class DamageHistory {
             this.damage = damage;
         }
 
-        private DamageEntry(@NotNull Map.Entry<@NotNull UUID, @NotNull Double> entry) {
-            this(entry.getKey(), entry.getValue());
-        }
-
         /**
          * Get the UUID of the entity to which this damage entry is attributed.
          *
@@ -0,0 +1,290 @@
+package wtf.choco.dragoneggdrop.dragon;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A log of the most recent hits recorded by a {@link DamageHistory}. Hits are stored as
+ * fixed size rows of a single direct (off-heap) {@link ByteBuffer}, used as a ring buffer
+ * if the log is bounded. No objects are allocated per hit, neither when recording nor when
+ * iterating with a {@link Cursor}. All rows may be copied at once with {@link #export(ByteBuffer)}.
+ * <p>
+ * Each row is {@link #ROW_BYTES} bytes, consisting of the following big-endian values:
+ * <ul>
+ *   <li>the time at which the hit was recorded, in milliseconds since the epoch (long)
+ *   <li>the most significant bits of the source's UUID (long)
+ *   <li>the least significant bits of the source's UUID (long)
+ *   <li>the damage dealt (double)
+ * </ul>
+ *
+ * @author Parker Hawke - Choco
+ *
+ * @see DamageHistory#getDamageLog()
+ */
+public final class DamageLog {
+
+    /**
+     * The size (in bytes) of a single row.
+     */
+    public static final int ROW_BYTES = 32;
+
+    private static final int TIMESTAMP_OFFSET = 0, MOST_BITS_OFFSET = 8, LEAST_BITS_OFFSET = 16, DAMAGE_OFFSET = 24;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private ByteBuffer rows = ByteBuffer.allocateDirect(0);
+    private int capacity = 0;
+
+    // The row index of the most recent hit
+    private int head = -1, size = 0;
+
+    private final int maxSize;
+
+    /**
+     * Construct a new {@link DamageLog}.
+     *
+     * @param maxSize the maximum amount of hits to log. If negative, the log is unbounded
+     */
+    DamageLog(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the amount of hits in this log.
+     *
+     * @return the size
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the maximum amount of hits in this log.
+     *
+     * @return the maximum size. -1 if unbounded
+     */
+    public int getMaxSize() {
+        return (maxSize < 0) ? -1 : maxSize;
+    }
+
+    /**
+     * Check whether or not this log is full, in which case the oldest hit must be removed
+     * before another is appended.
+     *
+     * @return true if full, false otherwise
+     */
+    public boolean isFull() {
+        return maxSize >= 0 && size >= maxSize;
+    }
+
+    /**
+     * Create a cursor over all hits in this log, from oldest to most recent. The log must not
+     * be modified while iterating.
+     *
+     * @return the cursor
+     */
+    @NotNull
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Export every row of this log, from oldest to most recent, to the given buffer at its
+     * current position. The rows are copied in at most two bulk copies, and the position of
+     * the buffer is advanced past the exported rows. The byte order of the buffer is ignored;
+     * rows are always exported in the big-endian layout described by this class.
+     *
+     * @param destination the buffer to which rows should be exported. Must have at least
+     * {@code size() * ROW_BYTES} bytes remaining
+     *
+     * @return the amount of exported rows
+     */
+    public int export(@NotNull ByteBuffer destination) {
+        Preconditions.checkArgument(destination != null, "destination must not be null");
+        Preconditions.checkArgument(destination.remaining() >= size * ROW_BYTES, "destination must have at least %s bytes remaining", size * ROW_BYTES);
+
+        if (size > 0) {
+            int oldest = getRow(size - 1);
+            int firstRows = Math.min(size, capacity - oldest);
+            destination.put(slice(oldest, firstRows));
+            destination.put(slice(0, size - firstRows));
+        }
+
+        return size;
+    }
+
+    /**
+     * Append a hit to this log. The log must not be full.
+     *
+     * @param timestamp the time at which the hit was recorded
+     * @param mostBits the most significant bits of the source's UUID
+     * @param leastBits the least significant bits of the source's UUID
+     * @param damage the damage dealt
+     */
+    void append(long timestamp, long mostBits, long leastBits, double damage) {
+        if (size == capacity) {
+            this.grow((maxSize < 0) ? Math.max(capacity * 2, INITIAL_CAPACITY) : Math.min(Math.max(capacity * 2, INITIAL_CAPACITY), maxSize));
+        }
+
+        this.head = (head + 1) % capacity;
+        this.size++;
+
+        int position = head * ROW_BYTES;
+        this.rows.putLong(position + TIMESTAMP_OFFSET, timestamp);
+        this.rows.putLong(position + MOST_BITS_OFFSET, mostBits);
+        this.rows.putLong(position + LEAST_BITS_OFFSET, leastBits);
+        this.rows.putDouble(position + DAMAGE_OFFSET, damage);
+    }
+
+    /**
+     * Remove the oldest hit from this log.
+     */
+    void removeOldest() {
+        if (size > 0) {
+            this.size--;
+        }
+    }
+
+    /**
+     * Remove all hits from this log.
+     */
+    void clear() {
+        this.head = -1;
+        this.size = 0;
+    }
+
+    /**
+     * Reallocate this log such that its capacity is no greater than its size.
+     */
+    void trim() {
+        if (capacity > size) {
+            this.grow(size);
+        }
+    }
+
+    /**
+     * Get the amount of off-heap memory (in bytes) allocated by this log.
+     *
+     * @return the allocated bytes
+     */
+    long getAllocatedBytes() {
+        return (long) capacity * ROW_BYTES;
+    }
+
+    // The values of the hit at the given offset from the most recent hit
+    long getTimestamp(int offset) {
+        return rows.getLong((getRow(offset) * ROW_BYTES) + TIMESTAMP_OFFSET);
+    }
+
+    long getMostBits(int offset) {
+        return rows.getLong((getRow(offset) * ROW_BYTES) + MOST_BITS_OFFSET);
+    }
+
+    long getLeastBits(int offset) {
+        return rows.getLong((getRow(offset) * ROW_BYTES) + LEAST_BITS_OFFSET);
+    }
+
+    double getDamage(int offset) {
+        return rows.getDouble((getRow(offset) * ROW_BYTES) + DAMAGE_OFFSET);
+    }
+
+    // The row of the hit at the given offset from the most recent hit
+    private int getRow(int offset) {
+        return (capacity > 0) ? Math.floorMod(head - offset, capacity) : 0;
+    }
+
+    @NotNull
+    private ByteBuffer slice(int row, int rowCount) {
+        ByteBuffer slice = rows.duplicate();
+        slice.limit((row + rowCount) * ROW_BYTES).position(row * ROW_BYTES);
+        return slice;
+    }
+
+    // Rows are moved such that the oldest is at row 0
+    private void grow(int newCapacity) {
+        ByteBuffer newRows = ByteBuffer.allocateDirect(newCapacity * ROW_BYTES);
+        this.export(newRows);
+
+        this.rows = newRows;
+        this.capacity = newCapacity;
+        this.head = size - 1;
+    }
+
+    /**
+     * A cursor over the hits of a {@link DamageLog}, from oldest to most recent.
+     * The values of the current hit are read directly from the log, and may only be read
+     * once {@link #next()} has returned true.
+     */
+    public final class Cursor {
+
+        private int offset = size;
+
+        private Cursor() { }
+
+        /**
+         * Advance to the next hit.
+         *
+         * @return true if advanced, false if there are no more hits
+         */
+        public boolean next() {
+            if (offset <= 0) {
+                return false;
+            }
+
+            this.offset--;
+            return true;
+        }
+
+        /**
+         * Get the time at which the current hit was recorded.
+         *
+         * @return the timestamp, in milliseconds since the epoch
+         */
+        public long getTimestamp() {
+            return DamageLog.this.getTimestamp(offset);
+        }
+
+        /**
+         * Get the most significant bits of the UUID of the current hit's source.
+         *
+         * @return the most significant bits
+         */
+        public long getSourceMostBits() {
+            return getMostBits(offset);
+        }
+
+        /**
+         * Get the least significant bits of the UUID of the current hit's source.
+         *
+         * @return the least significant bits
+         */
+        public long getSourceLeastBits() {
+            return getLeastBits(offset);
+        }
+
+        /**
+         * Get the UUID of the current hit's source. Note that unlike the other methods of
+         * this cursor, this allocates a new UUID.
+         *
+         * @return the source's UUID
+         */
+        @NotNull
+        public UUID getSource() {
+            return new UUID(getMostBits(offset), getLeastBits(offset));
+        }
+
+        /**
+         * Get the damage dealt by the current hit.
+         *
+         * @return the damage
+         */
+        public double getDamage() {
+            return DamageLog.this.getDamage(offset);
+        }
+
+    }
+
+}
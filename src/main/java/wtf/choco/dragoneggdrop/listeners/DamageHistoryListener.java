@@ -1,5 +1,12 @@
 package wtf.choco.dragoneggdrop.listeners;
 
+import com.destroystokyo.paper.event.entity.EntityRemoveFromWorldEvent;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import org.bukkit.Bukkit;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Projectile;
@@ -8,6 +15,8 @@ import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntityDamageByEntityEvent;
 import org.bukkit.event.entity.EntityDamageEvent.DamageCause;
+import org.bukkit.event.world.EntitiesUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.projectiles.ProjectileSource;
 import org.jetbrains.annotations.NotNull;
 
@@ -17,6 +26,9 @@ import wtf.choco.dragoneggdrop.utils.DEDConstants;
 
 public final class DamageHistoryListener implements Listener {
 
+    // Dragons are also removed from their world when their chunk is unloaded, in which case their history is retained
+    private final Set<@NotNull UUID> unloadedDragons = new HashSet<>();
+
     private final DragonEggDrop plugin;
 
     public DamageHistoryListener(@NotNull DragonEggDrop plugin) {
@@ -48,6 +60,36 @@ public final class DamageHistoryListener implements Listener {
         DamageHistory.forEntity(damaged).recordDamage(damager, event.getFinalDamage());
     }
 
+    @EventHandler
+    private void onUnloadDragon(EntitiesUnloadEvent event) {
+        for (Entity entity : event.getEntities()) {
+            if (entity.getType() == EntityType.ENDER_DRAGON) {
+                this.unloadedDragons.add(entity.getUniqueId());
+            }
+        }
+    }
+
+    @EventHandler
+    private void onRemoveDragon(EntityRemoveFromWorldEvent event) {
+        Entity entity = event.getEntity();
+        if (entity.getType() != EntityType.ENDER_DRAGON || !plugin.isEnabled()) {
+            return;
+        }
+
+        // Whether or not the dragon's chunk was unloaded is only known once both events have been called, so release is deferred
+        UUID uuid = entity.getUniqueId();
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            if (!unloadedDragons.remove(uuid)) {
+                DamageHistory.release(uuid);
+            }
+        });
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    private void onUnloadWorld(WorldUnloadEvent event) {
+        DamageHistory.releaseAll(event.getWorld());
+    }
+
     @EventHandler
     private void onEntityDamagedByLightning(EntityDamageByEntityEvent event) {
         if (event.getCause() != DamageCause.LIGHTNING || plugin.getConfig().getBoolean(DEDConstants.CONFIG_LIGHTNING_DAMAGES_ENTITIES, false)) {
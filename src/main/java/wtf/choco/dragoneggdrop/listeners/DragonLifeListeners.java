@@ -123,7 +123,10 @@ public final class DragonLifeListeners implements Listener {
         // Record the battle
         DragonTemplate dragonTemplate = worldWrapper.getActiveTemplate();
         if (dragonTemplate != null) {
-            DragonBattleRecord record = new DragonBattleRecord(worldWrapper, dragonTemplate, DamageHistory.forEntity(dragon), System.currentTimeMillis(), worldWrapper.getLootTableOverride());
+            DamageHistory history = DamageHistory.forEntity(dragon);
+            DamageHistory.release(dragon.getUniqueId()); // Retained by the record from now on, so it is compacted and no longer kept for the dragon
+
+            DragonBattleRecord record = new DragonBattleRecord(worldWrapper, dragonTemplate, history, System.currentTimeMillis(), worldWrapper.getLootTableOverride());
             worldWrapper.recordDragonBattle(record);
         }
 
@@ -3,9 +3,14 @@ package wtf.choco.dragoneggdrop.particle;
 import com.google.common.base.Preconditions;
 
 import java.util.List;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.bukkit.Location;
-import org.bukkit.Material;
 import org.bukkit.World;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -16,6 +21,14 @@ import wtf.choco.dragoneggdrop.particle.condition.ConditionContext;
 /**
  * Represents a set of tickable equation data capable of animating a {@link ParticleShapeDefinition}
  * in the world. Stated data for a specific animation.
+ * <p>
+ * A session is split into two stages. The compute stage selects equation data and evaluates
+ * the position of every stream of a frame, and may be run ahead of time on a worker thread
+ * (see {@link ParticleSessionManager}). The emit stage drains computed frames in order and
+ * spawns their particles, and is always run on the thread ticking the session. If no frame
+ * has been computed by the time one is due, it is computed on the ticking thread instead.
+ * The state of the emit stage is held by the {@link ParticleSessionStore} ticking the session,
+ * and only by the session itself while not held by any store.
  *
  * @author Parker Hawke - Choco
  *
@@ -23,73 +36,348 @@ import wtf.choco.dragoneggdrop.particle.condition.ConditionContext;
  */
 public class AnimatedParticleSession {
 
+    // The store holding the emit stage state of this session, and the slot in which it is held. Only ever set by the store
+    ParticleSessionStore store;
+    int slot;
+
+    // The emit stage state of this session while not held by a store. Only ever accessed by the store
+    ParticleFrame detachedFrame;
+    int detachedWait, detachedAnimationTick;
+    double detachedTheta, detachedY;
+
+    private volatile ParticleDetail detail = ParticleDetail.FULL;
+    private volatile boolean hasReceivers = true;
+
+    // The cost of the last tick, as accounted by the ParticleSessionManager
+    private int lastTickParticles = 0, lastTickEvaluations = 0;
+    private long mergedEmissions = 0;
+
+    // Compute stage state. Only ever accessed while holding the compute lock
     private int animationTick = 0;
     private double theta = 0.0;
-    private int wait = 0;
+    private double computeY;
+    private int equationDataRegion = -1;
+    private double[] streamTheta = new double[0];
+    private final SplittableRandom random;
+
+    // Frames flow from the compute stage to the emit stage through the buffer, and back through the pool
+    private final Queue<@NotNull ParticleFrame> frameBuffer = new ConcurrentLinkedQueue<>();
+    private final Queue<@NotNull ParticleFrame> framePool = new ConcurrentLinkedQueue<>();
+    private final Object computeLock = new Object();
+    private final AtomicBoolean computing = new AtomicBoolean();
+
+    private Executor computeExecutor;
+    private int lookaheadFrames;
+    private volatile boolean stopped = false;
 
     private final ParticleShapeDefinition shape;
-    private final List<@NotNull ConditionalEquationData> equationData;
+    private final ParticleRenderer renderer;
+    private final EquationDataIndex equationDataIndex;
+    private final long seed;
 
     private final World world;
-    private final Location currentLocation;
+    private final double x, z;
+
+    // The animation stops once it descends to (or below) the block at this height
+    private final int stopY;
+    private final int minHeight;
+    private final int totalFrames;
     private final ParticleVariables variables;
     private final ConditionContext equationContext;
+    private final ParticleEmitter emitter;
 
-    AnimatedParticleSession(@NotNull ParticleShapeDefinition definition, @NotNull List<@NotNull ConditionalEquationData> equationData, @NotNull World world, double x, double y, double z) {
+    AnimatedParticleSession(@NotNull ParticleShapeDefinition definition, @NotNull List<@NotNull ConditionalEquationData> equationData, @NotNull World world, double x, double y, double z, long seed, @NotNull ParticleRenderer renderer, double receiverRadius, double mergeGrid) {
         Preconditions.checkArgument(definition != null, "definition must not be null");
         Preconditions.checkArgument(equationData != null, "equationData must not be null");
         Preconditions.checkArgument(world != null, "world must not be null");
+        Preconditions.checkArgument(renderer != null, "renderer must not be null");
 
         this.shape = definition;
-        this.equationData = equationData;
+        this.renderer = renderer;
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
 
         this.world = world;
-        this.currentLocation = new Location(world, x, y, z);
+        this.x = x;
+        this.z = z;
+        this.computeY = y;
+        this.detachedY = y;
         this.variables = new ParticleVariables();
         this.equationContext = new ConditionContext(variables, world);
+        this.equationDataIndex = new EquationDataIndex(equationData, new ConditionContext(new ParticleVariables(x, y, z, 0.0, 0.0), world));
+
+        this.minHeight = world.getMinHeight();
+        this.stopY = computeStopY(world, x, y, z, minHeight);
+        this.totalFrames = computeTotalFrames(y);
+        this.emitter = new ParticleEmitter(world, receiverRadius, mergeGrid);
     }
 
     /**
      * Tick this animation.
      */
     public void tick() {
+        // Only sessions ticked outside of a ParticleSessionManager are given a store of their own
+        if (store == null) {
+            new ParticleSessionStore(1).add(this);
+        }
+
+        this.store.tick(slot);
+    }
+
+    // Resets the cost of the last tick
+    void beginTick() {
+        this.lastTickParticles = 0;
+        this.lastTickEvaluations = 0;
+    }
+
+    /**
+     * Poll the next frame to display from the compute stage, computing it on this thread if
+     * it has not yet been computed.
+     *
+     * @return the next frame. null if no equation data could be selected for the frame
+     */
+    @Nullable
+    ParticleFrame pollFrame() {
+        ParticleFrame frame = frameBuffer.poll();
+        if (frame == null) {
+            // The compute stage has not caught up (or is not running at all), compute the frame on this thread
+            synchronized (computeLock) {
+                if (frameBuffer.isEmpty()) {
+                    this.computeNextFrame();
+                }
+
+                frame = frameBuffer.poll();
+            }
+        }
+
+        // Evaluations are accounted when polled, whether or not the frame was computed ahead of time on a worker thread
+        this.lastTickEvaluations = (frame != null) ? frame.evaluations : 0;
+
+        this.scheduleCompute();
+        return frame;
+    }
+
+    /**
+     * Display a frame polled from {@link #pollFrame()}, after which it is recycled.
+     *
+     * @param frame the frame to display
+     */
+    void displayFrame(@NotNull ParticleFrame frame) {
+        this.emitFrame(frame);
+        this.framePool.offer(frame);
+    }
+
+    /**
+     * Set the executor on which frames should be computed ahead of time. If null, frames are
+     * computed on the thread ticking this session when they are needed.
+     *
+     * @param executor the executor on which to compute frames
+     * @param lookaheadFrames the maximum amount of frames to compute ahead of time
+     */
+    void setComputeExecutor(@Nullable Executor executor, int lookaheadFrames) {
+        this.computeExecutor = executor;
+        this.lookaheadFrames = Math.max(lookaheadFrames, 1);
+    }
+
+    /**
+     * Stop computing frames ahead of time. Any frame currently being computed is finished but
+     * no further frames will be scheduled.
+     */
+    void stopComputing() {
+        this.stopped = true;
+    }
+
+    // Computes frames ahead of time on the compute executor, if not already doing so
+    void scheduleCompute() {
+        Executor executor = computeExecutor;
+        if (executor == null || stopped || frameBuffer.size() >= lookaheadFrames || !computing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            executor.execute(this::computeAhead);
+        } catch (RejectedExecutionException e) {
+            this.computing.set(false);
+        }
+    }
+
+    private void computeAhead() {
+        try {
+            // Frames past the height at which the animation stops would never be emitted
+            while (!stopped && frameBuffer.size() < lookaheadFrames && !isStopHeight(computeY)) {
+                synchronized (computeLock) {
+                    if (computeNextFrame() == null) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            this.computing.set(false);
+        }
+    }
+
+    // Must be called while holding the compute lock. The computed frame is appended to the frame buffer
+    @Nullable
+    private ParticleFrame computeNextFrame() {
         ConditionalEquationData equationData = getEquationDataForCurrentContext();
         if (equationData == null) {
-            return;
+            return null;
         }
 
-        if (++wait < equationData.getFrameIntervalTicks()) {
-            return;
+        ParticleFrame frame = framePool.poll();
+        if (frame == null) {
+            frame = new ParticleFrame();
         }
 
+        frame.equationData = equationData;
+        frame.delayTicks = equationData.getFrameIntervalTicks();
+
         this.animationTick++;
         this.theta += equationData.getThetaIncrement();
-        this.variables.update(currentLocation.getX(), currentLocation.getY(), currentLocation.getZ(), animationTick, 0.0);
+
+        double frameTheta = theta;
+        double y = computeY;
+        this.variables.update(x, y, z, animationTick, 0.0);
 
         double streamSeparationDegrees = 360.0 / Math.max(equationData.getParticleStreams(), 1);
-        if (streamSeparationDegrees < 360) { // If there is more than one stream...
-            for (int i = 0; i <= 360; i += streamSeparationDegrees) {
-                this.displayParticles(equationData);
-                this.variables.update(currentLocation.getX(), currentLocation.getY(), currentLocation.getZ(), animationTick, theta += streamSeparationDegrees);
+        int streams = ParticleShapeCost.getStreamCount(equationData.getParticleStreams());
+
+        this.ensureStreamCapacity(streams);
+        frame.ensureStreamCapacity(streams);
+
+        // The first stream is always at theta = 0. Every other stream continues on from the session's theta
+        this.streamTheta[0] = 0.0;
+        if (streams > 1) {
+            for (int i = 1; i < streams; i++) {
+                this.streamTheta[i] = (theta += streamSeparationDegrees);
+            }
+
+            this.theta += streamSeparationDegrees;
+        }
+
+        ParticleDetail detail = this.detail;
+        frame.animationTick = animationTick;
+        frame.theta = frameTheta;
+        frame.y = y;
+        frame.displayable = (animationTick % detail.getFrameStride() == 0);
+        frame.evaluated = false;
+        frame.streams = streams;
+        frame.streamStride = detail.getStreamStride();
+        frame.evaluations = 0;
+
+        // Every frame draws from its own generator such that its random values do not depend on whether previous frames were evaluated
+        this.variables.setRandom(random.split());
+
+        // Frames that are skipped, or that no player was able to see as of the last frame, need not be evaluated at all
+        if (frame.displayable && hasReceivers) {
+            int stride = frame.streamStride;
+            int count = (stride > 1) ? compactStreams(streams, stride) : streams; // Only compute the streams that will be displayed
+
+            int randomReferences = equationData.getRandomReferences();
+            if (randomReferences > 0) {
+                this.variables.generateRandomValues(randomReferences * count);
             }
+
+            frame.evaluations = renderer.computeFrame(shape, equationData, variables, animationTick, frameTheta, streams, stride, streamTheta, frame.streamX, frame.streamZ, count);
+            frame.streams = count;
+            frame.streamStride = 1;
+            frame.evaluated = true;
+        }
+
+        // Conditions are checked against the variables of the last stream
+        this.variables.update(x, y, z, animationTick, (streams > 1) ? theta : 0.0);
+
+        this.computeY -= MathUtil.clamp(equationData.getSpeedMultiplier(), 0.1, 2.0);
+        frame.nextY = computeY;
+
+        this.frameBuffer.offer(frame);
+        return frame;
+    }
+
+    /**
+     * Compute the next frame of this animation as if it were displayed to a player, without
+     * emitting it. This is only intended to compare renderers, and must never be called on a
+     * session that is being ticked. The returned frame should be passed back to
+     * {@link #recycleFrame(ParticleFrame)} once read.
+     *
+     * @return the computed frame. null if the animation has finished
+     */
+    @Nullable
+    ParticleFrame computeDetachedFrame() {
+        synchronized (computeLock) {
+            if (isStopHeight(computeY) || computeNextFrame() == null) {
+                return null;
+            }
+
+            return frameBuffer.poll();
+        }
+    }
+
+    /**
+     * Recycle a frame returned by {@link #computeDetachedFrame()}.
+     *
+     * @param frame the frame to recycle
+     */
+    void recycleFrame(@NotNull ParticleFrame frame) {
+        this.framePool.offer(frame);
+    }
+
+    private void emitFrame(@NotNull ParticleFrame frame) {
+        if (!frame.displayable) {
+            return;
+        }
+
+        this.hasReceivers = emitter.updateReceivers(x, z);
+        if (!hasReceivers || !frame.evaluated) {
+            return;
         }
-        else {
-            this.displayParticles(equationData);
+
+        ConditionalEquationData equationData = frame.equationData;
+        int particleAmount = detail.scaleParticleAmount(equationData.getParticleAmount());
+        for (int i = 0; i < frame.streams; i += frame.streamStride) {
+            this.emitter.emit(equationData, particleAmount, x + frame.streamX[i], frame.y, z + frame.streamZ[i]);
+            this.lastTickParticles += Math.max(particleAmount, 1);
         }
 
-        this.currentLocation.subtract(0.0D, MathUtil.clamp(equationData.getSpeedMultiplier(), 0.1, 2.0), 0.0D);
-        this.wait = 0;
+        this.mergedEmissions += emitter.flush();
     }
 
     /**
      * Check whether or not this particle session should stop animating. Note that despite the
      * result of this method, this session may still be ticked. The stopping of the animation should
      * be handled by the class calling upon this session.
+     * <p>
+     * A session should stop once it has descended to the highest block of its column, as read
+     * from the world's heightmap when the session was created.
      *
      * @return true if should stop, false otherwise
      */
     public boolean shouldStop() {
-        return currentLocation.getBlock().getType() == Material.BEDROCK || equationData.isEmpty();
+        return isStopHeight(getY()) || equationDataIndex.isEmpty();
+    }
+
+    /**
+     * Get the seed from which all random values of this animation are generated. A session
+     * created with the same seed, at the same location, will display the same animation.
+     *
+     * @return the seed
+     *
+     * @see ParticleShapeDefinition#createSession(World, double, double, double, long)
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Get the total amount of frames this animation will display before it should stop. The
+     * frame count is only known ahead of time if every equation data that may be selected
+     * descends at the same speed.
+     *
+     * @return the total frame count, or -1 if not known ahead of time or if this animation
+     * will never stop
+     */
+    public int getTotalFrames() {
+        return totalFrames;
     }
 
     /**
@@ -99,7 +387,25 @@ public class AnimatedParticleSession {
      */
     @NotNull
     public Location getCurrentLocation() {
-        return currentLocation.clone();
+        return new Location(world, x, getY(), z);
+    }
+
+    /**
+     * Get the animation tick of the frame most recently displayed by this session.
+     *
+     * @return the animation tick. 0 if no frame has been displayed
+     */
+    public int getAnimationTick() {
+        return (store != null) ? store.getAnimationTick(slot) : detachedAnimationTick;
+    }
+
+    /**
+     * Get the theta of this session at the start of the frame most recently displayed.
+     *
+     * @return the theta. 0.0 if no frame has been displayed
+     */
+    public double getTheta() {
+        return (store != null) ? store.getTheta(slot) : detachedTheta;
     }
 
     /**
@@ -112,23 +418,115 @@ public class AnimatedParticleSession {
         return shape;
     }
 
+    /**
+     * Set the level of detail at which this session should be displayed. Changing the level
+     * of detail does not alter the timing of the animation and may be done at any time.
+     *
+     * @param detail the level of detail
+     */
+    public void setDetail(@NotNull ParticleDetail detail) {
+        Preconditions.checkArgument(detail != null, "detail must not be null");
+        this.detail = detail;
+    }
+
+    /**
+     * Get the level of detail at which this session is being displayed.
+     *
+     * @return the level of detail
+     */
+    @NotNull
+    public ParticleDetail getDetail() {
+        return detail;
+    }
+
+    /**
+     * Get the total amount of stream positions that were merged into the spawn of another
+     * stream, rather than being spawned on their own, because they fell in the same cell of
+     * the merge grid.
+     *
+     * @return the merged emission count. Always 0 if the merge grid is disabled
+     */
+    public long getMergedEmissions() {
+        return mergedEmissions;
+    }
+
+    /**
+     * Get the amount of particles spawned during the last tick.
+     *
+     * @return the particle count
+     */
+    int getLastTickParticles() {
+        return lastTickParticles;
+    }
+
+    /**
+     * Get the amount of streams whose expressions were evaluated for the frame polled during
+     * the last tick, including frames computed ahead of time on a worker thread. Streams
+     * replayed from the frame cache are not counted.
+     *
+     * @return the evaluation count
+     */
+    int getLastTickEvaluations() {
+        return lastTickEvaluations;
+    }
+
+    private double getY() {
+        return (store != null) ? store.getY(slot) : detachedY;
+    }
+
     @Nullable
     private ConditionalEquationData getEquationDataForCurrentContext() {
-        for (ConditionalEquationData equation : equationData) {
-            if (equation.isMet(equationContext)) {
-                return equation;
+        this.equationDataRegion = equationDataIndex.findRegion(variables, equationDataRegion);
+        return equationDataIndex.select(equationDataRegion, equationContext);
+    }
+
+    private boolean isStopHeight(double y) {
+        return Location.locToBlock(y) <= stopY;
+    }
+
+    private int computeTotalFrames(double y) {
+        double speedMultiplier = equationDataIndex.getFixedSpeedMultiplier();
+        if (Double.isNaN(speedMultiplier)) {
+            return -1;
+        }
+
+        // Descend exactly as the compute stage would such that rounding errors are identical
+        double speed = MathUtil.clamp(speedMultiplier, 0.1, 2.0);
+        for (int frames = 1; y >= minHeight; frames++) {
+            y -= speed;
+
+            if (isStopHeight(y)) {
+                return frames;
             }
         }
 
-        return null;
+        return -1;
     }
 
-    private void displayParticles(@NotNull ConditionalEquationData equationData) {
-        double x = equationData.getXExpression().evaluate(variables), z = equationData.getZExpression().evaluate(variables);
+    // The animation stops upon reaching the highest block of its column (the bedrock of the exit portal for death animations), read once from the heightmap
+    private static int computeStopY(@NotNull World world, double x, double y, double z, int minHeight) {
+        int highestBlockY = world.getHighestBlockYAt(Location.locToBlock(x), Location.locToBlock(z));
+
+        // Blocks beneath the highest block are not known from the heightmap, so animations starting beneath it descend to the bottom of the world
+        return (Location.locToBlock(y) >= highestBlockY) ? highestBlockY : minHeight;
+    }
+
+    // Move every stride-th stream angle to the front of the theta array, returning the amount moved
+    private int compactStreams(int streams, int stride) {
+        int count = 0;
+        for (int i = 0; i < streams; i += stride) {
+            this.streamTheta[count++] = streamTheta[i];
+        }
+
+        return count;
+    }
+
+    private void ensureStreamCapacity(int streams) {
+        if (streamTheta.length >= streams) {
+            return;
+        }
 
-        this.currentLocation.add(x, 0.0, z);
-        this.world.spawnParticle(equationData.getParticle(), currentLocation, equationData.getParticleAmount(), equationData.getParticleOffsetX(), equationData.getParticleOffsetY(), equationData.getParticleOffsetZ(), equationData.getParticleExtra(), null, true);
-        this.currentLocation.subtract(x, 0.0, z);
+        this.streamTheta = new double[streams];
     }
 
 }
@@ -3,13 +3,19 @@ package wtf.choco.dragoneggdrop.particle;
 import com.google.common.base.Preconditions;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.bukkit.Particle;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import wtf.choco.dragoneggdrop.particle.condition.ConditionContext;
 import wtf.choco.dragoneggdrop.particle.condition.EquationCondition;
+import wtf.choco.dragoneggdrop.utils.math.CompiledExpression;
+import wtf.choco.dragoneggdrop.utils.math.CompiledExpressionPair;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionCompiler;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode;
 import wtf.choco.dragoneggdrop.utils.math.MathExpression;
 
 /**
@@ -21,6 +27,12 @@ import wtf.choco.dragoneggdrop.utils.math.MathExpression;
  */
 public class ConditionalEquationData {
 
+    /**
+     * The maximum amount of particle streams. Streams are separated by a whole amount of
+     * degrees, so any more streams than this would not be separated at all.
+     */
+    public static final int MAX_PARTICLE_STREAMS = 360;
+
     Particle particle;
     int particleAmount;
     double particleExtra;
@@ -34,6 +46,8 @@ public class ConditionalEquationData {
     private List<@NotNull EquationCondition> conditions;
 
     private final MathExpression xExpression, zExpression;
+    private final CompiledExpressionPair compiledPair;
+    private final int randomReferences;
 
     /**
      * Construct conditional equation data with a pair of equations.
@@ -42,11 +56,26 @@ public class ConditionalEquationData {
      * @param zExpression the z expression
      */
     public ConditionalEquationData(@NotNull MathExpression xExpression, @NotNull MathExpression zExpression) {
+        this(xExpression, zExpression, compilePair(xExpression, zExpression));
+    }
+
+    /**
+     * Construct conditional equation data with a pair of equations that have already been
+     * compiled together.
+     *
+     * @param xExpression the x expression
+     * @param zExpression the z expression
+     * @param compiledPair the x and z expressions compiled as a pair. May be null, in which
+     * case each expression is evaluated separately
+     */
+    ConditionalEquationData(@NotNull MathExpression xExpression, @NotNull MathExpression zExpression, @Nullable CompiledExpressionPair compiledPair) {
         Preconditions.checkArgument(xExpression != null, "xExpression must not be null");
         Preconditions.checkArgument(zExpression != null, "zExpression must not be null");
 
         this.xExpression = xExpression;
         this.zExpression = zExpression;
+        this.compiledPair = compiledPair;
+        this.randomReferences = countRandomReferences(xExpression) + countRandomReferences(zExpression);
     }
 
     /**
@@ -69,6 +98,68 @@ public class ConditionalEquationData {
         return zExpression;
     }
 
+    /**
+     * Evaluate both the x and z expressions for each of the given stream angles in a single
+     * batch.
+     *
+     * @param variables the variables against which to evaluate
+     * @param theta the angle of each stream
+     * @param outX the array to which x offsets should be written
+     * @param outZ the array to which z offsets should be written
+     * @param count the amount of streams to evaluate
+     *
+     * @see MathExpression#evaluate(ParticleVariables, double[], double[], int)
+     */
+    void evaluateStreams(@NotNull ParticleVariables variables, @NotNull double[] theta, @NotNull double[] outX, @NotNull double[] outZ, int count) {
+        if (compiledPair != null) {
+            this.compiledPair.evaluate(variables, theta, outX, outZ, count);
+            return;
+        }
+
+        if (randomReferences > 0) {
+            evaluateInterleaved(xExpression, zExpression, variables, theta, outX, outZ, count);
+            return;
+        }
+
+        this.xExpression.evaluate(variables, theta, outX, count);
+        this.zExpression.evaluate(variables, theta, outZ, count);
+    }
+
+    /**
+     * Evaluate both the x and z expressions for each of the given stream angles by walking
+     * their parsed trees, regardless of whether or not they were compiled. Expressions of an
+     * unknown implementation are evaluated as is.
+     *
+     * @param variables the variables against which to evaluate
+     * @param theta the angle of each stream
+     * @param outX the array to which x offsets should be written
+     * @param outZ the array to which z offsets should be written
+     * @param count the amount of streams to evaluate
+     *
+     * @see #evaluateStreams(ParticleVariables, double[], double[], double[], int)
+     */
+    void evaluateStreamsInterpreted(@NotNull ParticleVariables variables, @NotNull double[] theta, @NotNull double[] outX, @NotNull double[] outZ, int count) {
+        MathExpression xSource = getSourceExpression(xExpression), zSource = getSourceExpression(zExpression);
+        if (randomReferences > 0) {
+            evaluateInterleaved(xSource, zSource, variables, theta, outX, outZ, count);
+            return;
+        }
+
+        xSource.evaluate(variables, theta, outX, count);
+        zSource.evaluate(variables, theta, outZ, count);
+    }
+
+    /**
+     * Get the amount of random values read when evaluating both the x and z expressions for
+     * a single stream.
+     *
+     * @return the amount of random values per stream. 0 if none, or if unknown because an
+     * expression is of an unknown implementation
+     */
+    int getRandomReferences() {
+        return randomReferences;
+    }
+
     /**
      * Add a condition that must be met for this equation data.
      *
@@ -84,6 +175,16 @@ public class ConditionalEquationData {
         this.conditions.add(condition);
     }
 
+    /**
+     * Get the conditions that must be met for this equation data.
+     *
+     * @return the conditions. Empty if there are none
+     */
+    @NotNull
+    List<@NotNull EquationCondition> getConditions() {
+        return (conditions != null) ? conditions : Collections.emptyList();
+    }
+
     /**
      * Check whether or not this equation data's conditions have all been met given the
      * provided context.
@@ -200,4 +301,42 @@ public class ConditionalEquationData {
         return thetaIncrement;
     }
 
+    // A compiled pair evaluates the x and then the z expression of each stream in turn. Random values must be read in the same order
+    private static void evaluateInterleaved(@NotNull MathExpression xExpression, @NotNull MathExpression zExpression, @NotNull ParticleVariables variables, @NotNull double[] theta, @NotNull double[] outX, @NotNull double[] outZ, int count) {
+        for (int i = 0; i < count; i++) {
+            variables.setTheta(theta[i]);
+            outX[i] = xExpression.evaluate(variables);
+            outZ[i] = zExpression.evaluate(variables);
+        }
+    }
+
+    @NotNull
+    private static MathExpression getSourceExpression(@NotNull MathExpression expression) {
+        return (expression instanceof CompiledExpression) ? ((CompiledExpression) expression).getSource() : expression;
+    }
+
+    private static int countRandomReferences(@NotNull MathExpression expression) {
+        if (expression instanceof CompiledExpression) {
+            return ((CompiledExpression) expression).getSource().countReferences(ParticleVariable.RANDOM);
+        } else if (expression instanceof ExpressionNode) {
+            return ((ExpressionNode) expression).countReferences(ParticleVariable.RANDOM);
+        }
+
+        return 0;
+    }
+
+    // Subexpressions shared between compiled x and z expressions need only be evaluated once per stream
+    @Nullable
+    private static CompiledExpressionPair compilePair(@NotNull MathExpression xExpression, @NotNull MathExpression zExpression) {
+        if (!(xExpression instanceof CompiledExpression) || !(zExpression instanceof CompiledExpression)) {
+            return null;
+        }
+
+        try {
+            return ExpressionCompiler.compilePair(((CompiledExpression) xExpression).getSource(), ((CompiledExpression) zExpression).getSource());
+        } catch (IllegalStateException e) {
+            return null; // Falls back to evaluating each expression separately
+        }
+    }
+
 }
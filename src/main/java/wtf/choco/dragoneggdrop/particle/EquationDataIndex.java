@@ -0,0 +1,317 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dragoneggdrop.particle.condition.ConditionContext;
+import wtf.choco.dragoneggdrop.particle.condition.ConditionDependency;
+import wtf.choco.dragoneggdrop.particle.condition.EquationCondition;
+import wtf.choco.dragoneggdrop.particle.condition.EquationConditionDoubleComparison;
+
+/**
+ * An index over a list of {@link ConditionalEquationData} by which the first equation data
+ * whose conditions are met may be selected without checking every condition of every
+ * equation data.
+ * <p>
+ * The index is keyed on the {@link ParticleVariable} compared by the most conditions. The
+ * values compared against the key variable split it into elementary regions (every compared
+ * value as well as the open intervals between them), within which all comparisons against
+ * the key variable have the same result. For every region, the equation data that may be met
+ * within it are listed ahead of time in their original order. Selection then only requires a
+ * binary search for the key variable's region (or none at all if it has not left the previous
+ * region), and checking the remaining conditions of the listed equation data, if any.
+ * <p>
+ * An index is built for a single session. Conditions whose {@link ConditionDependency} does
+ * not change within a session are checked once upon construction. Equation data with such a
+ * condition that is not met can never be selected in the session and is pruned entirely, and
+ * those that are met are never checked again.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class EquationDataIndex {
+
+    private final Entry[] entries;
+
+    private final ParticleVariable key;
+    private final double[] boundaries;
+    private final Entry[][] regions;
+
+    /**
+     * Construct a new {@link EquationDataIndex}. Conditions added to the equation data after
+     * construction are not reflected by this index.
+     *
+     * @param equationData the equation data to index, in order of precedence
+     * @param sessionContext the context of the session against which to resolve conditions
+     * that do not change within the session
+     */
+    EquationDataIndex(@NotNull List<@NotNull ConditionalEquationData> equationData, @NotNull ConditionContext sessionContext) {
+        Preconditions.checkArgument(equationData != null, "equationData must not be null");
+        Preconditions.checkArgument(sessionContext != null, "sessionContext must not be null");
+
+        this.entries = resolve(equationData, sessionContext);
+        this.key = selectKey(entries);
+
+        // Collect the distinct values compared against the key variable
+        double[] boundaries = new double[0];
+        int boundaryCount = 0;
+        for (Entry entry : entries) {
+            for (EquationCondition condition : entry.conditions) {
+                if (!isKeyComparison(condition)) {
+                    continue;
+                }
+
+                if (boundaryCount == boundaries.length) {
+                    boundaries = Arrays.copyOf(boundaries, Math.max(boundaryCount * 2, 4));
+                }
+
+                boundaries[boundaryCount++] = ((EquationConditionDoubleComparison) condition).getValue() + 0.0; // Normalizes -0.0
+            }
+        }
+
+        Arrays.sort(boundaries, 0, boundaryCount);
+        int distinct = 0;
+        for (int i = 0; i < boundaryCount; i++) {
+            if (distinct == 0 || boundaries[i] != boundaries[distinct - 1]) {
+                boundaries[distinct++] = boundaries[i];
+            }
+        }
+
+        this.boundaries = Arrays.copyOf(boundaries, distinct);
+        this.regions = new Entry[(distinct * 2) + 1][];
+
+        List<@NotNull Entry> candidates = new ArrayList<>();
+        for (int region = 0; region < regions.length; region++) {
+            double representative = getRepresentative(region);
+            candidates.clear();
+
+            for (Entry entry : entries) {
+                boolean coversRegion = true;
+                List<@NotNull EquationCondition> residualConditions = new ArrayList<>();
+
+                for (EquationCondition condition : entry.conditions) {
+                    if (isKeyComparison(condition)) {
+                        EquationConditionDoubleComparison comparison = (EquationConditionDoubleComparison) condition;
+                        coversRegion &= comparison.getComparison().test(representative, comparison.getValue());
+                    } else {
+                        residualConditions.add(condition);
+                    }
+                }
+
+                if (!coversRegion) {
+                    continue;
+                }
+
+                candidates.add(new Entry(entry.data, residualConditions.toArray(new EquationCondition[0])));
+
+                // Equation data without residual conditions is always met in this region. Nothing after it will ever be selected
+                if (residualConditions.isEmpty()) {
+                    break;
+                }
+            }
+
+            this.regions[region] = candidates.toArray(new Entry[0]);
+        }
+    }
+
+    /**
+     * Find the region in which the key variable currently lies.
+     *
+     * @param variables the current variables
+     * @param hint the region returned by the last call to this method, or -1 if none. If the
+     * key variable still lies within this region, no search is performed
+     *
+     * @return the region, or -1 if the key variable is not a number
+     */
+    int findRegion(@NotNull ParticleVariables variables, int hint) {
+        if (key == null) {
+            return 0;
+        }
+
+        double value = variables.get(key);
+        if (Double.isNaN(value)) {
+            return -1;
+        }
+
+        value += 0.0;
+        if (hint >= 0 && isInRegion(hint, value)) {
+            return hint;
+        }
+
+        int index = Arrays.binarySearch(boundaries, value);
+        return (index >= 0) ? (index * 2) + 1 : (-index - 1) * 2;
+    }
+
+    /**
+     * Select the first equation data whose conditions are met in the given region.
+     *
+     * @param region the region in which the key variable lies
+     * @param context the context against which to check residual conditions
+     *
+     * @return the selected equation data. null if no conditions are met
+     */
+    @Nullable
+    ConditionalEquationData select(int region, @NotNull ConditionContext context) {
+        // Comparisons against NaN are never met, fall back to checking every condition
+        for (Entry entry : (region >= 0) ? regions[region] : entries) {
+            if (entry.isMet(context)) {
+                return entry.data;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Check whether or not every equation data has been pruned, in which case no equation data
+     * will ever be selected.
+     *
+     * @return true if empty, false otherwise
+     */
+    boolean isEmpty() {
+        return entries.length == 0;
+    }
+
+    /**
+     * Get the speed multiplier shared by every equation data that may be selected, provided
+     * that some equation data is selected no matter the value of any variable.
+     *
+     * @return the speed multiplier, or NaN if it may vary or no equation data may be selected
+     */
+    double getFixedSpeedMultiplier() {
+        if (entries.length == 0) {
+            return Double.NaN;
+        }
+
+        double speedMultiplier = entries[0].data.getSpeedMultiplier();
+        for (Entry[] candidates : regions) {
+            if (candidates.length == 0 || candidates[candidates.length - 1].conditions.length > 0) {
+                return Double.NaN; // Some values may select no equation data at all
+            }
+
+            for (Entry candidate : candidates) {
+                if (candidate.data.getSpeedMultiplier() != speedMultiplier) {
+                    return Double.NaN;
+                }
+            }
+        }
+
+        return speedMultiplier;
+    }
+
+    private boolean isInRegion(int region, double value) {
+        int index = region / 2;
+        if (region % 2 == 1) {
+            return value == boundaries[index];
+        }
+
+        return (index == 0 || value > boundaries[index - 1]) && (index == boundaries.length || value < boundaries[index]);
+    }
+
+    // Any value that lies within the region. The value is irrelevant for empty regions as they are never found
+    private double getRepresentative(int region) {
+        int index = region / 2;
+        if (region % 2 == 1) {
+            return boundaries[index];
+        }
+
+        if (boundaries.length == 0) {
+            return 0.0;
+        }
+
+        return (index == boundaries.length) ? Math.nextUp(boundaries[index - 1]) : Math.nextDown(boundaries[index]);
+    }
+
+    private boolean isKeyComparison(@NotNull EquationCondition condition) {
+        return key != null && isIndexable(condition) && ((EquationConditionDoubleComparison) condition).getVariable() == key;
+    }
+
+    @NotNull
+    private static Entry[] resolve(@NotNull List<@NotNull ConditionalEquationData> equationData, @NotNull ConditionContext sessionContext) {
+        List<@NotNull Entry> entries = new ArrayList<>(equationData.size());
+
+        for (ConditionalEquationData data : equationData) {
+            List<@NotNull EquationCondition> conditions = new ArrayList<>();
+            boolean met = true;
+
+            for (EquationCondition condition : data.getConditions()) {
+                ConditionDependency dependency = condition.getDependency();
+                if (dependency != ConditionDependency.CONSTANT && dependency != ConditionDependency.SESSION) {
+                    conditions.add(condition);
+                } else if (!condition.isMet(sessionContext)) {
+                    met = false; // Can never be met in this session
+                    break;
+                }
+            }
+
+            if (met) {
+                entries.add(new Entry(data, conditions.toArray(new EquationCondition[0])));
+            }
+        }
+
+        return entries.toArray(new Entry[0]);
+    }
+
+    @Nullable
+    private static ParticleVariable selectKey(@NotNull Entry[] entries) {
+        Map<@NotNull ParticleVariable, @NotNull Integer> counts = new EnumMap<>(ParticleVariable.class);
+        for (Entry entry : entries) {
+            for (EquationCondition condition : entry.conditions) {
+                if (isIndexable(condition)) {
+                    counts.merge(((EquationConditionDoubleComparison) condition).getVariable(), 1, Integer::sum);
+                }
+            }
+        }
+
+        ParticleVariable key = null;
+        int keyCount = 0;
+        for (Map.Entry<@NotNull ParticleVariable, @NotNull Integer> entry : counts.entrySet()) {
+            if (entry.getValue() > keyCount) {
+                key = entry.getKey();
+                keyCount = entry.getValue();
+            }
+        }
+
+        return key;
+    }
+
+    private static boolean isIndexable(@NotNull EquationCondition condition) {
+        if (!(condition instanceof EquationConditionDoubleComparison)) {
+            return false;
+        }
+
+        EquationConditionDoubleComparison comparison = (EquationConditionDoubleComparison) condition;
+        return comparison.getVariable() != null && comparison.getComparison() != null && !Double.isNaN(comparison.getValue());
+    }
+
+    // Equation data alongside the conditions that are yet to be checked
+    private static final class Entry {
+
+        private final ConditionalEquationData data;
+        private final EquationCondition[] conditions;
+
+        private Entry(@NotNull ConditionalEquationData data, @NotNull EquationCondition[] conditions) {
+            this.data = data;
+            this.conditions = conditions;
+        }
+
+        private boolean isMet(@NotNull ConditionContext context) {
+            for (EquationCondition condition : conditions) {
+                if (!condition.isMet(context)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,72 @@
+package wtf.choco.dragoneggdrop.particle;
+
+/**
+ * Represents the level of detail at which an {@link AnimatedParticleSession} is displayed.
+ * Lower levels of detail spawn fewer particles but never alter the timing of an animation,
+ * such that an animation will always end after the same amount of ticks.
+ *
+ * @author Parker Hawke - Choco
+ *
+ * @see ParticleDetailController
+ */
+public enum ParticleDetail {
+
+    /**
+     * The animation is displayed exactly as defined by its shape.
+     */
+    FULL(1.0, 1, 1),
+
+    /**
+     * Half the amount of particles are spawned per stream.
+     */
+    REDUCED(0.5, 1, 1),
+
+    /**
+     * A quarter of the amount of particles are spawned for every other stream, and only every
+     * other frame is displayed.
+     */
+    MINIMAL(0.25, 2, 2);
+
+    private final double amountMultiplier;
+    private final int streamStride, frameStride;
+
+    private ParticleDetail(double amountMultiplier, int streamStride, int frameStride) {
+        this.amountMultiplier = amountMultiplier;
+        this.streamStride = streamStride;
+        this.frameStride = frameStride;
+    }
+
+    /**
+     * Scale a shape's particle amount to this level of detail. A non-zero amount will never
+     * be scaled below 1. An amount of 0 has special meaning for some particles (directional
+     * particles) and is therefore never changed.
+     *
+     * @param particleAmount the amount of particles defined by the shape
+     *
+     * @return the amount of particles to spawn
+     */
+    public int scaleParticleAmount(int particleAmount) {
+        return (particleAmount <= 0) ? particleAmount : Math.max((int) Math.ceil(particleAmount * amountMultiplier), 1);
+    }
+
+    /**
+     * Get the interval at which streams are displayed. 1 displays every stream, 2 every other
+     * stream, etc.
+     *
+     * @return the stream stride
+     */
+    public int getStreamStride() {
+        return streamStride;
+    }
+
+    /**
+     * Get the interval at which frames are displayed. 1 displays every frame, 2 every other
+     * frame, etc. Frames that are not displayed are not evaluated.
+     *
+     * @return the frame stride
+     */
+    public int getFrameStride() {
+        return frameStride;
+    }
+
+}
@@ -0,0 +1,147 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import com.google.common.base.Preconditions;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dragoneggdrop.utils.DEDConstants;
+
+/**
+ * Adapts the {@link ParticleDetail level of detail} of particle animations to the server's
+ * load. The average tick time (MSPT) is sampled at a configurable interval. Detail is reduced
+ * as soon as the MSPT reaches a configured threshold, and is only restored once the MSPT has
+ * fallen a configurable margin below that threshold, so as to not flip between two levels
+ * while the server hovers around a threshold.
+ * <p>
+ * Every change in detail is logged (if enabled) and counted.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class ParticleDetailController {
+
+    private ParticleDetail detail = ParticleDetail.FULL;
+    private int lastCheckTick = Integer.MIN_VALUE;
+    private double lastMspt = 0.0;
+
+    private int degradeCount = 0, restoreCount = 0;
+
+    private final Plugin plugin;
+
+    /**
+     * Construct a new {@link ParticleDetailController}.
+     *
+     * @param plugin the plugin from which to read configuration and to which to log
+     */
+    public ParticleDetailController(@NotNull Plugin plugin) {
+        Preconditions.checkArgument(plugin != null, "plugin must not be null");
+        this.plugin = plugin;
+    }
+
+    /**
+     * Update the level of detail if the configured check interval has passed since the last
+     * update. This method may safely be called multiple times per tick.
+     *
+     * @return the level of detail at which animations should be displayed
+     */
+    @NotNull
+    public ParticleDetail update() {
+        FileConfiguration config = plugin.getConfig();
+        if (!config.getBoolean(DEDConstants.CONFIG_PARTICLES_ADAPTIVE_DETAIL_ENABLED, true)) {
+            if (detail != ParticleDetail.FULL) {
+                this.setDetail(ParticleDetail.FULL, "adaptive detail disabled");
+            }
+
+            return detail;
+        }
+
+        int currentTick = Bukkit.getCurrentTick();
+        int checkInterval = Math.max(config.getInt(DEDConstants.CONFIG_PARTICLES_ADAPTIVE_DETAIL_CHECK_INTERVAL, 20), 1);
+        if (lastCheckTick != Integer.MIN_VALUE && currentTick - lastCheckTick < checkInterval) {
+            return detail;
+        }
+
+        this.lastCheckTick = currentTick;
+        this.lastMspt = Bukkit.getAverageTickTime();
+
+        double reducedThreshold = config.getDouble(DEDConstants.CONFIG_PARTICLES_ADAPTIVE_DETAIL_REDUCED_MSPT, 40.0);
+        double minimalThreshold = config.getDouble(DEDConstants.CONFIG_PARTICLES_ADAPTIVE_DETAIL_MINIMAL_MSPT, 47.0);
+        double restoreMargin = Math.max(config.getDouble(DEDConstants.CONFIG_PARTICLES_ADAPTIVE_DETAIL_RESTORE_MARGIN, 5.0), 0.0);
+
+        ParticleDetail degradeTarget = getDetailFor(lastMspt, reducedThreshold, minimalThreshold);
+        ParticleDetail restoreTarget = getDetailFor(lastMspt + restoreMargin, reducedThreshold, minimalThreshold);
+
+        if (degradeTarget.ordinal() > detail.ordinal()) {
+            this.setDetail(degradeTarget, String.format("MSPT %.2f", lastMspt));
+        }
+        else if (restoreTarget.ordinal() < detail.ordinal()) {
+            this.setDetail(restoreTarget, String.format("MSPT %.2f", lastMspt));
+        }
+
+        return detail;
+    }
+
+    /**
+     * Get the current level of detail without updating it.
+     *
+     * @return the current level of detail
+     */
+    @NotNull
+    public ParticleDetail getDetail() {
+        return detail;
+    }
+
+    /**
+     * Get the average tick time (in milliseconds) as of the last check.
+     *
+     * @return the last sampled MSPT
+     */
+    public double getLastMspt() {
+        return lastMspt;
+    }
+
+    /**
+     * Get the amount of times the level of detail has been reduced.
+     *
+     * @return the degrade count
+     */
+    public int getDegradeCount() {
+        return degradeCount;
+    }
+
+    /**
+     * Get the amount of times the level of detail has been restored.
+     *
+     * @return the restore count
+     */
+    public int getRestoreCount() {
+        return restoreCount;
+    }
+
+    private void setDetail(@NotNull ParticleDetail detail, @NotNull String reason) {
+        boolean degraded = detail.ordinal() > this.detail.ordinal();
+        if (degraded) {
+            this.degradeCount++;
+        } else {
+            this.restoreCount++;
+        }
+
+        if (plugin.getConfig().getBoolean(DEDConstants.CONFIG_PARTICLES_ADAPTIVE_DETAIL_LOG_CHANGES, true)) {
+            this.plugin.getLogger().info("Particle detail " + (degraded ? "reduced" : "restored") + " from " + this.detail + " to " + detail + " (" + reason + ")");
+        }
+
+        this.detail = detail;
+    }
+
+    @NotNull
+    private static ParticleDetail getDetailFor(double mspt, double reducedThreshold, double minimalThreshold) {
+        if (mspt >= minimalThreshold) {
+            return ParticleDetail.MINIMAL;
+        }
+
+        return (mspt >= reducedThreshold) ? ParticleDetail.REDUCED : ParticleDetail.FULL;
+    }
+
+}
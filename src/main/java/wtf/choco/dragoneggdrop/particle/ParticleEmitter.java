@@ -0,0 +1,197 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Spawns the particles of an {@link AnimatedParticleSession} only for the players able to see
+ * them. Receivers are computed once per frame and reused for every stream of that frame,
+ * rather than letting the server resolve (and force-send to) every player in range on every
+ * call.
+ * <p>
+ * A player is a receiver if they are in the same world and within the receiver radius,
+ * measured horizontally from the column in which the animation plays. The radius is never
+ * greater than the world's view distance, beyond which the client would not have the
+ * animation's chunks loaded anyways.
+ * <p>
+ * If a merge grid is set, the points of a frame are quantized to cells of the grid and only
+ * spawned once the frame is {@link #flush() flushed}. Points falling in the same cell are
+ * merged into a single spawn of their summed particle amounts at the first point's position.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class ParticleEmitter {
+
+    private final List<@NotNull Player> receivers = new ArrayList<>();
+    private final Location playerLocation;
+
+    // The points of the current frame, merged by cell. Cells are looked up in an open addressed table of point indices + 1
+    private ConditionalEquationData pointEquationData;
+    private double pointY;
+    private int pointCount = 0, emitCount = 0;
+    private long[] pointCellX = new long[0], pointCellZ = new long[0];
+    private double[] pointX = new double[0], pointZ = new double[0];
+    private int[] pointAmount = new int[0];
+    private int[] cellTable = new int[0];
+
+    private final World world;
+    private final double radius;
+    private final double inverseMergeGrid;
+
+    /**
+     * Construct a new {@link ParticleEmitter}.
+     *
+     * @param world the world in which to emit particles
+     * @param radius the radius (in blocks) in which players will receive particles. If
+     * negative, the world's view distance is used
+     * @param mergeGrid the size (in blocks) of the grid cells in which points are merged. If
+     * 0 or negative, points are never merged
+     */
+    ParticleEmitter(@NotNull World world, double radius, double mergeGrid) {
+        Preconditions.checkArgument(world != null, "world must not be null");
+
+        this.world = world;
+        this.radius = radius;
+        this.inverseMergeGrid = (mergeGrid > 0) ? 1.0 / mergeGrid : 0.0;
+        this.playerLocation = new Location(world, 0, 0, 0);
+    }
+
+    /**
+     * Compute the receivers for the next frame.
+     *
+     * @param x the x coordinate of the animation's column
+     * @param z the z coordinate of the animation's column
+     *
+     * @return true if at least one player will receive the frame, false otherwise
+     */
+    boolean updateReceivers(double x, double z) {
+        this.receivers.clear();
+
+        double viewDistance = world.getViewDistance() * 16.0;
+        double maxDistance = (radius < 0) ? viewDistance : Math.min(radius, viewDistance);
+        double maxDistanceSquared = maxDistance * maxDistance;
+
+        for (Player player : world.getPlayers()) {
+            player.getLocation(playerLocation);
+
+            double deltaX = playerLocation.getX() - x, deltaZ = playerLocation.getZ() - z;
+            if ((deltaX * deltaX) + (deltaZ * deltaZ) <= maxDistanceSquared) {
+                this.receivers.add(player);
+            }
+        }
+
+        return !receivers.isEmpty();
+    }
+
+    /**
+     * Spawn the particle of the given equation data at the given coordinates for all
+     * receivers of the current frame. If points are being merged, the particle is not
+     * spawned until the frame is flushed. All points of a frame must be emitted with the
+     * same equation data and y coordinate.
+     *
+     * @param equationData the equation data whose particle to spawn
+     * @param particleAmount the amount of particles to spawn
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param z the z coordinate
+     */
+    void emit(@NotNull ConditionalEquationData equationData, int particleAmount, double x, double y, double z) {
+        if (inverseMergeGrid == 0.0) {
+            this.spawn(equationData, particleAmount, x, y, z);
+            return;
+        }
+
+        this.pointEquationData = equationData;
+        this.pointY = y;
+        this.emitCount++;
+
+        long cellX = (long) Math.floor(x * inverseMergeGrid), cellZ = (long) Math.floor(z * inverseMergeGrid);
+        int mask = cellTable.length - 1;
+
+        for (int slot = hashCell(cellX, cellZ) & mask; cellTable.length > 0 && cellTable[slot] != 0; slot = (slot + 1) & mask) {
+            int point = cellTable[slot] - 1;
+            if (pointCellX[point] == cellX && pointCellZ[point] == cellZ) {
+                this.pointAmount[point] += particleAmount;
+                return;
+            }
+        }
+
+        this.ensurePointCapacity(pointCount + 1);
+        this.pointCellX[pointCount] = cellX;
+        this.pointCellZ[pointCount] = cellZ;
+        this.pointX[pointCount] = x;
+        this.pointZ[pointCount] = z;
+        this.pointAmount[pointCount] = particleAmount;
+        this.insertCell(pointCount++);
+    }
+
+    /**
+     * Spawn all points of the current frame that have not yet been spawned.
+     *
+     * @return the amount of emitted points that were merged into another, and therefore not
+     * spawned on their own
+     */
+    int flush() {
+        for (int i = 0; i < pointCount; i++) {
+            this.spawn(pointEquationData, pointAmount[i], pointX[i], pointY, pointZ[i]);
+        }
+
+        int merged = emitCount - pointCount;
+
+        this.pointEquationData = null;
+        this.pointCount = 0;
+        this.emitCount = 0;
+        Arrays.fill(cellTable, 0);
+
+        return merged;
+    }
+
+    private void spawn(@NotNull ConditionalEquationData equationData, int particleAmount, double x, double y, double z) {
+        // Force is still set such that receivers further than 32 blocks away may see the particles
+        this.world.spawnParticle(equationData.getParticle(), receivers, null, x, y, z, particleAmount, equationData.getParticleOffsetX(), equationData.getParticleOffsetY(), equationData.getParticleOffsetZ(), equationData.getParticleExtra(), null, true);
+    }
+
+    private void insertCell(int point) {
+        int mask = cellTable.length - 1;
+        int slot = hashCell(pointCellX[point], pointCellZ[point]) & mask;
+
+        while (cellTable[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+
+        this.cellTable[slot] = point + 1;
+    }
+
+    // The table is kept at most half full
+    private void ensurePointCapacity(int points) {
+        if (pointX.length >= points) {
+            return;
+        }
+
+        int capacity = Math.max(Integer.highestOneBit(points - 1) << 1, 16);
+        this.pointCellX = Arrays.copyOf(pointCellX, capacity);
+        this.pointCellZ = Arrays.copyOf(pointCellZ, capacity);
+        this.pointX = Arrays.copyOf(pointX, capacity);
+        this.pointZ = Arrays.copyOf(pointZ, capacity);
+        this.pointAmount = Arrays.copyOf(pointAmount, capacity);
+
+        this.cellTable = new int[capacity * 2];
+        for (int i = 0; i < pointCount; i++) {
+            this.insertCell(i);
+        }
+    }
+
+    private static int hashCell(long cellX, long cellZ) {
+        long hash = (cellX * 0x9E3779B97F4A7C15L) ^ (cellZ * 0xC2B2AE3D27D4EB4FL);
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+}
@@ -0,0 +1,35 @@
+package wtf.choco.dragoneggdrop.particle;
+
+/**
+ * A single computed frame of an {@link AnimatedParticleSession}. Frames are produced by the
+ * session's compute stage (possibly ahead of time and off of the main thread) and consumed
+ * by its emit stage on the main thread. Frame instances are recycled once emitted.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class ParticleFrame {
+
+    ConditionalEquationData equationData;
+
+    // The amount of ticks to wait before this frame is emitted
+    int delayTicks;
+
+    int animationTick;
+    double theta, y, nextY;
+
+    // Whether or not this frame is on the detail's frame stride, and whether it was evaluated
+    boolean displayable, evaluated;
+
+    int streams, streamStride, evaluations;
+    double[] streamX = new double[0], streamZ = new double[0];
+
+    void ensureStreamCapacity(int streams) {
+        if (streamX.length >= streams) {
+            return;
+        }
+
+        this.streamX = new double[streams];
+        this.streamZ = new double[streams];
+    }
+
+}
@@ -0,0 +1,123 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import java.util.Arrays;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A lazily populated cache of the stream offsets evaluated for each frame of a
+ * {@link ParticleShapeDefinition}. Frames are appended by the first session to reach them
+ * and replayed by every subsequent session, which need only translate the cached offsets
+ * to their own origin.
+ * <p>
+ * A cache may only be used for shapes whose expressions are deterministic and independent
+ * of the session's position. Because conditions may still select different equation data
+ * (or a different theta) per session, every frame is keyed by the equation data and theta
+ * with which it was evaluated and will not be replayed for a session in any other state.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class ParticleFrameCache {
+
+    /**
+     * The maximum amount of offsets (x and z combined) held by a single cache. Frames past
+     * this limit are evaluated live.
+     */
+    static final int MAX_CACHED_OFFSETS = 1 << 19; // 4 MiB
+
+    private int frameCount = 0, offsetCount = 0;
+
+    private ConditionalEquationData[] frameEquationData = new ConditionalEquationData[64];
+    private double[] frameTheta = new double[64];
+    private int[] frameStreams = new int[64];
+    private int[] frameOffsetStart = new int[64];
+    private double[] offsets = new double[1024]; // x0, z0, x1, z1, ...
+
+    /**
+     * Copy the cached offsets of a frame into the given arrays if the frame has been
+     * cached for the same equation data, theta and stream count.
+     *
+     * @param frame the frame (1 based, as per {@link ParticleVariables#getT()})
+     * @param equationData the equation data selected for the frame
+     * @param theta the session's theta at the start of the frame
+     * @param streams the amount of streams in the frame
+     * @param outX the array to which the x offsets should be copied
+     * @param outZ the array to which the z offsets should be copied
+     *
+     * @return true if the frame was replayed, false if it must be evaluated
+     */
+    synchronized boolean replay(int frame, @NotNull ConditionalEquationData equationData, double theta, int streams, @NotNull double[] outX, @NotNull double[] outZ) {
+        int index = frame - 1;
+        if (index < 0 || index >= frameCount || frameEquationData[index] != equationData || frameStreams[index] != streams || Double.doubleToLongBits(frameTheta[index]) != Double.doubleToLongBits(theta)) {
+            return false;
+        }
+
+        int offset = frameOffsetStart[index];
+        for (int i = 0; i < streams; i++, offset += 2) {
+            outX[i] = offsets[offset];
+            outZ[i] = offsets[offset + 1];
+        }
+
+        return true;
+    }
+
+    /**
+     * Append an evaluated frame to this cache. The frame is ignored if it is not the frame
+     * immediately following the last cached frame, or if this cache is full.
+     *
+     * @param frame the frame (1 based, as per {@link ParticleVariables#getT()})
+     * @param equationData the equation data selected for the frame
+     * @param theta the session's theta at the start of the frame
+     * @param streams the amount of streams in the frame
+     * @param x the evaluated x offsets
+     * @param z the evaluated z offsets
+     */
+    synchronized void store(int frame, @NotNull ConditionalEquationData equationData, double theta, int streams, @NotNull double[] x, @NotNull double[] z) {
+        if (frame - 1 != frameCount || offsetCount + (streams * 2) > MAX_CACHED_OFFSETS) {
+            return;
+        }
+
+        if (frameCount == frameTheta.length) {
+            int capacity = frameCount * 2;
+            this.frameEquationData = Arrays.copyOf(frameEquationData, capacity);
+            this.frameTheta = Arrays.copyOf(frameTheta, capacity);
+            this.frameStreams = Arrays.copyOf(frameStreams, capacity);
+            this.frameOffsetStart = Arrays.copyOf(frameOffsetStart, capacity);
+        }
+
+        if (offsetCount + (streams * 2) > offsets.length) {
+            this.offsets = Arrays.copyOf(offsets, Math.min(Math.max(offsets.length * 2, offsetCount + (streams * 2)), MAX_CACHED_OFFSETS));
+        }
+
+        this.frameEquationData[frameCount] = equationData;
+        this.frameTheta[frameCount] = theta;
+        this.frameStreams[frameCount] = streams;
+        this.frameOffsetStart[frameCount] = offsetCount;
+
+        for (int i = 0; i < streams; i++) {
+            this.offsets[offsetCount++] = x[i];
+            this.offsets[offsetCount++] = z[i];
+        }
+
+        this.frameCount++;
+    }
+
+    /**
+     * Get the amount of frames currently cached.
+     *
+     * @return the cached frame count
+     */
+    synchronized int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Clear all cached frames.
+     */
+    synchronized void invalidate() {
+        this.frameCount = 0;
+        this.offsetCount = 0;
+        Arrays.fill(frameEquationData, null);
+    }
+
+}
@@ -0,0 +1,57 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A backend by which the stream offsets of a frame of an {@link AnimatedParticleSession} are
+ * computed. Renderers are only responsible for computing frames. Selecting equation data and
+ * emitting the computed particles remains the responsibility of the session.
+ * <p>
+ * Renderers may be invoked off of the main thread (see {@link ParticleSessionManager}), but
+ * never concurrently for the same session. Every renderer must produce the same offsets for
+ * the same frame such that renderers may be freely interchanged. Random values must therefore
+ * be read from the frame's variables in the same order as by the built-in renderers: the x
+ * and then the z expression of each stream in turn.
+ *
+ * @author Parker Hawke - Choco
+ *
+ * @see ParticleRenderers
+ */
+public interface ParticleRenderer {
+
+    /**
+     * Get the name of this renderer by which it may be selected in the configuration or in
+     * a particle shape definition file.
+     *
+     * @return the name
+     */
+    @NotNull
+    public String getName();
+
+    /**
+     * Compute the x and z offsets of the streams of a single frame.
+     * <p>
+     * Only every {@code streamStride}-th stream of the frame is to be computed. The angle of
+     * each of these streams has been written to consecutive indices of {@code theta}, and their
+     * offsets must be written to the same indices of {@code outX} and {@code outZ}.
+     *
+     * @param shape the shape being animated
+     * @param equationData the equation data selected for the frame
+     * @param variables the variables of the frame. Theta is set for every stream
+     * @param animationTick the animation tick of the frame
+     * @param frameTheta the theta of the session at the start of the frame
+     * @param streams the total amount of streams in the frame
+     * @param streamStride the stride between the streams to compute
+     * @param theta the angle of each stream to compute
+     * @param outX the array to which x offsets should be written. Holds at least as many
+     * elements as there are streams in the frame
+     * @param outZ the array to which z offsets should be written. Holds at least as many
+     * elements as there are streams in the frame
+     * @param count the amount of streams to compute
+     *
+     * @return the amount of streams whose expressions were evaluated, counted towards the
+     * evaluation budget. 0 if no expressions were evaluated
+     */
+    public int computeFrame(@NotNull ParticleShapeDefinition shape, @NotNull ConditionalEquationData equationData, @NotNull ParticleVariables variables, int animationTick, double frameTheta, int streams, int streamStride, @NotNull double[] theta, @NotNull double[] outX, @NotNull double[] outZ, int count);
+
+}
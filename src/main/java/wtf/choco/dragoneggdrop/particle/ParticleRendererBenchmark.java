@@ -0,0 +1,295 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Times every registered {@link ParticleRenderer} on the same {@link ParticleShapeDefinition}.
+ * Each renderer computes every frame of an animation created with the same seed at the same
+ * location, without emitting any particles, and the offsets it computes are checksummed such
+ * that renderers can be verified to produce the same animation.
+ * <p>
+ * The {@link ParticleRenderers#CACHED cached} renderer is run twice, first with an empty frame
+ * cache and again with the frames cached by the first run. Every other renderer is run once
+ * beforehand such that the first renderer is not penalized for warming up the JIT.
+ * <p>
+ * A benchmark is run in steps of limited duration (see {@link #step(long)}) such that it may be
+ * spread over several ticks rather than stalling the server. Benchmarks must be run on the
+ * main thread.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class ParticleRendererBenchmark {
+
+    private final ParticleShapeDefinition shape;
+    private final World world;
+    private final double x, y, z;
+    private final long seed;
+    private final int maxFrames;
+
+    private final List<@NotNull Run> runs = new ArrayList<>();
+    private final List<@NotNull Result> results = new ArrayList<>();
+
+    // The run in progress and the session computing its frames. The session is null if the run has not yet started
+    private int runIndex = 0;
+    private AnimatedParticleSession session;
+
+    /**
+     * Construct a new {@link ParticleRendererBenchmark}.
+     *
+     * @param shape the shape to animate
+     * @param world the world in which to animate the shape
+     * @param x the x coordinate at which to animate the shape
+     * @param y the y coordinate at which the animation should start
+     * @param z the z coordinate at which to animate the shape
+     * @param seed the seed of every animation
+     * @param maxFrames the maximum amount of frames to compute per renderer, in case the
+     * animation never stops
+     */
+    public ParticleRendererBenchmark(@NotNull ParticleShapeDefinition shape, @NotNull World world, double x, double y, double z, long seed, int maxFrames) {
+        Preconditions.checkArgument(shape != null, "shape must not be null");
+        Preconditions.checkArgument(world != null, "world must not be null");
+        Preconditions.checkArgument(maxFrames > 0, "maxFrames must be > 0");
+
+        this.shape = shape;
+        this.world = world;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.seed = seed;
+        this.maxFrames = maxFrames;
+
+        for (ParticleRenderer renderer : ParticleRenderers.getAll()) {
+            if (renderer != ParticleRenderers.CACHED) {
+                this.runs.add(new Run(renderer.getName(), renderer, true));
+            }
+        }
+
+        for (ParticleRenderer renderer : ParticleRenderers.getAll()) {
+            if (renderer != ParticleRenderers.CACHED) {
+                this.runs.add(new Run(renderer.getName(), renderer, false));
+                continue;
+            }
+
+            Run cold = new Run(renderer.getName() + " (cold)", renderer, false);
+            cold.invalidateCacheBefore = true;
+            this.runs.add(cold);
+
+            // Frames cached by the benchmark would otherwise never be replayed by the shape's own renderer
+            Run warm = new Run(renderer.getName() + " (warm)", renderer, false);
+            warm.invalidateCacheAfter = !shape.isCachingFrames();
+            this.runs.add(warm);
+        }
+    }
+
+    /**
+     * Check whether or not the checksums of different renderers may be compared. Renderers
+     * may read random values in a different order, so the checksums of shapes reading random
+     * values are only comparable between runs of the same renderer.
+     *
+     * @return true if comparable, false otherwise
+     */
+    public boolean isComparable() {
+        return !shape.isRandom();
+    }
+
+    /**
+     * Compute frames of this benchmark until the given amount of time has been spent, after
+     * which this method returns and the benchmark continues where it left off when this method
+     * is next called. Only the time spent computing frames is accounted to each run.
+     *
+     * @param maxNanos the amount of nanoseconds after which to stop computing frames. At least
+     * one frame is computed regardless
+     *
+     * @return true if the benchmark has completed, false if frames remain to be computed
+     */
+    public boolean step(long maxNanos) {
+        long stepStart = System.nanoTime();
+
+        while (runIndex < runs.size()) {
+            Run run = runs.get(runIndex);
+
+            if (session == null) {
+                if (run.invalidateCacheBefore) {
+                    this.shape.invalidateFrameCache();
+                }
+
+                this.session = shape.createSession(world, x, y, z, seed, run.renderer);
+            }
+
+            if (!computeFrames(run, stepStart, maxNanos)) {
+                return false;
+            }
+
+            if (run.invalidateCacheAfter) {
+                this.shape.invalidateFrameCache();
+            }
+
+            if (!run.warmUp) {
+                this.results.add(new Result(run.name, run.nanos, run.frames, run.evaluations, run.checksum));
+            }
+
+            this.session = null;
+            this.runIndex++;
+
+            // The next run is only started (and its session created) if time remains
+            if (System.nanoTime() - stepStart >= maxNanos) {
+                return isComplete();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Check whether or not this benchmark has completed.
+     *
+     * @return true if completed, false otherwise
+     */
+    public boolean isComplete() {
+        return runIndex >= runs.size();
+    }
+
+    /**
+     * Get the results of this benchmark. The first result is that of the
+     * {@link ParticleRenderers#INTERPRETED interpreted} renderer, against which all other
+     * results may be compared.
+     *
+     * @return the results of all completed runs, in the order in which renderers were run
+     */
+    @NotNull
+    public List<@NotNull Result> getResults() {
+        return Collections.unmodifiableList(results);
+    }
+
+    // Computes frames of the run until it has finished (returning true) or the step has run out of time (returning false)
+    private boolean computeFrames(@NotNull Run run, long stepStart, long maxNanos) {
+        long start = System.nanoTime();
+
+        try {
+            ParticleFrame frame;
+            while (run.frames < maxFrames && (frame = session.computeDetachedFrame()) != null) {
+                run.frames++;
+                run.evaluations += frame.evaluations;
+
+                for (int i = 0; i < frame.streams; i += frame.streamStride) {
+                    run.checksum = (31 * run.checksum) + Double.doubleToLongBits(frame.streamX[i]);
+                    run.checksum = (31 * run.checksum) + Double.doubleToLongBits(frame.streamZ[i]);
+                }
+
+                this.session.recycleFrame(frame);
+
+                if (System.nanoTime() - stepStart >= maxNanos) {
+                    return run.frames >= maxFrames;
+                }
+            }
+
+            return true;
+        } finally {
+            run.nanos += System.nanoTime() - start;
+        }
+    }
+
+    // A single run of a renderer, accumulated over as many steps as required
+    private static final class Run {
+
+        private final String name;
+        private final ParticleRenderer renderer;
+        private final boolean warmUp;
+        private boolean invalidateCacheBefore, invalidateCacheAfter;
+
+        private int frames = 0;
+        private long nanos = 0, evaluations = 0, checksum = 1;
+
+        private Run(@NotNull String name, @NotNull ParticleRenderer renderer, boolean warmUp) {
+            this.name = name;
+            this.renderer = renderer;
+            this.warmUp = warmUp;
+        }
+
+    }
+
+    /**
+     * The result of a single renderer's run.
+     */
+    public static final class Result {
+
+        private final String name;
+        private final long nanos;
+        private final int frames;
+        private final long evaluations, checksum;
+
+        private Result(@NotNull String name, long nanos, int frames, long evaluations, long checksum) {
+            this.name = name;
+            this.nanos = nanos;
+            this.frames = frames;
+            this.evaluations = evaluations;
+            this.checksum = checksum;
+        }
+
+        /**
+         * Get the name of the run. This is the name of the renderer, possibly followed by a
+         * description of the run.
+         *
+         * @return the name
+         */
+        @NotNull
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Get the total amount of nanoseconds taken to compute every frame.
+         *
+         * @return the nanoseconds taken
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Get the average amount of nanoseconds taken to compute a single frame.
+         *
+         * @return the nanoseconds taken per frame
+         */
+        public double getNanosPerFrame() {
+            return (frames > 0) ? (double) nanos / frames : 0.0;
+        }
+
+        /**
+         * Get the amount of frames computed.
+         *
+         * @return the frame count
+         */
+        public int getFrames() {
+            return frames;
+        }
+
+        /**
+         * Get the amount of streams whose expressions were evaluated. Streams replayed from
+         * the frame cache are not counted.
+         *
+         * @return the evaluation count
+         */
+        public long getEvaluations() {
+            return evaluations;
+        }
+
+        /**
+         * Get the checksum of every offset computed.
+         *
+         * @return the checksum
+         */
+        public long getChecksum() {
+            return checksum;
+        }
+
+    }
+
+}
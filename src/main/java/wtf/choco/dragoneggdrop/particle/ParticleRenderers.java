@@ -0,0 +1,153 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A registry of all available {@link ParticleRenderer ParticleRenderers}, including those
+ * provided by DragonEggDrop.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class ParticleRenderers {
+
+    /**
+     * Evaluates expressions by walking their parsed trees. This is the slowest renderer, but
+     * also the simplest, and serves as the reference against which others are compared.
+     */
+    public static final ParticleRenderer INTERPRETED = new InterpretedParticleRenderer();
+
+    /**
+     * Evaluates expressions compiled to bytecode, if compiled when the shape was loaded.
+     * Expressions that were not compiled are interpreted.
+     */
+    public static final ParticleRenderer COMPILED = new CompiledParticleRenderer();
+
+    /**
+     * Replays frames cached by a previous animation of the same shape, if every expression of
+     * the shape is deterministic and does not reference the x, y or z variables. Frames that
+     * have not been cached are evaluated as by {@link #COMPILED} and added to the cache.
+     */
+    public static final ParticleRenderer CACHED = new CachedParticleRenderer();
+
+    private static final Map<@NotNull String, @NotNull ParticleRenderer> RENDERERS = new LinkedHashMap<>();
+
+    static {
+        register(INTERPRETED);
+        register(COMPILED);
+        register(CACHED);
+    }
+
+    private ParticleRenderers() { }
+
+    /**
+     * Register a particle renderer such that it may be selected by its name.
+     *
+     * @param renderer the renderer to register
+     *
+     * @return true if registered, false if a renderer with the same name is already registered
+     */
+    public static boolean register(@NotNull ParticleRenderer renderer) {
+        Preconditions.checkArgument(renderer != null, "renderer must not be null");
+
+        return RENDERERS.putIfAbsent(renderer.getName().toLowerCase(), renderer) == null;
+    }
+
+    /**
+     * Get the particle renderer with the given name.
+     *
+     * @param name the name of the renderer (case insensitive)
+     *
+     * @return the renderer. null if none is registered with the given name
+     */
+    @Nullable
+    public static ParticleRenderer get(@NotNull String name) {
+        Preconditions.checkArgument(name != null, "name must not be null");
+
+        return RENDERERS.get(name.toLowerCase());
+    }
+
+    /**
+     * Get all registered particle renderers in the order in which they were registered.
+     *
+     * @return all renderers
+     */
+    @NotNull
+    public static Collection<@NotNull ParticleRenderer> getAll() {
+        return Collections.unmodifiableCollection(RENDERERS.values());
+    }
+
+    private static final class InterpretedParticleRenderer implements ParticleRenderer {
+
+        @NotNull
+        @Override
+        public String getName() {
+            return "interpreted";
+        }
+
+        @Override
+        public int computeFrame(@NotNull ParticleShapeDefinition shape, @NotNull ConditionalEquationData equationData, @NotNull ParticleVariables variables, int animationTick, double frameTheta, int streams, int streamStride, @NotNull double[] theta, @NotNull double[] outX, @NotNull double[] outZ, int count) {
+            equationData.evaluateStreamsInterpreted(variables, theta, outX, outZ, count);
+            return count;
+        }
+
+    }
+
+    private static final class CompiledParticleRenderer implements ParticleRenderer {
+
+        @NotNull
+        @Override
+        public String getName() {
+            return "compiled";
+        }
+
+        @Override
+        public int computeFrame(@NotNull ParticleShapeDefinition shape, @NotNull ConditionalEquationData equationData, @NotNull ParticleVariables variables, int animationTick, double frameTheta, int streams, int streamStride, @NotNull double[] theta, @NotNull double[] outX, @NotNull double[] outZ, int count) {
+            equationData.evaluateStreams(variables, theta, outX, outZ, count);
+            return count;
+        }
+
+    }
+
+    private static final class CachedParticleRenderer implements ParticleRenderer {
+
+        @NotNull
+        @Override
+        public String getName() {
+            return "cached";
+        }
+
+        @Override
+        public int computeFrame(@NotNull ParticleShapeDefinition shape, @NotNull ConditionalEquationData equationData, @NotNull ParticleVariables variables, int animationTick, double frameTheta, int streams, int streamStride, @NotNull double[] theta, @NotNull double[] outX, @NotNull double[] outZ, int count) {
+            ParticleFrameCache frameCache = shape.getFrameCache();
+
+            // Whole frames are replayed, after which only the streams to compute are kept
+            if (frameCache != null && frameCache.replay(animationTick, equationData, frameTheta, streams, outX, outZ)) {
+                for (int i = 0, stream = 0; i < count; i++, stream += streamStride) {
+                    outX[i] = outX[stream];
+                    outZ[i] = outZ[stream];
+                }
+
+                return 0;
+            }
+
+            int evaluations = COMPILED.computeFrame(shape, equationData, variables, animationTick, frameTheta, streams, streamStride, theta, outX, outZ, count);
+
+            // Only whole frames may be cached
+            if (frameCache != null && count == streams) {
+                frameCache.store(animationTick, equationData, frameTheta, streams, outX, outZ);
+            }
+
+            return evaluations;
+        }
+
+    }
+
+}
@@ -0,0 +1,288 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dragoneggdrop.utils.DEDConstants;
+
+/**
+ * Ticks every active {@link AnimatedParticleSession} from a single task while limiting their
+ * combined cost per tick. Once the configured particle or evaluation budget of a tick has
+ * been spent, all remaining sessions are deferred to the next tick. Sessions of a higher
+ * {@link Priority} are always ticked first, and sessions of equal priority are ticked in a
+ * rotating order such that no one session is always deferred. At least one session is
+ * ticked every tick regardless of its cost.
+ * <p>
+ * Sessions are held by a {@link ParticleSessionStore}, which holds the state of every session
+ * in parallel arrays, and sessions of equal priority are grouped by shape such that sessions
+ * evaluating the same expressions (and replaying the same frame cache) are ticked one after
+ * another.
+ * <p>
+ * The {@link ParticleDetailController} is consulted once per tick and its level of detail
+ * applied to all {@link Priority#DEATH_ANIMATION death animations}.
+ * <p>
+ * If enabled (it is disabled by default), the frames of every session are computed ahead of
+ * time on a shared pool of worker threads. The pool is created when the first session is
+ * started and shut down once no sessions remain. Frames computed by the pool are counted
+ * towards the evaluation budget of the tick in which they are polled, such that the budget
+ * also limits how far ahead the pool may compute.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class ParticleSessionManager {
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    // Sorted by priority, then shape. The sessions of each priority start at the slot at the index of the priority's ordinal in priorityStart
+    private final ParticleSessionStore sessions = new ParticleSessionStore(16);
+    private final int[] priorityStart = new int[PRIORITIES.length + 1];
+    private boolean sorted = true;
+
+    private BukkitTask task;
+    private ExecutorService computeExecutor;
+
+    private int rotation = 0;
+    private long deferredTicks = 0, mergedEmissions = 0;
+
+    private final Plugin plugin;
+    private final ParticleDetailController detailController;
+
+    /**
+     * Construct a new {@link ParticleSessionManager}.
+     *
+     * @param plugin the plugin by which to schedule the task
+     * @param detailController the controller whose level of detail to apply to death
+     * animations
+     */
+    public ParticleSessionManager(@NotNull Plugin plugin, @NotNull ParticleDetailController detailController) {
+        Preconditions.checkArgument(plugin != null, "plugin must not be null");
+        Preconditions.checkArgument(detailController != null, "detailController must not be null");
+
+        this.plugin = plugin;
+        this.detailController = detailController;
+    }
+
+    /**
+     * Start ticking a session. The session will be ticked every tick (budget permitting)
+     * until the stop condition is met, after which the completion callback is run.
+     *
+     * @param session the session to start
+     * @param priority the session's priority
+     * @param stopCondition the condition under which the session should stop. If null,
+     * {@link AnimatedParticleSession#shouldStop()} is used
+     * @param onComplete the callback to run once the session has stopped. May be null
+     */
+    public void start(@NotNull AnimatedParticleSession session, @NotNull Priority priority, @Nullable Predicate<@NotNull AnimatedParticleSession> stopCondition, @Nullable Consumer<@NotNull AnimatedParticleSession> onComplete) {
+        Preconditions.checkArgument(session != null, "session must not be null");
+        Preconditions.checkArgument(priority != null, "priority must not be null");
+
+        FileConfiguration config = plugin.getConfig();
+        int threads = config.getInt(DEDConstants.CONFIG_PARTICLES_ASYNC_COMPUTE_THREADS, 0);
+        if (computeExecutor == null && threads > 0) {
+            this.computeExecutor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("DragonEggDrop Particle Worker #%d").setDaemon(true).build());
+        }
+
+        session.setComputeExecutor(computeExecutor, config.getInt(DEDConstants.CONFIG_PARTICLES_ASYNC_COMPUTE_LOOKAHEAD_FRAMES, 4));
+        this.sessions.transfer(session, priority.ordinal(), stopCondition, onComplete);
+        this.sorted = false;
+
+        if (task == null) {
+            this.task = Bukkit.getScheduler().runTaskTimer(plugin, this::tick, 0L, 1L);
+        }
+    }
+
+    /**
+     * Start ticking a session until {@link AnimatedParticleSession#shouldStop()} is met.
+     *
+     * @param session the session to start
+     * @param priority the session's priority
+     */
+    public void start(@NotNull AnimatedParticleSession session, @NotNull Priority priority) {
+        this.start(session, priority, null, null);
+    }
+
+    /**
+     * Get the amount of sessions currently being ticked.
+     *
+     * @return the active session count
+     */
+    public int getActiveSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Get the total amount of times a session has been deferred to the next tick because
+     * the budget had been spent.
+     *
+     * @return the deferred session tick count
+     */
+    public long getDeferredTicks() {
+        return deferredTicks;
+    }
+
+    /**
+     * Get the total amount of stream positions merged into the spawn of another stream by
+     * all sessions that have completed.
+     *
+     * @return the merged emission count
+     *
+     * @see AnimatedParticleSession#getMergedEmissions()
+     */
+    public long getMergedEmissions() {
+        return mergedEmissions;
+    }
+
+    /**
+     * Stop all active sessions without running their completion callbacks.
+     */
+    public void clear() {
+        for (int slot = 0; slot < sessions.size(); slot++) {
+            this.sessions.getSession(slot).stopComputing();
+        }
+
+        this.sessions.clear();
+        this.stop();
+    }
+
+    private void tick() {
+        FileConfiguration config = plugin.getConfig();
+        int particleBudget = config.getInt(DEDConstants.CONFIG_PARTICLES_BUDGET_PARTICLES_PER_TICK, 10000);
+        int evaluationBudget = config.getInt(DEDConstants.CONFIG_PARTICLES_BUDGET_EVALUATIONS_PER_TICK, 2000);
+        ParticleDetail detail = detailController.update();
+
+        if (!sorted) {
+            this.sortSessions();
+        }
+
+        int particles = 0, evaluations = 0, size = sessions.size();
+        boolean ticked = false;
+        int[] completed = null;
+        int completedCount = 0;
+
+        for (Priority priority : PRIORITIES) {
+            int start = priorityStart[priority.ordinal()], length = priorityStart[priority.ordinal() + 1] - start;
+
+            for (int i = 0; i < length; i++) {
+                int slot = start + ((rotation + i) % length);
+
+                boolean overBudget = (particleBudget >= 0 && particles >= particleBudget) || (evaluationBudget >= 0 && evaluations >= evaluationBudget);
+                if (ticked && overBudget) {
+                    this.deferredTicks++;
+                    continue;
+                }
+
+                AnimatedParticleSession session = sessions.getSession(slot);
+                if (priority == Priority.DEATH_ANIMATION) {
+                    session.setDetail(detail);
+                }
+
+                this.sessions.tick(slot);
+                particles += session.getLastTickParticles();
+                evaluations += session.getLastTickEvaluations();
+                ticked = true;
+
+                if (sessions.shouldStop(slot)) {
+                    if (completed == null) {
+                        completed = new int[size];
+                    }
+
+                    completed[completedCount++] = slot;
+                }
+            }
+        }
+
+        this.rotation = (size > 0) ? (rotation + 1) % size : 0;
+
+        // Callbacks are run only after the tick such that they may safely start new sessions
+        if (completed != null) {
+            List<@NotNull AnimatedParticleSession> completedSessions = new ArrayList<>(completedCount);
+            List<@Nullable Consumer<@NotNull AnimatedParticleSession>> completionCallbacks = new ArrayList<>(completedCount);
+            for (int i = 0; i < completedCount; i++) {
+                completedSessions.add(sessions.getSession(completed[i]));
+                completionCallbacks.add(sessions.getCompletionCallback(completed[i]));
+            }
+
+            this.sessions.removeAll(completed, completedCount);
+            this.sorted = false; // Removal preserves the order, but not the start of each priority
+
+            for (int i = 0; i < completedCount; i++) {
+                AnimatedParticleSession session = completedSessions.get(i);
+                session.stopComputing();
+                this.mergedEmissions += session.getMergedEmissions();
+
+                Consumer<@NotNull AnimatedParticleSession> onComplete = completionCallbacks.get(i);
+                if (onComplete != null) {
+                    onComplete.accept(session);
+                }
+            }
+        }
+
+        if (sessions.size() == 0) {
+            this.stop();
+        }
+    }
+
+    // Rotation only ever starts ticking from a different session of a priority, so at most one group of each priority is split
+    private void sortSessions() {
+        this.sessions.sort();
+
+        int slot = 0;
+        for (Priority priority : PRIORITIES) {
+            this.priorityStart[priority.ordinal()] = slot;
+
+            while (slot < sessions.size() && sessions.getPriority(slot) == priority.ordinal()) {
+                slot++;
+            }
+        }
+
+        this.priorityStart[PRIORITIES.length] = slot;
+        this.sorted = true;
+    }
+
+    private void stop() {
+        if (task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+
+        if (computeExecutor != null) {
+            this.computeExecutor.shutdown();
+            this.computeExecutor = null;
+        }
+    }
+
+    /**
+     * Represents the priority with which a session is ticked. Sessions are ticked in the
+     * order in which priorities are declared.
+     */
+    public enum Priority {
+
+        /**
+         * An animation played upon a dragon's death. Loot is generated only once the
+         * animation has completed.
+         */
+        DEATH_ANIMATION,
+
+        /**
+         * A preview of a particle shape requested by a player. Previews are deferred before
+         * death animations.
+         */
+        PREVIEW;
+
+    }
+
+}
@@ -0,0 +1,361 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Stores the emit stage state of a set of {@link AnimatedParticleSession AnimatedParticleSessions}
+ * in parallel primitive arrays, indexed by slot, such that sessions are ticked by a loop over
+ * these arrays rather than through fields of their own. This includes the height at which
+ * each session is animating, the animation tick and theta of the frame it last displayed, and
+ * the frame it is waiting to display along with the amount of ticks it has waited.
+ * <p>
+ * The compute stage of a session runs ahead of its emit stage, possibly on a worker thread,
+ * and therefore keeps its own state in the session. It only hands computed frames to the emit
+ * stage, which updates the state in this store as they are displayed.
+ * <p>
+ * A session is held by at most one store. While not held by any store, a session holds its
+ * emit stage state itself, which is moved into a store when the session is added to it and
+ * back into the session when removed. A session ticked outside of a {@link ParticleSessionManager}
+ * is added to a store of its own when first ticked. Stores are not thread safe and must only
+ * be accessed from the thread ticking their sessions.
+ *
+ * @author Parker Hawke - Choco
+ */
+final class ParticleSessionStore {
+
+    private AnimatedParticleSession[] sessions;
+    private ParticleFrame[] pendingFrames;
+    private int[] wait, animationTick;
+    private double[] theta, y;
+
+    // Only set by the ParticleSessionManager
+    private int[] priority;
+    private Predicate<@NotNull AnimatedParticleSession>[] stopConditions;
+    private Consumer<@NotNull AnimatedParticleSession>[] completionCallbacks;
+
+    private int size = 0;
+
+    /**
+     * Construct a new empty {@link ParticleSessionStore}.
+     *
+     * @param capacity the amount of sessions for which to allocate space
+     */
+    ParticleSessionStore(int capacity) {
+        this.allocate(Math.max(capacity, 1));
+    }
+
+    /**
+     * Get the amount of sessions held by this store. Sessions occupy slots 0 (inclusive)
+     * through this size (exclusive).
+     *
+     * @return the amount of sessions
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Get the session held in the given slot.
+     *
+     * @param slot the slot
+     *
+     * @return the session
+     */
+    @NotNull
+    AnimatedParticleSession getSession(int slot) {
+        return sessions[slot];
+    }
+
+    /**
+     * Get the priority (as the ordinal of a {@link ParticleSessionManager.Priority}) of the
+     * session held in the given slot.
+     *
+     * @param slot the slot
+     *
+     * @return the priority ordinal. 0 if the session is not ticked by a manager
+     */
+    int getPriority(int slot) {
+        return priority[slot];
+    }
+
+    /**
+     * Get the callback to run once the session held in the given slot has stopped.
+     *
+     * @param slot the slot
+     *
+     * @return the completion callback. null if none
+     */
+    @Nullable
+    Consumer<@NotNull AnimatedParticleSession> getCompletionCallback(int slot) {
+        return completionCallbacks[slot];
+    }
+
+    /**
+     * Check whether or not the session held in the given slot has met its stop condition.
+     *
+     * @param slot the slot
+     *
+     * @return true if the session should stop, false otherwise
+     */
+    boolean shouldStop(int slot) {
+        Predicate<@NotNull AnimatedParticleSession> stopCondition = stopConditions[slot];
+        return (stopCondition != null) ? stopCondition.test(sessions[slot]) : sessions[slot].shouldStop();
+    }
+
+    // The emit stage state of the session held in the given slot
+    int getAnimationTick(int slot) {
+        return animationTick[slot];
+    }
+
+    double getTheta(int slot) {
+        return theta[slot];
+    }
+
+    double getY(int slot) {
+        return y[slot];
+    }
+
+    /**
+     * Add a session that is not held by any store to this store, moving the emit stage state
+     * held by the session into this store.
+     *
+     * @param session the session to add
+     *
+     * @return the slot in which the session is held
+     */
+    int add(@NotNull AnimatedParticleSession session) {
+        this.ensureCapacity(size + 1);
+
+        int slot = size++;
+        this.sessions[slot] = session;
+        this.pendingFrames[slot] = session.detachedFrame;
+        this.wait[slot] = session.detachedWait;
+        this.animationTick[slot] = session.detachedAnimationTick;
+        this.theta[slot] = session.detachedTheta;
+        this.y[slot] = session.detachedY;
+        this.priority[slot] = 0;
+        this.stopConditions[slot] = null;
+        this.completionCallbacks[slot] = null;
+
+        session.detachedFrame = null;
+        session.store = this;
+        session.slot = slot;
+        return slot;
+    }
+
+    /**
+     * Move a session, along with its state, from the store by which it is currently held (if
+     * any) to this store.
+     *
+     * @param session the session to move
+     * @param priority the priority ordinal of the session
+     * @param stopCondition the condition under which the session should stop. If null,
+     * {@link AnimatedParticleSession#shouldStop()} is used
+     * @param onComplete the callback to run once the session has stopped. May be null
+     *
+     * @return the slot in which the session is held
+     */
+    int transfer(@NotNull AnimatedParticleSession session, int priority, @Nullable Predicate<@NotNull AnimatedParticleSession> stopCondition, @Nullable Consumer<@NotNull AnimatedParticleSession> onComplete) {
+        ParticleSessionStore from = session.store;
+        int fromSlot = session.slot;
+
+        int slot = (from != null) ? append(from, fromSlot) : add(session);
+        this.priority[slot] = priority;
+        this.stopConditions[slot] = stopCondition;
+        this.completionCallbacks[slot] = onComplete;
+
+        // The old slot is removed only once appended, such that sessions may also be moved within this store
+        if (from != null) {
+            boolean[] removed = new boolean[from.size];
+            removed[fromSlot] = true;
+            from.compact(removed);
+        }
+
+        return session.slot;
+    }
+
+    /**
+     * Tick the session held in the given slot. The session's frame is polled from its compute
+     * stage if it is not already waiting for one, and displayed once it has waited for the
+     * frame's delay.
+     *
+     * @param slot the slot
+     */
+    void tick(int slot) {
+        AnimatedParticleSession session = sessions[slot];
+        session.beginTick();
+
+        ParticleFrame frame = pendingFrames[slot];
+        if (frame == null) {
+            frame = pendingFrames[slot] = session.pollFrame();
+        } else {
+            session.scheduleCompute();
+        }
+
+        if (frame == null || ++wait[slot] < frame.delayTicks) {
+            return;
+        }
+
+        session.displayFrame(frame);
+        this.animationTick[slot] = frame.animationTick;
+        this.theta[slot] = frame.theta;
+        this.y[slot] = frame.nextY;
+
+        this.wait[slot] = 0;
+        this.pendingFrames[slot] = null;
+    }
+
+    /**
+     * Remove the sessions held in the given slots from this store. The state of every removed
+     * session is moved back into the session. The order of all remaining sessions is preserved.
+     *
+     * @param slots the slots to remove
+     * @param count the amount of slots to remove
+     */
+    void removeAll(int @NotNull [] slots, int count) {
+        boolean[] removed = new boolean[size];
+        for (int i = 0; i < count; i++) {
+            int slot = slots[i];
+            removed[slot] = true;
+            this.detach(slot);
+        }
+
+        this.compact(removed);
+    }
+
+    /**
+     * Remove all sessions from this store. The state of every removed session is moved back
+     * into the session.
+     */
+    void clear() {
+        for (int slot = 0; slot < size; slot++) {
+            this.detach(slot);
+        }
+
+        Arrays.fill(sessions, 0, size, null);
+        Arrays.fill(pendingFrames, 0, size, null);
+        Arrays.fill(stopConditions, 0, size, null);
+        Arrays.fill(completionCallbacks, 0, size, null);
+        this.size = 0;
+    }
+
+    /**
+     * Sort the sessions of this store by their priority and, for sessions of equal priority,
+     * by the id of their shape, such that sessions animating the same shape are held in
+     * consecutive slots.
+     */
+    void sort() {
+        Integer[] order = new Integer[size];
+        for (int slot = 0; slot < size; slot++) {
+            order[slot] = slot;
+        }
+
+        Arrays.sort(order, Comparator.comparingInt((Integer slot) -> priority[slot]).thenComparing(slot -> sessions[slot].getShape().getId()));
+
+        ParticleSessionStore sorted = new ParticleSessionStore(sessions.length);
+        for (Integer slot : order) {
+            sorted.append(this, slot);
+        }
+
+        this.sessions = sorted.sessions;
+        this.pendingFrames = sorted.pendingFrames;
+        this.wait = sorted.wait;
+        this.animationTick = sorted.animationTick;
+        this.theta = sorted.theta;
+        this.y = sorted.y;
+        this.priority = sorted.priority;
+        this.stopConditions = sorted.stopConditions;
+        this.completionCallbacks = sorted.completionCallbacks;
+
+        for (int slot = 0; slot < size; slot++) {
+            this.sessions[slot].store = this;
+        }
+    }
+
+    // Appends the session in the given slot of a store (possibly this store, if not after the end of this store) along with its state
+    private int append(@NotNull ParticleSessionStore from, int fromSlot) {
+        this.ensureCapacity(size + 1);
+
+        int slot = size++;
+        AnimatedParticleSession session = from.sessions[fromSlot];
+        this.sessions[slot] = session;
+        this.pendingFrames[slot] = from.pendingFrames[fromSlot];
+        this.wait[slot] = from.wait[fromSlot];
+        this.animationTick[slot] = from.animationTick[fromSlot];
+        this.theta[slot] = from.theta[fromSlot];
+        this.y[slot] = from.y[fromSlot];
+        this.priority[slot] = from.priority[fromSlot];
+        this.stopConditions[slot] = from.stopConditions[fromSlot];
+        this.completionCallbacks[slot] = from.completionCallbacks[fromSlot];
+
+        session.store = this;
+        session.slot = slot;
+        return slot;
+    }
+
+    // Moves the state of the session in the given slot back into the session, which is no longer held by this store
+    private void detach(int slot) {
+        AnimatedParticleSession session = sessions[slot];
+        session.detachedFrame = pendingFrames[slot];
+        session.detachedWait = wait[slot];
+        session.detachedAnimationTick = animationTick[slot];
+        session.detachedTheta = theta[slot];
+        session.detachedY = y[slot];
+        session.store = null;
+    }
+
+    // Sessions are only ever moved towards the front, so they are compacted in place
+    private void compact(boolean @NotNull [] removed) {
+        int oldSize = size;
+        this.size = 0;
+
+        for (int slot = 0; slot < oldSize; slot++) {
+            if (!removed[slot]) {
+                this.append(this, slot);
+            }
+        }
+
+        // Release references held by slots past the end
+        Arrays.fill(sessions, size, oldSize, null);
+        Arrays.fill(pendingFrames, size, oldSize, null);
+        Arrays.fill(stopConditions, size, oldSize, null);
+        Arrays.fill(completionCallbacks, size, oldSize, null);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= sessions.length) {
+            return;
+        }
+
+        int newCapacity = Math.max(sessions.length * 2, capacity);
+        this.sessions = Arrays.copyOf(sessions, newCapacity);
+        this.pendingFrames = Arrays.copyOf(pendingFrames, newCapacity);
+        this.wait = Arrays.copyOf(wait, newCapacity);
+        this.animationTick = Arrays.copyOf(animationTick, newCapacity);
+        this.theta = Arrays.copyOf(theta, newCapacity);
+        this.y = Arrays.copyOf(y, newCapacity);
+        this.priority = Arrays.copyOf(priority, newCapacity);
+        this.stopConditions = Arrays.copyOf(stopConditions, newCapacity);
+        this.completionCallbacks = Arrays.copyOf(completionCallbacks, newCapacity);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        this.sessions = new AnimatedParticleSession[capacity];
+        this.pendingFrames = new ParticleFrame[capacity];
+        this.wait = new int[capacity];
+        this.animationTick = new int[capacity];
+        this.theta = new double[capacity];
+        this.y = new double[capacity];
+        this.priority = new int[capacity];
+        this.stopConditions = new Predicate[capacity];
+        this.completionCallbacks = new Consumer[capacity];
+    }
+
+}
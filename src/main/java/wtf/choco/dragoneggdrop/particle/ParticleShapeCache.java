@@ -0,0 +1,221 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import com.google.common.base.Preconditions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A binary cache of parsed particle shape definition files, stored in a single file. Each
+ * entry is keyed by the name, size, last modification time and content hash of the file from
+ * which it was parsed, such that only files that have changed since they were last loaded
+ * must be parsed again. Anything depending on the plugin's configuration (such as the math
+ * mode, expression compilation or limits) is applied after a shape is read from the cache.
+ * <p>
+ * The cache is discarded entirely if it was written by a different version of the plugin.
+ *
+ * @author Parker Hawke - Choco
+ *
+ * @see ParticleShapeDefinition#fromFile(File, ParticleShapeCache)
+ */
+public final class ParticleShapeCache {
+
+    private static final int MAGIC = 0x44454450; // "DEDP"
+    private static final int FORMAT_VERSION = 2;
+
+    private final Map<@NotNull String, @NotNull Entry> entries = new HashMap<>();
+    private final Set<@NotNull String> usedEntries = new HashSet<>();
+    private boolean dirty = false;
+
+    private final File file;
+    private final String version;
+
+    /**
+     * Construct a new {@link ParticleShapeCache}. Entries are not read until {@link #read()}
+     * is called.
+     *
+     * @param file the file in which the cache is stored
+     * @param version the version of the plugin. Caches written by other versions are discarded
+     */
+    public ParticleShapeCache(@NotNull File file, @NotNull String version) {
+        Preconditions.checkArgument(file != null, "file must not be null");
+        Preconditions.checkArgument(version != null, "version must not be null");
+
+        this.file = file;
+        this.version = version;
+    }
+
+    /**
+     * Read all entries from the cache file, if it exists. If the cache file could not be read,
+     * or was written by another version of the plugin, the cache is left empty.
+     */
+    public void read() {
+        this.entries.clear();
+        this.usedEntries.clear();
+        this.dirty = false;
+
+        if (!file.isFile()) {
+            return;
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION || !input.readUTF().equals(version)) {
+                this.dirty = true;
+                return;
+            }
+
+            int entryCount = input.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                String fileName = input.readUTF();
+                long size = input.readLong();
+                long lastModified = input.readLong();
+
+                byte[] hash = new byte[input.readUnsignedByte()];
+                input.readFully(hash);
+
+                // Sources are only decoded once requested
+                byte[] data = new byte[input.readInt()];
+                input.readFully(data);
+
+                this.entries.put(fileName, new Entry(size, lastModified, hash, data));
+            }
+        } catch (IOException e) {
+            this.entries.clear();
+            this.dirty = true;
+        }
+    }
+
+    /**
+     * Write all entries that have been requested or added since the cache was last read to the
+     * cache file. Entries for files that no longer exist are thereby removed. Nothing is written
+     * if the cache has not changed.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void write() throws IOException {
+        if (!dirty && usedEntries.size() == entries.size()) {
+            return;
+        }
+
+        this.entries.keySet().retainAll(usedEntries);
+
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeUTF(version);
+
+            output.writeInt(entries.size());
+            for (Map.Entry<@NotNull String, @NotNull Entry> mapEntry : entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+
+                output.writeUTF(mapEntry.getKey());
+                output.writeLong(entry.size);
+                output.writeLong(entry.lastModified);
+                output.writeByte(entry.hash.length);
+                output.write(entry.hash);
+                output.writeInt(entry.data.length);
+                output.write(entry.data);
+            }
+        }
+
+        this.dirty = false;
+    }
+
+    /**
+     * Get the cached source of the given file, provided that the file has not changed since
+     * it was cached.
+     *
+     * @param shapeFile the shape definition file
+     * @param content the current content of the file
+     *
+     * @return the cached source. null if not cached, if the file has changed, or if the cached
+     * source is no longer valid
+     */
+    @Nullable
+    ParticleShapeSource get(@NotNull File shapeFile, byte @NotNull [] content) {
+        String fileName = shapeFile.getName();
+        Entry entry = entries.get(fileName);
+
+        // The content hash is only computed if the cheaper checks pass
+        if (entry == null || entry.size != content.length || entry.lastModified != shapeFile.lastModified() || !Arrays.equals(entry.hash, hash(content))) {
+            return null;
+        }
+
+        try {
+            ParticleShapeSource source = ParticleShapeSource.read(new DataInputStream(new ByteArrayInputStream(entry.data)));
+            this.usedEntries.add(fileName);
+            return source;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Add the parsed source of the given file to this cache, replacing any previous entry.
+     *
+     * @param shapeFile the shape definition file
+     * @param content the content of the file from which the source was parsed
+     * @param source the parsed source
+     */
+    void put(@NotNull File shapeFile, byte @NotNull [] content, @NotNull ParticleShapeSource source) {
+        String fileName = shapeFile.getName();
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        try (DataOutputStream output = new DataOutputStream(data)) {
+            source.write(output);
+        } catch (IOException e) {
+            return; // Sources that cannot be written (i.e. overly long expressions) are simply not cached
+        }
+
+        this.entries.put(fileName, new Entry(content.length, shapeFile.lastModified(), hash(content), data.toByteArray()));
+        this.usedEntries.add(fileName);
+        this.dirty = true;
+    }
+
+    private static byte @NotNull [] hash(byte @NotNull [] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // Every Java platform is required to support SHA-256
+        }
+    }
+
+    private static final class Entry {
+
+        private final long size, lastModified;
+        private final byte[] hash;
+        private final byte[] data;
+
+        private Entry(long size, long lastModified, byte @NotNull [] hash, byte @NotNull [] data) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.data = data;
+        }
+
+    }
+
+}
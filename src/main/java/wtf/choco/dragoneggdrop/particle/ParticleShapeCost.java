@@ -0,0 +1,211 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import com.google.common.base.Preconditions;
+
+import java.util.List;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.commons.util.MathUtil;
+import wtf.choco.dragoneggdrop.utils.math.CompiledExpression;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Binary;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Function;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Negate;
+import wtf.choco.dragoneggdrop.utils.math.MathExpression;
+
+/**
+ * A static estimate of the cost of animating a {@link ParticleShapeDefinition}, computed
+ * without evaluating any of its expressions. As it is unknown which equation data will be
+ * selected during an animation, every estimate is that of the most expensive equation data.
+ *
+ * @author Parker Hawke - Choco
+ *
+ * @see ParticleShapeDefinition#getCost()
+ */
+public final class ParticleShapeCost {
+
+    /**
+     * The y coordinate down to which {@link #getTotalFrames()} is estimated. This is the
+     * lowest height of The End, in which death animations are played.
+     */
+    public static final double FLOOR_Y = 0.0;
+
+    private final int expressionNodes, expressionDepth;
+    private final double evaluationsPerTick, particlesPerSecond;
+    private final int totalFrames;
+
+    private ParticleShapeCost(int expressionNodes, int expressionDepth, double evaluationsPerTick, double particlesPerSecond, int totalFrames) {
+        this.expressionNodes = expressionNodes;
+        this.expressionDepth = expressionDepth;
+        this.evaluationsPerTick = evaluationsPerTick;
+        this.particlesPerSecond = particlesPerSecond;
+        this.totalFrames = totalFrames;
+    }
+
+    /**
+     * Get the amount of nodes (constants, variables, operators and functions) in the x and z
+     * expressions of a single equation data combined. Every node is evaluated once per stream.
+     *
+     * @return the amount of expression nodes
+     */
+    public int getExpressionNodes() {
+        return expressionNodes;
+    }
+
+    /**
+     * Get the depth of the most deeply nested expression.
+     *
+     * @return the expression depth
+     */
+    public int getExpressionDepth() {
+        return expressionDepth;
+    }
+
+    /**
+     * Get the amount of streams evaluated per tick by a single animation at full detail.
+     *
+     * @return the evaluations per tick
+     */
+    public double getEvaluationsPerTick() {
+        return evaluationsPerTick;
+    }
+
+    /**
+     * Get the amount of particles spawned per second by a single animation at full detail.
+     *
+     * @return the particles per second
+     */
+    public double getParticlesPerSecond() {
+        return particlesPerSecond;
+    }
+
+    /**
+     * Get the amount of frames displayed by a single animation descending from the shape's
+     * starting y coordinate to {@link #FLOOR_Y} at the slowest speed of any equation data.
+     *
+     * @return the total frames
+     */
+    public int getTotalFrames() {
+        return totalFrames;
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return String.format("%d expression nodes (depth %d), %.1f evaluations per tick, %.0f particles per second, %d frames", expressionNodes, expressionDepth, evaluationsPerTick, particlesPerSecond, totalFrames);
+    }
+
+    /**
+     * Estimate the cost of a shape with the given starting y coordinate and equation data.
+     *
+     * @param startY the starting y coordinate
+     * @param equationData the equation data
+     *
+     * @return the estimated cost
+     */
+    @NotNull
+    public static ParticleShapeCost estimate(double startY, @NotNull List<@NotNull ConditionalEquationData> equationData) {
+        Preconditions.checkArgument(equationData != null, "equationData must not be null");
+
+        int expressionNodes = 0, expressionDepth = 0;
+        double evaluationsPerTick = 0.0, particlesPerSecond = 0.0, slowestSpeed = Double.NaN;
+
+        for (ConditionalEquationData data : equationData) {
+            ExpressionNode xTree = getSourceTree(data.getXExpression()), zTree = getSourceTree(data.getZExpression());
+            expressionNodes = Math.max(expressionNodes, countNodes(xTree) + countNodes(zTree));
+            expressionDepth = Math.max(expressionDepth, Math.max(getDepth(xTree), getDepth(zTree)));
+
+            // A frame interval of 0 is displayed every tick, same as 1
+            double framesPerTick = 1.0 / Math.max(data.getFrameIntervalTicks(), 1);
+            int streams = getStreamCount(data.getParticleStreams());
+            evaluationsPerTick = Math.max(evaluationsPerTick, streams * framesPerTick);
+            particlesPerSecond = Math.max(particlesPerSecond, streams * Math.max(data.getParticleAmount(), 1) * framesPerTick * 20.0);
+
+            double speed = MathUtil.clamp(data.getSpeedMultiplier(), 0.1, 2.0);
+            if (Double.isNaN(slowestSpeed) || speed < slowestSpeed) {
+                slowestSpeed = speed;
+            }
+        }
+
+        int totalFrames = 0;
+        if (!Double.isNaN(slowestSpeed) && startY > FLOOR_Y) {
+            totalFrames = (int) Math.min(Math.ceil((startY - FLOOR_Y) / slowestSpeed), Integer.MAX_VALUE);
+        }
+
+        return new ParticleShapeCost(expressionNodes, expressionDepth, evaluationsPerTick, particlesPerSecond, totalFrames);
+    }
+
+    /**
+     * Get the amount of streams evaluated for every frame of equation data with the given
+     * amount of particle streams.
+     *
+     * @param particleStreams the amount of particle streams
+     *
+     * @return the amount of evaluated streams
+     */
+    static int getStreamCount(int particleStreams) {
+        Preconditions.checkArgument(particleStreams <= ConditionalEquationData.MAX_PARTICLE_STREAMS, "particleStreams must be <= %s", ConditionalEquationData.MAX_PARTICLE_STREAMS);
+
+        // The amount of streams iterated by "for (int i = 0; i <= 360; i += separation)". As i is truncated, streams are separated by whole degrees
+        int streamSeparationDegrees = 360 / Math.max(particleStreams, 1);
+        return (streamSeparationDegrees >= 360) ? 1 : (360 / streamSeparationDegrees) + 1;
+    }
+
+    /**
+     * Get the greatest amount of particle streams for which no more than the given amount
+     * of streams are evaluated every frame. This is the inverse of {@link #getStreamCount(int)}.
+     *
+     * @param maxStreamCount the maximum amount of evaluated streams
+     *
+     * @return the greatest amount of particle streams. At least 1
+     */
+    static int getMaxParticleStreams(double maxStreamCount) {
+        int maxStreams = (int) Math.min(Math.floor(maxStreamCount), ConditionalEquationData.MAX_PARTICLE_STREAMS + 1);
+        if (maxStreams <= 1) {
+            return 1;
+        }
+
+        // (360 / separation) + 1 <= maxStreams holds for every separation of at least this many degrees
+        int minSeparationDegrees = (360 / maxStreams) + 1;
+        return Math.max(360 / minSeparationDegrees, 1);
+    }
+
+    // Expressions of unknown implementation cannot be inspected
+    @Nullable
+    private static ExpressionNode getSourceTree(@NotNull MathExpression expression) {
+        if (expression instanceof CompiledExpression) {
+            return ((CompiledExpression) expression).getSource();
+        } else if (expression instanceof ExpressionNode) {
+            return (ExpressionNode) expression;
+        }
+
+        return null;
+    }
+
+    private static int countNodes(@Nullable ExpressionNode node) {
+        if (node instanceof Negate) {
+            return 1 + countNodes(((Negate) node).getOperand());
+        } else if (node instanceof Binary) {
+            return 1 + countNodes(((Binary) node).getLeft()) + countNodes(((Binary) node).getRight());
+        } else if (node instanceof Function) {
+            return 1 + countNodes(((Function) node).getArgument());
+        }
+
+        return (node != null) ? 1 : 0;
+    }
+
+    private static int getDepth(@Nullable ExpressionNode node) {
+        if (node instanceof Negate) {
+            return 1 + getDepth(((Negate) node).getOperand());
+        } else if (node instanceof Binary) {
+            return 1 + Math.max(getDepth(((Binary) node).getLeft()), getDepth(((Binary) node).getRight()));
+        } else if (node instanceof Function) {
+            return 1 + getDepth(((Function) node).getArgument());
+        }
+
+        return (node != null) ? 1 : 0;
+    }
+
+}
@@ -3,33 +3,45 @@ package wtf.choco.dragoneggdrop.particle;
 import com.google.common.base.Enums;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
 
 import org.bukkit.Location;
 import org.bukkit.Particle;
 import org.bukkit.World;
+import org.bukkit.configuration.file.FileConfiguration;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import wtf.choco.commons.util.MathUtil;
 import wtf.choco.dragoneggdrop.DragonEggDrop;
+import wtf.choco.dragoneggdrop.particle.ParticleShapeSource.EquationSource;
+import wtf.choco.dragoneggdrop.particle.ParticleShapeSource.ExpressionSource;
+import wtf.choco.dragoneggdrop.particle.condition.ConditionDependency;
 import wtf.choco.dragoneggdrop.particle.condition.ConditionFactory;
 import wtf.choco.dragoneggdrop.particle.condition.EquationCondition;
 import wtf.choco.dragoneggdrop.particle.condition.EquationConditionAlwaysTrue;
 import wtf.choco.dragoneggdrop.particle.condition.EquationConditionDoubleComparison;
 import wtf.choco.dragoneggdrop.particle.condition.EquationConditionStringComparison;
 import wtf.choco.dragoneggdrop.registry.Registerable;
-import wtf.choco.dragoneggdrop.utils.math.ExpressionUtils;
+import wtf.choco.dragoneggdrop.utils.DEDConstants;
+import wtf.choco.dragoneggdrop.utils.math.CompiledExpression;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionCompiler;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionOptimizer;
+import wtf.choco.dragoneggdrop.utils.math.MathExpression;
+import wtf.choco.dragoneggdrop.utils.math.MathMode;
 
-import static wtf.choco.dragoneggdrop.utils.JsonUtils.getOptionalField;
 import static wtf.choco.dragoneggdrop.utils.JsonUtils.getRequiredField;
 
 /**
@@ -42,18 +54,21 @@ public class ParticleShapeDefinition implements Registerable {
 
     static {
         ConditionFactory.registerCondition("always_true", EquationConditionAlwaysTrue::create);
-        ConditionFactory.registerCondition("x_position", json -> EquationConditionDoubleComparison.create(json, context -> context != null ? context.getVariables().getX() : 0.0));
-        ConditionFactory.registerCondition("y_position", json -> EquationConditionDoubleComparison.create(json, context -> context != null ? context.getVariables().getY() : 0.0));
-        ConditionFactory.registerCondition("z_position", json -> EquationConditionDoubleComparison.create(json, context -> context != null ? context.getVariables().getZ() : 0.0));
-        ConditionFactory.registerCondition("t", json -> EquationConditionDoubleComparison.create(json, context -> context != null ? context.getVariables().getT() : 0.0));
-        ConditionFactory.registerCondition("theta", json -> EquationConditionDoubleComparison.create(json, context -> context != null ? context.getVariables().getTheta() : 0.0));
-        ConditionFactory.registerCondition("world", json -> EquationConditionStringComparison.create(json, context -> context.getWorld().getName()));
+        ConditionFactory.registerCondition("x_position", json -> EquationConditionDoubleComparison.create(json, ParticleVariable.X));
+        ConditionFactory.registerCondition("y_position", json -> EquationConditionDoubleComparison.create(json, ParticleVariable.Y));
+        ConditionFactory.registerCondition("z_position", json -> EquationConditionDoubleComparison.create(json, ParticleVariable.Z));
+        ConditionFactory.registerCondition("t", json -> EquationConditionDoubleComparison.create(json, ParticleVariable.T));
+        ConditionFactory.registerCondition("theta", json -> EquationConditionDoubleComparison.create(json, ParticleVariable.THETA));
+        ConditionFactory.registerCondition("world", json -> EquationConditionStringComparison.create(json, context -> context.getWorld().getName(), ConditionDependency.SESSION));
     }
 
     private double startY;
     private List<@NotNull ConditionalEquationData> equationData = new ArrayList<>();
 
     private final String id;
+    private final ParticleRenderer renderer;
+    private final ParticleFrameCache frameCache;
+    private final ParticleShapeCost cost;
 
     /**
      * Construct a new {@link ParticleShapeDefinition}.
@@ -61,15 +76,45 @@ public class ParticleShapeDefinition implements Registerable {
      * @param id the unique id of this shape definition
      * @param startY the starting y coordinate of this shape definition
      * @param equationData this shape definition's equation data
+     * @param renderer the renderer by which frames of this shape should be computed
      */
-    public ParticleShapeDefinition(@NotNull String id, double startY, @NotNull List<@NotNull ConditionalEquationData> equationData) {
+    public ParticleShapeDefinition(@NotNull String id, double startY, @NotNull List<@NotNull ConditionalEquationData> equationData, @NotNull ParticleRenderer renderer) {
         Preconditions.checkArgument(id != null, "id cannot be null");
         Preconditions.checkArgument(startY >= 0, "startY must be >= 0");
         Preconditions.checkArgument(equationData != null, "equationData must not be null");
+        Preconditions.checkArgument(renderer != null, "renderer must not be null");
 
         this.id = id;
         this.startY = startY;
         this.equationData = new ArrayList<>(equationData);
+        this.renderer = renderer;
+        this.frameCache = isCacheable(equationData) ? new ParticleFrameCache() : null;
+        this.cost = ParticleShapeCost.estimate(startY, equationData);
+    }
+
+    /**
+     * Construct a new {@link ParticleShapeDefinition}.
+     *
+     * @param id the unique id of this shape definition
+     * @param startY the starting y coordinate of this shape definition
+     * @param equationData this shape definition's equation data
+     * @param cacheFrames whether or not evaluated frames should be cached (if this shape
+     * is cacheable)
+     */
+    public ParticleShapeDefinition(@NotNull String id, double startY, @NotNull List<@NotNull ConditionalEquationData> equationData, boolean cacheFrames) {
+        this(id, startY, equationData, cacheFrames ? ParticleRenderers.CACHED : ParticleRenderers.COMPILED);
+    }
+
+    /**
+     * Construct a new {@link ParticleShapeDefinition}. Frames will be cached if this shape
+     * is cacheable.
+     *
+     * @param id the unique id of this shape definition
+     * @param startY the starting y coordinate of this shape definition
+     * @param equationData this shape definition's equation data
+     */
+    public ParticleShapeDefinition(@NotNull String id, double startY, @NotNull List<@NotNull ConditionalEquationData> equationData) {
+        this(id, startY, equationData, true);
     }
 
     /**
@@ -97,6 +142,63 @@ public class ParticleShapeDefinition implements Registerable {
         return startY;
     }
 
+    /**
+     * Check whether or not the frames of this shape are being cached. Frames may only be
+     * cached if every expression of this shape is deterministic and does not reference the
+     * x, y or z variables, such that a frame evaluates to the same offsets for every session.
+     *
+     * @return true if frames are cached, false if they are evaluated live
+     */
+    public boolean isCachingFrames() {
+        return frameCache != null && renderer == ParticleRenderers.CACHED;
+    }
+
+    /**
+     * Get the renderer by which frames of this shape are computed.
+     *
+     * @return the renderer
+     */
+    @NotNull
+    public ParticleRenderer getRenderer() {
+        return renderer;
+    }
+
+    /**
+     * Clear all frames cached by this shape. Sessions will re-populate the cache as they
+     * are ticked.
+     */
+    public void invalidateFrameCache() {
+        if (frameCache != null) {
+            this.frameCache.invalidate();
+        }
+    }
+
+    /**
+     * Get the estimated cost of a single animation of this shape.
+     *
+     * @return the estimated cost
+     */
+    @NotNull
+    public ParticleShapeCost getCost() {
+        return cost;
+    }
+
+    @Nullable
+    ParticleFrameCache getFrameCache() {
+        return frameCache;
+    }
+
+    // Whether or not any expression of this shape reads random values, such that its animations depend on their seed
+    boolean isRandom() {
+        for (ConditionalEquationData data : equationData) {
+            if (data.getRandomReferences() > 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     /**
      * Create an animated particle session unique to the specified world and coordinates. The created
      * session will represent this shape definition.
@@ -118,20 +220,48 @@ public class ParticleShapeDefinition implements Registerable {
 
     /**
      * Create an animated particle session unique to the specified world and coordinates. The created
-     * session will represent this shape definition.
+     * session will represent this shape definition. Random values in its expressions will be generated
+     * from the given seed, such that sessions created with the same seed and coordinates display the
+     * same animation.
      *
      * @param world the world in which to create the session
      * @param x the x coordinate at which the animation should originate
      * @param y the y coordinate at which the animation should originate
      * @param z the z coordinate at which the animation should originate
+     * @param seed the seed from which to generate random values
      *
      * @return the animated particle session ready to be run
      */
     @NotNull
-    public AnimatedParticleSession createSession(@NotNull World world, double x, double y, double z) {
+    public AnimatedParticleSession createSession(@NotNull World world, double x, double y, double z, long seed) {
+        return createSession(world, x, y, z, seed, renderer);
+    }
+
+    // Sessions may be created with a renderer other than that of this shape for the sake of comparison
+    @NotNull
+    AnimatedParticleSession createSession(@NotNull World world, double x, double y, double z, long seed, @NotNull ParticleRenderer renderer) {
         Preconditions.checkArgument(world != null, "world must not be null");
 
-        return new AnimatedParticleSession(this, equationData, world, x, y, z);
+        FileConfiguration config = DragonEggDrop.getInstance().getConfig();
+        double receiverRadius = config.getDouble(DEDConstants.CONFIG_PARTICLES_RECEIVER_RADIUS, -1);
+        double mergeGrid = config.getDouble(DEDConstants.CONFIG_PARTICLES_MERGE_GRID, 0.0);
+        return new AnimatedParticleSession(this, equationData, world, x, y, z, seed, renderer, receiverRadius, mergeGrid);
+    }
+
+    /**
+     * Create an animated particle session unique to the specified world and coordinates. The created
+     * session will represent this shape definition and use a random seed.
+     *
+     * @param world the world in which to create the session
+     * @param x the x coordinate at which the animation should originate
+     * @param y the y coordinate at which the animation should originate
+     * @param z the z coordinate at which the animation should originate
+     *
+     * @return the animated particle session ready to be run
+     */
+    @NotNull
+    public AnimatedParticleSession createSession(@NotNull World world, double x, double y, double z) {
+        return createSession(world, x, y, z, ThreadLocalRandom.current().nextLong());
     }
 
     /**
@@ -150,14 +280,38 @@ public class ParticleShapeDefinition implements Registerable {
     }
 
     /**
-     * Load and create a {@link ParticleShapeDefinition} from a JSON {@link File}.
+     * Load and create a {@link ParticleShapeDefinition} from a JSON {@link File}. Shapes whose
+     * estimated cost exceeds the limits set in the configuration are clamped or rejected.
      *
      * @param file the file from which to parse a shape definition
      *
      * @return the shape definition
+     *
+     * @throws JsonParseException if the file is malformed or the shape exceeds a limit and
+     * could not be clamped
      */
     @NotNull
     public static ParticleShapeDefinition fromFile(@NotNull File file) {
+        return fromFile(file, null);
+    }
+
+    /**
+     * Load and create a {@link ParticleShapeDefinition} from a JSON {@link File}. If the file
+     * has not changed since it was added to the given cache, its parsed contents are read from
+     * the cache rather than parsed again. Otherwise they are parsed and added to the cache.
+     * Shapes whose estimated cost exceeds the limits set in the configuration are clamped or
+     * rejected.
+     *
+     * @param file the file from which to parse a shape definition
+     * @param cache the cache of parsed shape definition files, or null to always parse the file
+     *
+     * @return the shape definition
+     *
+     * @throws JsonParseException if the file is malformed or the shape exceeds a limit and
+     * could not be clamped
+     */
+    @NotNull
+    public static ParticleShapeDefinition fromFile(@NotNull File file, @Nullable ParticleShapeCache cache) {
         Preconditions.checkArgument(file != null, "file must not be null");
 
         String fileName = file.getName();
@@ -165,95 +319,187 @@ public class ParticleShapeDefinition implements Registerable {
             throw new IllegalArgumentException("Expected .json file. Got " + fileName.substring(fileName.lastIndexOf('.')) + " instead");
         }
 
-        JsonObject root = null;
+        byte[] content;
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            root = DragonEggDrop.GSON.fromJson(reader, JsonObject.class);
+        try {
+            content = Files.readAllBytes(file.toPath());
         } catch (IOException e) {
             throw new JsonParseException(e.getMessage(), e.getCause());
         }
 
-        String id = fileName.substring(0, fileName.lastIndexOf('.')).replace(' ', '_');
-        double startY = getRequiredField(root, "start_y", JsonElement::getAsDouble);
+        ParticleShapeSource source = (cache != null) ? cache.get(file, content) : null;
+        if (source == null) {
+            String id = fileName.substring(0, fileName.lastIndexOf('.')).replace(' ', '_');
+            JsonObject root = DragonEggDrop.GSON.fromJson(new String(content, StandardCharsets.UTF_8), JsonObject.class);
+            if (root == null) {
+                throw new JsonParseException("File is empty");
+            }
 
-        JsonObject argumentsObject = getRequiredField(root, "arguments", JsonElement::getAsJsonObject);
+            source = ParticleShapeSource.parse(id, root);
 
-        String particleName = getRequiredField(argumentsObject, "particle", JsonElement::getAsString).toUpperCase();
-        Optional<@NotNull Particle> particle = Enums.getIfPresent(Particle.class, particleName);
-        if (!particle.isPresent()) {
-            throw new JsonParseException("Unexpected particle. Given \"" + particleName + "\", expected https://hub.spigotmc.org/javadocs/spigot/org/bukkit/Particle.html");
+            if (cache != null) {
+                cache.put(file, content, source);
+            }
         }
 
-        int particleAmount = getRequiredField(argumentsObject, "particle_amount", JsonElement::getAsInt);
-        double particleExtra = getRequiredField(argumentsObject, "particle_extra", JsonElement::getAsDouble);
-        float particleOffsetX = getRequiredField(argumentsObject, "particle_offset_x", JsonElement::getAsFloat);
-        float particleOffsetY = getRequiredField(argumentsObject, "particle_offset_y", JsonElement::getAsFloat);
-        float particleOffsetZ = getRequiredField(argumentsObject, "particle_offset_z", JsonElement::getAsFloat);
-        int particleStreams = getRequiredField(argumentsObject, "particle_streams", JsonElement::getAsInt);
+        return fromSource(source);
+    }
+
+    @NotNull
+    private static ParticleShapeDefinition fromSource(@NotNull ParticleShapeSource source) {
+        String id = source.id;
 
-        double speedMultiplier = getRequiredField(argumentsObject, "speed_multiplier", JsonElement::getAsDouble);
-        int frameIntervalTicks = getRequiredField(argumentsObject, "frame_interval_ticks", JsonElement::getAsInt);
-        int thetaIncrement = getRequiredField(argumentsObject, "theta_increment", JsonElement::getAsInt);
+        FileConfiguration config = DragonEggDrop.getInstance().getConfig();
+        boolean compileExpressions = config.getBoolean(DEDConstants.CONFIG_PARTICLES_COMPILE_EXPRESSIONS, true);
+
+        String rendererName = (source.renderer != null) ? source.renderer : config.getString(DEDConstants.CONFIG_PARTICLES_RENDERER, ParticleRenderers.CACHED.getName());
+        ParticleRenderer renderer = ParticleRenderers.get(rendererName);
+        if (renderer == null) {
+            throw new JsonParseException("Unexpected renderer. Given \"" + rendererName + "\", expected one of " + ParticleRenderers.getAll().stream().map(ParticleRenderer::getName).collect(Collectors.joining(", ")));
+        }
+
+        String mathModeName = (source.mathMode != null ? source.mathMode : config.getString(DEDConstants.CONFIG_PARTICLES_MATH_MODE, "strict")).toUpperCase();
+        Optional<@NotNull MathMode> mathMode = Enums.getIfPresent(MathMode.class, mathModeName);
+        if (!mathMode.isPresent()) {
+            throw new JsonParseException("Unexpected math mode. Given \"" + mathModeName + "\", expected \"strict\" or \"fast\"");
+        }
 
         List<ConditionalEquationData> equationDataList = new ArrayList<>();
 
-        JsonArray equationsArray = getRequiredField(root, "equations", JsonElement::getAsJsonArray);
-        for (JsonElement equationElement : equationsArray) {
-            if (!equationElement.isJsonObject()) {
-                throw new JsonParseException("Invalid equation element. Expected object, got " + equationElement.getClass().getSimpleName());
+        for (EquationSource equation : source.equations) {
+            ExpressionNode xTree = prepareExpression(id, equation.x, mathMode.get()), zTree = prepareExpression(id, equation.z, mathMode.get());
+            ConditionalEquationData equationData = compileExpressions ? compileEquationData(equation, xTree, zTree) : new ConditionalEquationData(xTree, zTree, null);
+
+            for (String condition : equation.conditions) {
+                equationData.addCondition(parseCondition(DragonEggDrop.GSON.fromJson(condition, JsonObject.class)));
             }
 
-            JsonObject equationObject = equationElement.getAsJsonObject();
+            equationData.particle = Particle.valueOf(equation.particle);
+            equationData.particleAmount = equation.particleAmount;
+            equationData.particleExtra = equation.particleExtra;
+            equationData.particleOffsetX = equation.particleOffsetX;
+            equationData.particleOffsetY = equation.particleOffsetY;
+            equationData.particleOffsetZ = equation.particleOffsetZ;
+            equationData.particleStreams = equation.particleStreams;
+            if (equationData.particleStreams > ConditionalEquationData.MAX_PARTICLE_STREAMS) {
+                throw new JsonParseException("Particle shape " + id + " has " + equationData.particleStreams + " particle streams, exceeding the maximum of " + ConditionalEquationData.MAX_PARTICLE_STREAMS);
+            }
+
+            equationData.speedMultiplier = equation.speedMultiplier;
+            equationData.frameIntervalTicks = equation.frameIntervalTicks;
+            equationData.thetaIncrement = equation.thetaIncrement;
+
+            equationDataList.add(equationData);
+        }
+
+        double startY = source.startY;
+        startY = applyLimits(id, startY, equationDataList, config);
+        return new ParticleShapeDefinition(id, startY, equationDataList, renderer);
+    }
 
-            String xExpressionString = getRequiredField(equationObject, "x", JsonElement::getAsString);
-            String zExpressionString = getRequiredField(equationObject, "z", JsonElement::getAsString);
+    // Returns the (possibly clamped) start y. Equation data is clamped in place
+    private static double applyLimits(String shapeId, double startY, List<@NotNull ConditionalEquationData> equationData, FileConfiguration config) {
+        int maxExpressionNodes = config.getInt(DEDConstants.CONFIG_PARTICLES_LIMITS_EXPRESSION_NODES, 256);
+        int maxExpressionDepth = config.getInt(DEDConstants.CONFIG_PARTICLES_LIMITS_EXPRESSION_DEPTH, 32);
+        double maxEvaluationsPerTick = config.getDouble(DEDConstants.CONFIG_PARTICLES_LIMITS_EVALUATIONS_PER_TICK, 64);
+        double maxParticlesPerSecond = config.getDouble(DEDConstants.CONFIG_PARTICLES_LIMITS_PARTICLES_PER_SECOND, 10000);
+        int maxTotalFrames = config.getInt(DEDConstants.CONFIG_PARTICLES_LIMITS_TOTAL_FRAMES, 2000);
+        boolean clamp = config.getBoolean(DEDConstants.CONFIG_PARTICLES_LIMITS_CLAMP, true);
 
-            ConditionalEquationData equationData = new ConditionalEquationData(ExpressionUtils.parseExpression(xExpressionString), ExpressionUtils.parseExpression(zExpressionString));
+        ParticleShapeCost cost = ParticleShapeCost.estimate(startY, equationData);
 
-            if (equationObject.has("conditions")) {
-                JsonElement conditionsElement = equationObject.get("conditions");
-                if (!conditionsElement.isJsonArray()) {
-                    throw new JsonParseException("Invalid conditions element. Expected array, got " + conditionsElement.getClass().getSimpleName());
-                }
+        // Expressions cannot be clamped
+        if (maxExpressionNodes >= 0 && cost.getExpressionNodes() > maxExpressionNodes) {
+            throw new JsonParseException("Expressions of particle shape " + shapeId + " are too large. " + cost.getExpressionNodes() + " nodes exceeds the limit of " + maxExpressionNodes);
+        }
+        if (maxExpressionDepth >= 0 && cost.getExpressionDepth() > maxExpressionDepth) {
+            throw new JsonParseException("Expressions of particle shape " + shapeId + " are too deeply nested. A depth of " + cost.getExpressionDepth() + " exceeds the limit of " + maxExpressionDepth);
+        }
 
-                for (JsonElement conditionElement : conditionsElement.getAsJsonArray()) {
-                    if (!conditionElement.isJsonObject()) {
-                        throw new JsonParseException("Invalid condition element. Expected object, got " + conditionElement.getClass().getSimpleName());
-                    }
+        boolean exceedsEvaluations = maxEvaluationsPerTick >= 0 && cost.getEvaluationsPerTick() > maxEvaluationsPerTick;
+        boolean exceedsParticles = maxParticlesPerSecond >= 0 && cost.getParticlesPerSecond() > maxParticlesPerSecond;
+        boolean exceedsFrames = maxTotalFrames >= 0 && cost.getTotalFrames() > maxTotalFrames;
+        if (!exceedsEvaluations && !exceedsParticles && !exceedsFrames) {
+            return startY;
+        }
 
-                    equationData.addCondition(parseCondition(conditionElement.getAsJsonObject()));
-                }
+        if (!clamp) {
+            throw new JsonParseException("Particle shape " + shapeId + " exceeds the configured limits (" + cost + ")");
+        }
+
+        for (ConditionalEquationData data : equationData) {
+            int frameIntervalTicks = Math.max(data.getFrameIntervalTicks(), 1);
+
+            if (exceedsEvaluations) {
+                data.particleStreams = Math.min(data.particleStreams, ParticleShapeCost.getMaxParticleStreams(maxEvaluationsPerTick * frameIntervalTicks));
             }
 
-            // Kind of cheating here. If we don't have an "arguments" tag in our equation data, use the argumentsObject from root instead
-            JsonElement equationArgumentsElement = getOptionalField(equationObject, "arguments", JsonElement::getAsJsonObject, argumentsObject);
-            if (!equationArgumentsElement.isJsonObject()) {
-                throw new JsonParseException("Invalid arguments element. Expected object, got " + equationArgumentsElement.getClass().getSimpleName());
+            if (exceedsParticles && data.particleAmount > 1) {
+                int streams = ParticleShapeCost.getStreamCount(data.particleStreams);
+                data.particleAmount = (int) Math.max(Math.min(data.particleAmount, (maxParticlesPerSecond * frameIntervalTicks) / (streams * 20.0)), 1);
             }
+        }
 
-            JsonObject equationArgumentsRoot = equationArgumentsElement.getAsJsonObject();
-            particleName = getOptionalField(equationArgumentsRoot, "particle", JsonElement::getAsString, particle.get().name()).toUpperCase();
-            Optional<@NotNull Particle> equationParticle = Enums.getIfPresent(Particle.class, particleName);
-            if (!equationParticle.isPresent()) {
-                throw new JsonParseException("Unexpected particle. Given \"" + particleName + "\", expected https://hub.spigotmc.org/javadocs/spigot/org/bukkit/Particle.html");
+        if (exceedsFrames) {
+            double slowestSpeed = 2.0;
+            for (ConditionalEquationData data : equationData) {
+                slowestSpeed = Math.min(slowestSpeed, MathUtil.clamp(data.getSpeedMultiplier(), 0.1, 2.0));
             }
 
-            equationData.particle = equationParticle.get();
-            equationData.particleAmount = getOptionalField(equationArgumentsRoot, "particle_amount", JsonElement::getAsInt, particleAmount);
-            equationData.particleExtra = getOptionalField(equationArgumentsRoot, "particle_extra", JsonElement::getAsDouble, particleExtra);
-            equationData.particleOffsetX = getOptionalField(equationArgumentsRoot, "particle_offset_x", JsonElement::getAsFloat, particleOffsetX);
-            equationData.particleOffsetY = getOptionalField(equationArgumentsRoot, "particle_offset_y", JsonElement::getAsFloat, particleOffsetY);
-            equationData.particleOffsetZ = getOptionalField(equationArgumentsRoot, "particle_offset_z", JsonElement::getAsFloat, particleOffsetZ);
-            equationData.particleStreams = getOptionalField(equationArgumentsRoot, "particle_streams", JsonElement::getAsInt, particleStreams);
+            startY = Math.min(startY, ParticleShapeCost.FLOOR_Y + (maxTotalFrames * slowestSpeed));
+        }
 
-            equationData.speedMultiplier = getOptionalField(equationArgumentsRoot, "speed_multiplier", JsonElement::getAsDouble, speedMultiplier);
-            equationData.frameIntervalTicks = getOptionalField(equationArgumentsRoot, "frame_interval_ticks", JsonElement::getAsInt, frameIntervalTicks);
-            equationData.thetaIncrement = getOptionalField(equationArgumentsRoot, "theta_increment", JsonElement::getAsInt, thetaIncrement);
+        ParticleShapeCost clampedCost = ParticleShapeCost.estimate(startY, equationData);
+        DragonEggDrop.getInstance().getLogger().warning("Particle shape " + shapeId + " exceeds the configured limits and has been clamped. Estimated cost was " + cost + ", now " + clampedCost);
+        return startY;
+    }
 
-            equationDataList.add(equationData);
+    private static boolean isCacheable(@NotNull List<@NotNull ConditionalEquationData> equationData) {
+        for (ConditionalEquationData data : equationData) {
+            if (!isCacheable(data.getXExpression()) || !isCacheable(data.getZExpression())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isCacheable(@NotNull MathExpression expression) {
+        ExpressionNode tree = null;
+        if (expression instanceof CompiledExpression) {
+            tree = ((CompiledExpression) expression).getSource();
+        } else if (expression instanceof ExpressionNode) {
+            tree = (ExpressionNode) expression;
         }
 
-        return new ParticleShapeDefinition(id, startY, equationDataList);
+        // Expressions of unknown implementation cannot be inspected and are never cached
+        return tree != null && tree.isDeterministic() && !tree.references(ParticleVariable.X) && !tree.references(ParticleVariable.Y) && !tree.references(ParticleVariable.Z);
+    }
+
+    private static ExpressionNode prepareExpression(String shapeId, ExpressionSource source, MathMode mathMode) {
+        for (String variable : source.unknownVariables) {
+            DragonEggDrop.getInstance().getLogger().warning("Unknown variable \"" + variable + "\" in expression \"" + source.expression + "\" of particle shape " + shapeId + ". It will evaluate to 0.0");
+        }
+
+        return ExpressionOptimizer.optimize(source.tree, mathMode);
+    }
+
+    // Only the pair is compiled, as the x and z expressions are otherwise only interpreted. Each is compiled on its own only if the pair cannot be
+    private static ConditionalEquationData compileEquationData(EquationSource equation, ExpressionNode xTree, ExpressionNode zTree) {
+        try {
+            return new ConditionalEquationData(xTree, zTree, ExpressionCompiler.compilePair(xTree, zTree));
+        } catch (IllegalStateException e) {
+            return new ConditionalEquationData(compileExpression(equation.x, xTree), compileExpression(equation.z, zTree), null);
+        }
+    }
+
+    private static MathExpression compileExpression(ExpressionSource source, ExpressionNode tree) {
+        try {
+            return ExpressionCompiler.compile(tree);
+        } catch (IllegalStateException e) {
+            DragonEggDrop.getInstance().getLogger().warning("Could not compile expression \"" + source.expression + "\" (" + e.getCause() + "). It will be interpreted instead");
+            return tree;
+        }
     }
 
     private static EquationCondition parseCondition(JsonObject conditionObject) {
@@ -0,0 +1,398 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import com.google.common.base.Enums;
+import com.google.common.base.Preconditions;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.bukkit.Particle;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Binary;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Constant;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Function;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Negate;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Operator;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Variable;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionUtils;
+import wtf.choco.dragoneggdrop.utils.math.MathFunction;
+
+import static wtf.choco.dragoneggdrop.utils.JsonUtils.getOptionalField;
+import static wtf.choco.dragoneggdrop.utils.JsonUtils.getRequiredField;
+
+/**
+ * The parsed contents of a particle shape definition file, independent of the plugin's
+ * configuration. Expressions are held as parsed (but not yet optimized or compiled) trees,
+ * and conditions as the JSON objects from which they are created, as condition factories
+ * may be registered by other plugins. A source may be written to and read from a compact
+ * binary form such that unchanged files need not be parsed again.
+ *
+ * @author Parker Hawke - Choco
+ *
+ * @see ParticleShapeCache
+ */
+final class ParticleShapeSource {
+
+    private static final byte NODE_CONSTANT = 0, NODE_VARIABLE = 1, NODE_NEGATE = 2, NODE_BINARY = 3, NODE_FUNCTION = 4;
+
+    final String id;
+    final double startY;
+    final String mathMode;
+    final String renderer;
+    final List<@NotNull EquationSource> equations;
+
+    private ParticleShapeSource(@NotNull String id, double startY, @Nullable String mathMode, @Nullable String renderer, @NotNull List<@NotNull EquationSource> equations) {
+        this.id = id;
+        this.startY = startY;
+        this.mathMode = mathMode;
+        this.renderer = renderer;
+        this.equations = equations;
+    }
+
+    /**
+     * Parse a shape source from the root object of a shape definition file.
+     *
+     * @param id the id of the shape
+     * @param root the root object
+     *
+     * @return the parsed source
+     *
+     * @throws JsonParseException if the object is malformed
+     */
+    @NotNull
+    static ParticleShapeSource parse(@NotNull String id, @NotNull JsonObject root) {
+        Preconditions.checkArgument(id != null, "id must not be null");
+        Preconditions.checkArgument(root != null, "root must not be null");
+
+        double startY = getRequiredField(root, "start_y", JsonElement::getAsDouble);
+
+        JsonObject argumentsObject = getRequiredField(root, "arguments", JsonElement::getAsJsonObject);
+
+        String particle = parseParticle(getRequiredField(argumentsObject, "particle", JsonElement::getAsString));
+        int particleAmount = getRequiredField(argumentsObject, "particle_amount", JsonElement::getAsInt);
+        double particleExtra = getRequiredField(argumentsObject, "particle_extra", JsonElement::getAsDouble);
+        float particleOffsetX = getRequiredField(argumentsObject, "particle_offset_x", JsonElement::getAsFloat);
+        float particleOffsetY = getRequiredField(argumentsObject, "particle_offset_y", JsonElement::getAsFloat);
+        float particleOffsetZ = getRequiredField(argumentsObject, "particle_offset_z", JsonElement::getAsFloat);
+        int particleStreams = getRequiredField(argumentsObject, "particle_streams", JsonElement::getAsInt);
+
+        double speedMultiplier = getRequiredField(argumentsObject, "speed_multiplier", JsonElement::getAsDouble);
+        int frameIntervalTicks = getRequiredField(argumentsObject, "frame_interval_ticks", JsonElement::getAsInt);
+        int thetaIncrement = getRequiredField(argumentsObject, "theta_increment", JsonElement::getAsInt);
+
+        String mathMode = root.has("math_mode") ? getRequiredField(root, "math_mode", JsonElement::getAsString) : null;
+        String renderer = root.has("renderer") ? getRequiredField(root, "renderer", JsonElement::getAsString) : null;
+
+        List<@NotNull EquationSource> equations = new ArrayList<>();
+
+        JsonArray equationsArray = getRequiredField(root, "equations", JsonElement::getAsJsonArray);
+        for (JsonElement equationElement : equationsArray) {
+            if (!equationElement.isJsonObject()) {
+                throw new JsonParseException("Invalid equation element. Expected object, got " + equationElement.getClass().getSimpleName());
+            }
+
+            JsonObject equationObject = equationElement.getAsJsonObject();
+            EquationSource equation = new EquationSource(
+                new ExpressionSource(getRequiredField(equationObject, "x", JsonElement::getAsString)),
+                new ExpressionSource(getRequiredField(equationObject, "z", JsonElement::getAsString))
+            );
+
+            if (equationObject.has("conditions")) {
+                JsonElement conditionsElement = equationObject.get("conditions");
+                if (!conditionsElement.isJsonArray()) {
+                    throw new JsonParseException("Invalid conditions element. Expected array, got " + conditionsElement.getClass().getSimpleName());
+                }
+
+                for (JsonElement conditionElement : conditionsElement.getAsJsonArray()) {
+                    if (!conditionElement.isJsonObject()) {
+                        throw new JsonParseException("Invalid condition element. Expected object, got " + conditionElement.getClass().getSimpleName());
+                    }
+
+                    equation.conditions.add(conditionElement.toString());
+                }
+            }
+
+            // Kind of cheating here. If we don't have an "arguments" tag in our equation data, use the argumentsObject from root instead
+            JsonElement equationArgumentsElement = getOptionalField(equationObject, "arguments", JsonElement::getAsJsonObject, argumentsObject);
+            if (!equationArgumentsElement.isJsonObject()) {
+                throw new JsonParseException("Invalid arguments element. Expected object, got " + equationArgumentsElement.getClass().getSimpleName());
+            }
+
+            JsonObject equationArgumentsRoot = equationArgumentsElement.getAsJsonObject();
+            equation.particle = parseParticle(getOptionalField(equationArgumentsRoot, "particle", JsonElement::getAsString, particle));
+            equation.particleAmount = getOptionalField(equationArgumentsRoot, "particle_amount", JsonElement::getAsInt, particleAmount);
+            equation.particleExtra = getOptionalField(equationArgumentsRoot, "particle_extra", JsonElement::getAsDouble, particleExtra);
+            equation.particleOffsetX = getOptionalField(equationArgumentsRoot, "particle_offset_x", JsonElement::getAsFloat, particleOffsetX);
+            equation.particleOffsetY = getOptionalField(equationArgumentsRoot, "particle_offset_y", JsonElement::getAsFloat, particleOffsetY);
+            equation.particleOffsetZ = getOptionalField(equationArgumentsRoot, "particle_offset_z", JsonElement::getAsFloat, particleOffsetZ);
+            equation.particleStreams = getOptionalField(equationArgumentsRoot, "particle_streams", JsonElement::getAsInt, particleStreams);
+
+            equation.speedMultiplier = getOptionalField(equationArgumentsRoot, "speed_multiplier", JsonElement::getAsDouble, speedMultiplier);
+            equation.frameIntervalTicks = getOptionalField(equationArgumentsRoot, "frame_interval_ticks", JsonElement::getAsInt, frameIntervalTicks);
+            equation.thetaIncrement = getOptionalField(equationArgumentsRoot, "theta_increment", JsonElement::getAsInt, thetaIncrement);
+
+            equations.add(equation);
+        }
+
+        return new ParticleShapeSource(id, startY, mathMode, renderer, equations);
+    }
+
+    /**
+     * Write this source in its binary form.
+     *
+     * @param output the output to which this source should be written
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    void write(@NotNull DataOutput output) throws IOException {
+        output.writeUTF(id);
+        output.writeDouble(startY);
+        output.writeBoolean(mathMode != null);
+        if (mathMode != null) {
+            output.writeUTF(mathMode);
+        }
+        output.writeBoolean(renderer != null);
+        if (renderer != null) {
+            output.writeUTF(renderer);
+        }
+
+        output.writeInt(equations.size());
+        for (EquationSource equation : equations) {
+            equation.x.write(output);
+            equation.z.write(output);
+
+            output.writeInt(equation.conditions.size());
+            for (String condition : equation.conditions) {
+                output.writeUTF(condition);
+            }
+
+            output.writeUTF(equation.particle);
+            output.writeInt(equation.particleAmount);
+            output.writeDouble(equation.particleExtra);
+            output.writeFloat(equation.particleOffsetX);
+            output.writeFloat(equation.particleOffsetY);
+            output.writeFloat(equation.particleOffsetZ);
+            output.writeInt(equation.particleStreams);
+
+            output.writeDouble(equation.speedMultiplier);
+            output.writeInt(equation.frameIntervalTicks);
+            output.writeInt(equation.thetaIncrement);
+        }
+    }
+
+    /**
+     * Read a source from its binary form.
+     *
+     * @param input the input from which to read the source
+     *
+     * @return the source
+     *
+     * @throws IOException if an I/O error occurs, or the source is no longer valid (i.e. it
+     * references a function that no longer exists)
+     */
+    @NotNull
+    static ParticleShapeSource read(@NotNull DataInput input) throws IOException {
+        String id = input.readUTF();
+        double startY = input.readDouble();
+        String mathMode = input.readBoolean() ? input.readUTF() : null;
+        String renderer = input.readBoolean() ? input.readUTF() : null;
+
+        int equationCount = input.readInt();
+        List<@NotNull EquationSource> equations = new ArrayList<>(equationCount);
+
+        for (int i = 0; i < equationCount; i++) {
+            EquationSource equation = new EquationSource(ExpressionSource.read(input), ExpressionSource.read(input));
+
+            int conditionCount = input.readInt();
+            for (int j = 0; j < conditionCount; j++) {
+                equation.conditions.add(input.readUTF());
+            }
+
+            equation.particle = input.readUTF();
+            equation.particleAmount = input.readInt();
+            equation.particleExtra = input.readDouble();
+            equation.particleOffsetX = input.readFloat();
+            equation.particleOffsetY = input.readFloat();
+            equation.particleOffsetZ = input.readFloat();
+            equation.particleStreams = input.readInt();
+
+            equation.speedMultiplier = input.readDouble();
+            equation.frameIntervalTicks = input.readInt();
+            equation.thetaIncrement = input.readInt();
+
+            equations.add(equation);
+        }
+
+        return new ParticleShapeSource(id, startY, mathMode, renderer, equations);
+    }
+
+    @NotNull
+    private static String parseParticle(@NotNull String particleName) {
+        particleName = particleName.toUpperCase();
+
+        if (!Enums.getIfPresent(Particle.class, particleName).isPresent()) {
+            throw new JsonParseException("Unexpected particle. Given \"" + particleName + "\", expected https://hub.spigotmc.org/javadocs/spigot/org/bukkit/Particle.html");
+        }
+
+        return particleName;
+    }
+
+    private static void writeTree(@NotNull DataOutput output, @NotNull ExpressionNode node) throws IOException {
+        if (node instanceof Constant) {
+            output.writeByte(NODE_CONSTANT);
+            output.writeDouble(((Constant) node).getValue());
+        } else if (node instanceof Variable) {
+            output.writeByte(NODE_VARIABLE);
+            output.writeUTF(((Variable) node).getVariable().getName());
+        } else if (node instanceof Negate) {
+            output.writeByte(NODE_NEGATE);
+            writeTree(output, ((Negate) node).getOperand());
+        } else if (node instanceof Binary) {
+            Binary binary = (Binary) node;
+            output.writeByte(NODE_BINARY);
+            output.writeUTF(binary.getOperator().name());
+            writeTree(output, binary.getLeft());
+            writeTree(output, binary.getRight());
+        } else if (node instanceof Function) {
+            Function function = (Function) node;
+            output.writeByte(NODE_FUNCTION);
+            output.writeUTF(function.getFunction().getName());
+            writeTree(output, function.getArgument());
+        } else {
+            throw new IOException("Unsupported expression node: " + node.getClass().getName());
+        }
+    }
+
+    @NotNull
+    private static ExpressionNode readTree(@NotNull DataInput input) throws IOException {
+        byte type = input.readByte();
+
+        switch (type) {
+            case NODE_CONSTANT:
+                return ExpressionNode.constant(input.readDouble());
+            case NODE_VARIABLE:
+                String variableName = input.readUTF();
+                ParticleVariable variable = ParticleVariable.getByName(variableName);
+                if (variable == null) {
+                    throw new IOException("Unknown variable: " + variableName);
+                }
+
+                return ExpressionNode.variable(variable);
+            case NODE_NEGATE:
+                return ExpressionNode.negate(readTree(input));
+            case NODE_BINARY:
+                Operator operator = Enums.getIfPresent(Operator.class, input.readUTF()).orNull();
+                if (operator == null) {
+                    throw new IOException("Unknown operator");
+                }
+
+                ExpressionNode left = readTree(input);
+                return ExpressionNode.binary(operator, left, readTree(input));
+            case NODE_FUNCTION:
+                String functionName = input.readUTF();
+                MathFunction function = ExpressionUtils.getMathematicalOperator(functionName);
+                if (function == null) { // Possibly injected by a plugin that is no longer installed
+                    throw new IOException("Unknown function: " + functionName);
+                }
+
+                return ExpressionNode.function(function, readTree(input));
+            default:
+                throw new IOException("Unknown expression node type: " + type);
+        }
+    }
+
+    /**
+     * The source of a single equation and its arguments.
+     */
+    static final class EquationSource {
+
+        final ExpressionSource x, z;
+        final List<@NotNull String> conditions = new ArrayList<>();
+
+        String particle;
+        int particleAmount;
+        double particleExtra;
+        float particleOffsetX, particleOffsetY, particleOffsetZ;
+        int particleStreams;
+
+        double speedMultiplier;
+        int frameIntervalTicks;
+        int thetaIncrement;
+
+        private EquationSource(@NotNull ExpressionSource x, @NotNull ExpressionSource z) {
+            this.x = x;
+            this.z = z;
+        }
+
+    }
+
+    /**
+     * A parsed expression alongside the string from which it was parsed.
+     */
+    static final class ExpressionSource {
+
+        final String expression;
+        final ExpressionNode tree;
+
+        // Names that were parsed as unknown variables (evaluating to 0)
+        final List<@NotNull String> unknownVariables;
+
+        private ExpressionSource(@NotNull String expression) {
+            List<@NotNull String> unknownVariables = new ArrayList<>();
+
+            this.expression = expression;
+            this.tree = ExpressionUtils.parseTree(expression, unknownVariables::add);
+            this.unknownVariables = unknownVariables.isEmpty() ? Collections.emptyList() : unknownVariables;
+        }
+
+        private ExpressionSource(@NotNull String expression, @NotNull ExpressionNode tree, @NotNull List<@NotNull String> unknownVariables) {
+            this.expression = expression;
+            this.tree = tree;
+            this.unknownVariables = unknownVariables;
+        }
+
+        private void write(@NotNull DataOutput output) throws IOException {
+            output.writeUTF(expression);
+            writeTree(output, tree);
+
+            output.writeInt(unknownVariables.size());
+            for (String unknownVariable : unknownVariables) {
+                output.writeUTF(unknownVariable);
+            }
+        }
+
+        @NotNull
+        private static ExpressionSource read(@NotNull DataInput input) throws IOException {
+            String expression = input.readUTF();
+            ExpressionNode tree = readTree(input);
+
+            int unknownVariableCount = input.readInt();
+            List<@NotNull String> unknownVariables = new ArrayList<>(unknownVariableCount);
+            for (int i = 0; i < unknownVariableCount; i++) {
+                String unknownVariable = input.readUTF();
+
+                // The name may since have been injected as a function, in which case the expression would be parsed differently
+                if (ExpressionUtils.getMathematicalOperator(unknownVariable) != null) {
+                    throw new IOException("Unknown variable is now a function: " + unknownVariable);
+                }
+
+                unknownVariables.add(unknownVariable);
+            }
+
+            return new ExpressionSource(expression, tree, unknownVariables);
+        }
+
+    }
+
+}
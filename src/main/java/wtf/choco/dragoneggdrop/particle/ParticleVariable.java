@@ -0,0 +1,103 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import com.google.common.base.Preconditions;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Represents a variable that may be referenced by name in the expressions of a
+ * {@link ParticleShapeDefinition}. Variables are resolved when an expression is parsed
+ * and read from a fixed slot in {@link ParticleVariables} when evaluated.
+ *
+ * @author Parker Hawke - Choco
+ */
+public enum ParticleVariable {
+
+    /**
+     * The x coordinate of the animation.
+     */
+    X("x"),
+
+    /**
+     * The y coordinate of the animation.
+     */
+    Y("y"),
+
+    /**
+     * The z coordinate of the animation.
+     */
+    Z("z"),
+
+    /**
+     * The amount of frames the animation has played.
+     */
+    T("t"),
+
+    /**
+     * The angle (in degrees) of the stream being evaluated.
+     */
+    THETA("theta"),
+
+    /**
+     * A random value between 0.0 (inclusive) and 1.0 (exclusive). This variable does not
+     * occupy a slot and is generated every time it is evaluated.
+     */
+    RANDOM("random");
+
+    /**
+     * The amount of slots occupied by stored (non-random) variables.
+     */
+    public static final int SLOT_COUNT = 5;
+
+    private static final Map<@NotNull String, @NotNull ParticleVariable> BY_NAME = new HashMap<>();
+
+    static {
+        for (ParticleVariable variable : values()) {
+            BY_NAME.put(variable.name, variable);
+        }
+    }
+
+    private final String name;
+
+    private ParticleVariable(@NotNull String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get the name by which this variable is referenced in an expression.
+     *
+     * @return the variable name
+     */
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the slot at which this variable's value is stored in {@link ParticleVariables}.
+     * {@link #RANDOM} does not occupy a slot and will return -1.
+     *
+     * @return the slot, or -1 if this variable is not stored
+     */
+    public int getSlot() {
+        return (this == RANDOM) ? -1 : ordinal();
+    }
+
+    /**
+     * Get the variable referenced by the given name.
+     *
+     * @param name the name of the variable (case sensitive)
+     *
+     * @return the variable. null if no variable exists with the given name
+     */
+    @Nullable
+    public static ParticleVariable getByName(@NotNull String name) {
+        Preconditions.checkArgument(name != null, "name must not be null");
+        return BY_NAME.get(name);
+    }
+
+}
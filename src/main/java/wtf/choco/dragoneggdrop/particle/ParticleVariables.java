@@ -2,9 +2,11 @@ package wtf.choco.dragoneggdrop.particle;
 
 import com.google.common.base.Preconditions;
 
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Represents a set of variables to be used when parsing and evaluating an expression
@@ -14,11 +16,13 @@ import org.jetbrains.annotations.NotNull;
  */
 public final class ParticleVariables {
 
-    private final Random random = new Random();
+    private final double[] values = new double[ParticleVariable.SLOT_COUNT];
 
-    private double x, y, z;
-    private double t;
-    private double theta;
+    private SplittableRandom random;
+
+    // Random values generated ahead of time, returned in order before generating any more
+    private double[] randomValues = new double[0];
+    private int randomIndex, randomCount;
 
     /**
      * Construct a new set of variables.
@@ -46,7 +50,7 @@ public final class ParticleVariables {
      * @return x
      */
     public double getX() {
-        return x;
+        return values[0];
     }
 
     /**
@@ -55,7 +59,7 @@ public final class ParticleVariables {
      * @return y
      */
     public double getY() {
-        return y;
+        return values[1];
     }
 
     /**
@@ -64,7 +68,7 @@ public final class ParticleVariables {
      * @return z
      */
     public double getZ() {
-        return z;
+        return values[2];
     }
 
     /**
@@ -73,7 +77,7 @@ public final class ParticleVariables {
      * @return t
      */
     public double getT() {
-        return t;
+        return values[3];
     }
 
     /**
@@ -82,15 +86,76 @@ public final class ParticleVariables {
      * @return theta
      */
     public double getTheta() {
-        return theta;
+        return values[4];
+    }
+
+    /**
+     * Get a random value between 0.0 (inclusive) and 1.0 (exclusive). A new value is
+     * returned on every call. If these variables belong to an {@link AnimatedParticleSession},
+     * values are drawn from the session's seeded generator (see {@link AnimatedParticleSession#getSeed()}).
+     * Otherwise they are drawn from the calling thread's own generator.
+     *
+     * @return a random value
+     */
+    public double getRandom() {
+        if (randomIndex < randomCount) {
+            return randomValues[randomIndex++];
+        }
+
+        return (random != null) ? random.nextDouble() : ThreadLocalRandom.current().nextDouble();
+    }
+
+    /**
+     * Get the value of the given variable. Stored variables are read directly from their
+     * {@link ParticleVariable#getSlot() slot}.
+     *
+     * @param variable the variable whose value to get
+     *
+     * @return the value of the variable
+     */
+    public double get(@NotNull ParticleVariable variable) {
+        int slot = variable.getSlot();
+        return (slot >= 0) ? values[slot] : getRandom();
+    }
+
+    /**
+     * Set the theta variable.
+     *
+     * @param theta the new theta value
+     */
+    public void setTheta(double theta) {
+        this.values[4] = theta;
+    }
+
+    // Values generated ahead of time by a previous generator are discarded
+    void setRandom(@Nullable SplittableRandom random) {
+        this.random = random;
+        this.randomIndex = 0;
+        this.randomCount = 0;
+    }
+
+    // Generates the given amount of random values in bulk, to be returned by getRandom() in order
+    void generateRandomValues(int count) {
+        Preconditions.checkState(random != null, "no generator has been set");
+
+        if (randomValues.length < count) {
+            this.randomValues = new double[count];
+        }
+
+        for (int i = 0; i < count; i++) {
+            this.randomValues[i] = random.nextDouble();
+        }
+
+        this.randomIndex = 0;
+        this.randomCount = count;
     }
 
     void update(double x, double y, double z, double t, double theta) {
-        this.x = x;
-        this.y = y;
-        this.z = z;
-        this.t = t;
-        this.theta = theta;
+        this.values[0] = x;
+        this.values[1] = y;
+        this.values[2] = z;
+        this.values[3] = t;
+        this.values[4] = theta;
     }
 
     /**
@@ -105,15 +170,8 @@ public final class ParticleVariables {
     public double get(@NotNull String name, double defaultValue) {
         Preconditions.checkArgument(name != null, "name must not be null");
 
-        switch (name) {
-            case "x": return x;
-            case "y": return y;
-            case "z": return z;
-            case "t": return t;
-            case "theta": return theta;
-            case "random": return random.nextDouble();
-            default: return defaultValue;
-        }
+        ParticleVariable variable = ParticleVariable.getByName(name);
+        return (variable != null) ? get(variable) : defaultValue;
     }
 
 }
@@ -0,0 +1,37 @@
+package wtf.choco.dragoneggdrop.particle.condition;
+
+/**
+ * Represents how often the result of an {@link EquationCondition} may change over the course
+ * of an animation. Conditions that may not change within a session are resolved once when
+ * the session is created rather than on every frame.
+ *
+ * @author Parker Hawke - Choco
+ *
+ * @see EquationCondition#getDependency()
+ */
+public enum ConditionDependency {
+
+    /**
+     * The condition's result never changes.
+     */
+    CONSTANT,
+
+    /**
+     * The condition's result depends only on values that are fixed for the duration of a
+     * session, such as its world or its x and z coordinates.
+     */
+    SESSION,
+
+    /**
+     * The condition's result depends on values that change every frame, such as the y
+     * coordinate or t.
+     */
+    FRAME,
+
+    /**
+     * The condition's result depends on values that change for every stream of a frame, such
+     * as theta.
+     */
+    STREAM;
+
+}
@@ -18,4 +18,16 @@ public interface EquationCondition {
      */
     public boolean isMet(@NotNull ConditionContext context);
 
+    /**
+     * Get how often the result of this condition may change. Conditions whose result may not
+     * change within a session are checked only once when the session is created. By default,
+     * conditions are assumed to change for every stream.
+     *
+     * @return the dependency of this condition
+     */
+    @NotNull
+    public default ConditionDependency getDependency() {
+        return ConditionDependency.STREAM;
+    }
+
 }
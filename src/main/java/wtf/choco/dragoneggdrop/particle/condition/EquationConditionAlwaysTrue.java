@@ -23,6 +23,12 @@ public final class EquationConditionAlwaysTrue implements EquationCondition {
         return true;
     }
 
+    @NotNull
+    @Override
+    public ConditionDependency getDependency() {
+        return ConditionDependency.CONSTANT;
+    }
+
     @NotNull
     public static EquationConditionAlwaysTrue create(@SuppressWarnings("unused") @NotNull JsonObject object) {
         return INSTANCE;
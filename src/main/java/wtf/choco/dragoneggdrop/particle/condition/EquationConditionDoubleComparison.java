@@ -1,19 +1,25 @@
 package wtf.choco.dragoneggdrop.particle.condition;
 
+import com.google.common.base.Preconditions;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import wtf.choco.commons.function.DoubleBiPredicate;
 import wtf.choco.commons.function.DoubleProvider;
+import wtf.choco.dragoneggdrop.particle.ParticleVariable;
 import wtf.choco.dragoneggdrop.utils.JsonUtils;
 
 /**
  * An {@link EquationCondition} implementation. Compares a double value fetched from a {@link ConditionContext}
  * against that of a hard-coded value. Whether or not this condition is met will depend on the result
  * of the predicate passed at this object's construction.
+ * <p>
+ * Conditions comparing a {@link ParticleVariable} using a {@link Comparison} expose both, such that
+ * the intervals in which they are met may be computed ahead of time.
  *
  * @author Parker Hawke - Choco
  */
@@ -23,6 +29,8 @@ public class EquationConditionDoubleComparison implements EquationCondition {
     private final double value;
     private final DoubleBiPredicate predicate;
 
+    private final ParticleVariable variable;
+
     /**
      * Construct a value comparison condition.
      *
@@ -34,6 +42,25 @@ public class EquationConditionDoubleComparison implements EquationCondition {
         this.query = query;
         this.value = value;
         this.predicate = predicate;
+        this.variable = null;
+    }
+
+    /**
+     * Construct a value comparison condition against a particle variable.
+     *
+     * @param variable the variable whose value should be compared. Must not be {@link ParticleVariable#RANDOM}
+     * @param value the value against which the variable should be compared
+     * @param comparison the comparison
+     */
+    public EquationConditionDoubleComparison(@NotNull ParticleVariable variable, double value, @NotNull Comparison comparison) {
+        Preconditions.checkArgument(variable != null, "variable must not be null");
+        Preconditions.checkArgument(variable.getSlot() >= 0, "cannot compare against a variable without a slot (%s)", variable);
+        Preconditions.checkArgument(comparison != null, "comparison must not be null");
+
+        this.query = context -> context.getVariables().get(variable);
+        this.value = value;
+        this.predicate = comparison;
+        this.variable = variable;
     }
 
     @Override
@@ -41,25 +68,124 @@ public class EquationConditionDoubleComparison implements EquationCondition {
         return predicate.test(query.get(context), value);
     }
 
+    @NotNull
+    @Override
+    public ConditionDependency getDependency() {
+        if (variable == null) {
+            return ConditionDependency.STREAM;
+        }
+
+        switch (variable) {
+            case X:
+            case Z:
+                return ConditionDependency.SESSION;
+            case Y:
+            case T:
+                return ConditionDependency.FRAME;
+            default:
+                return ConditionDependency.STREAM;
+        }
+    }
+
+    /**
+     * Get the variable compared by this condition.
+     *
+     * @return the compared variable. null if this condition queries an arbitrary value
+     */
+    @Nullable
+    public ParticleVariable getVariable() {
+        return variable;
+    }
+
+    /**
+     * Get the value against which the queried value is compared.
+     *
+     * @return the compared value
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Get the comparison performed by this condition.
+     *
+     * @return the comparison. null if this condition was constructed with an arbitrary predicate
+     */
+    @Nullable
+    public Comparison getComparison() {
+        return (predicate instanceof Comparison) ? (Comparison) predicate : null;
+    }
+
     @NotNull
     public static EquationConditionDoubleComparison create(@NotNull JsonObject object, @NotNull DoubleProvider<@NotNull ConditionContext> query) {
+        Comparison comparison = getComparison(object);
+
+        JsonObject argumentsObject = JsonUtils.getRequiredField(object, "arguments", JsonElement::getAsJsonObject);
+        double value = JsonUtils.getRequiredField(argumentsObject, "value", JsonElement::getAsDouble);
+
+        return new EquationConditionDoubleComparison(query, value, comparison);
+    }
+
+    @NotNull
+    public static EquationConditionDoubleComparison create(@NotNull JsonObject object, @NotNull ParticleVariable variable) {
+        Comparison comparison = getComparison(object);
+
+        JsonObject argumentsObject = JsonUtils.getRequiredField(object, "arguments", JsonElement::getAsJsonObject);
+        double value = JsonUtils.getRequiredField(argumentsObject, "value", JsonElement::getAsDouble);
+
+        return new EquationConditionDoubleComparison(variable, value, comparison);
+    }
+
+    @NotNull
+    private static Comparison getComparison(@NotNull JsonObject object) {
         String operation = JsonUtils.getRequiredField(object, "operation", JsonElement::getAsString);
 
-        DoubleBiPredicate predicate = null;
         if (operation.equalsIgnoreCase("less_than") || operation.equals("<")) {
-            predicate = (queried, value) -> queried < value;
+            return Comparison.LESS_THAN;
         } else if (operation.equalsIgnoreCase("greater_than") || operation.equals(">")) {
-            predicate = (queried, value) -> queried > value;
+            return Comparison.GREATER_THAN;
         } else if (operation.equalsIgnoreCase("equal_to") || operation.equals("=")) {
-            predicate = (queried, value) -> queried == value;
-        } else {
-            throw new JsonParseException("Unexpected operation, " + "\"" + operation + "\"");
+            return Comparison.EQUAL_TO;
         }
 
-        JsonObject argumentsObject = JsonUtils.getRequiredField(object, "arguments", JsonElement::getAsJsonObject);
-        double value = JsonUtils.getRequiredField(argumentsObject, "value", JsonElement::getAsDouble);
+        throw new JsonParseException("Unexpected operation, " + "\"" + operation + "\"");
+    }
+
+    /**
+     * Represents a comparison between a queried value and a hard-coded value.
+     */
+    public enum Comparison implements DoubleBiPredicate {
+
+        /**
+         * The queried value is less than the hard-coded value.
+         */
+        LESS_THAN {
+            @Override
+            public boolean test(double queried, double value) {
+                return queried < value;
+            }
+        },
+
+        /**
+         * The queried value is greater than the hard-coded value.
+         */
+        GREATER_THAN {
+            @Override
+            public boolean test(double queried, double value) {
+                return queried > value;
+            }
+        },
+
+        /**
+         * The queried value is equal to the hard-coded value.
+         */
+        EQUAL_TO {
+            @Override
+            public boolean test(double queried, double value) {
+                return queried == value;
+            }
+        };
 
-        return new EquationConditionDoubleComparison(query, value, predicate);
     }
 
 }
@@ -21,16 +21,31 @@ public class EquationConditionStringComparison implements EquationCondition {
 
     private final Function<@NotNull ConditionContext, @NotNull String> query;
     private final String value;
+    private final ConditionDependency dependency;
 
     /**
      * Construct a value comparison condition.
      *
      * @param query the function to query a value from a condition context
      * @param value the value against which the queried value should be compared
+     * @param dependency the dependency of the queried value
      */
-    public EquationConditionStringComparison(@NotNull Function<@NotNull ConditionContext, @NotNull String> query, @NotNull String value) {
+    public EquationConditionStringComparison(@NotNull Function<@NotNull ConditionContext, @NotNull String> query, @NotNull String value, @NotNull ConditionDependency dependency) {
+        Preconditions.checkArgument(dependency != null, "dependency must not be null");
+
         this.query = query;
         this.value = value;
+        this.dependency = dependency;
+    }
+
+    /**
+     * Construct a value comparison condition.
+     *
+     * @param query the function to query a value from a condition context
+     * @param value the value against which the queried value should be compared
+     */
+    public EquationConditionStringComparison(@NotNull Function<@NotNull ConditionContext, @NotNull String> query, @NotNull String value) {
+        this(query, value, ConditionDependency.STREAM);
     }
 
     @Override
@@ -39,14 +54,25 @@ public class EquationConditionStringComparison implements EquationCondition {
     }
 
     @NotNull
-    public static EquationConditionStringComparison create(@NotNull JsonObject object, @NotNull Function<@NotNull ConditionContext, @NotNull String> query) {
+    @Override
+    public ConditionDependency getDependency() {
+        return dependency;
+    }
+
+    @NotNull
+    public static EquationConditionStringComparison create(@NotNull JsonObject object, @NotNull Function<@NotNull ConditionContext, @NotNull String> query, @NotNull ConditionDependency dependency) {
         Preconditions.checkArgument(object != null, "object must not be null");
         Preconditions.checkArgument(query != null, "query must not be null");
 
         JsonObject argumentsObject = JsonUtils.getRequiredField(object, "arguments", JsonElement::getAsJsonObject);
         String value = JsonUtils.getRequiredField(argumentsObject, "value", JsonElement::getAsString);
 
-        return new EquationConditionStringComparison(query, value);
+        return new EquationConditionStringComparison(query, value, dependency);
+    }
+
+    @NotNull
+    public static EquationConditionStringComparison create(@NotNull JsonObject object, @NotNull Function<@NotNull ConditionContext, @NotNull String> query) {
+        return create(object, query, ConditionDependency.STREAM);
     }
 
 }
@@ -1,5 +1,7 @@
 package wtf.choco.dragoneggdrop.tasks;
 
+import java.util.UUID;
+
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
@@ -22,6 +24,7 @@ import wtf.choco.dragoneggdrop.api.BattleStateChangeEvent;
 import wtf.choco.dragoneggdrop.dragon.DragonTemplate;
 import wtf.choco.dragoneggdrop.dragon.loot.DragonLootTable;
 import wtf.choco.dragoneggdrop.particle.AnimatedParticleSession;
+import wtf.choco.dragoneggdrop.particle.ParticleSessionManager;
 import wtf.choco.dragoneggdrop.particle.ParticleShapeDefinition;
 import wtf.choco.dragoneggdrop.utils.DEDConstants;
 import wtf.choco.dragoneggdrop.world.EndWorldWrapper;
@@ -29,14 +32,13 @@ import wtf.choco.dragoneggdrop.world.RespawnReason;
 
 /**
  * Represents a BukkitRunnable that handles the generation and particle display of the
- * loot after the Ender Dragon's death.
+ * loot after the Ender Dragon's death. The particle animation is ticked by the plugin's
+ * {@link ParticleSessionManager}, after which this runnable generates the loot.
  */
 public class DragonDeathRunnable extends BukkitRunnable {
 
     private final DragonEggDrop plugin;
 
-    private AnimatedParticleSession particleSession;
-
     private final EndWorldWrapper worldWrapper;
     private final DragonTemplate template;
     private final Location portalLocation;
@@ -75,26 +77,24 @@ public class DragonDeathRunnable extends BukkitRunnable {
         }
 
         this.respawnDragon = config.getBoolean(DEDConstants.CONFIG_RESPAWN_ON_DEATH, false);
-        this.runTaskTimer(plugin, 0, 1);
 
         BattleStateChangeEvent bscEventCrystals = new BattleStateChangeEvent(dragonBattle, dragon, BattleState.BATTLE_END, BattleState.PARTICLES_START);
         Bukkit.getPluginManager().callEvent(bscEventCrystals);
 
         if (particleShapeDefinition != null) {
-            this.particleSession = particleShapeDefinition.createSession(worldWrapper.getWorld(), portalLocation.getX(), portalLocation.getZ());
+            // Seeded by the dragon such that the animation of a battle may be replayed
+            UUID dragonId = dragon.getUniqueId();
+            long seed = dragonId.getMostSignificantBits() ^ dragonId.getLeastSignificantBits();
+
+            AnimatedParticleSession particleSession = particleShapeDefinition.createSession(worldWrapper.getWorld(), portalLocation.getX(), particleShapeDefinition.getStartY(), portalLocation.getZ(), seed);
+            plugin.getParticleSessionManager().start(particleSession, ParticleSessionManager.Priority.DEATH_ANIMATION, null, session -> runTask(plugin));
+        } else {
+            this.runTask(plugin);
         }
     }
 
     @Override
     public void run() {
-        if (particleSession != null) {
-            this.particleSession.tick();
-
-            if (!particleSession.shouldStop()) {
-                return;
-            }
-        }
-
         // Particles finished, place reward
 
         // Summon Zeus!
@@ -24,11 +24,37 @@ public final class DEDConstants {
     public static final String CONFIG_DISABLED_WORLDS = "disabled-worlds";
     public static final String CONFIG_WORLD_HISTORY_SIZE = "world-history-size";
 
+    public static final String CONFIG_DAMAGE_HISTORY_RECENT_ENTRIES = "damage-history.recent-entries";
+    public static final String CONFIG_DAMAGE_HISTORY_BUCKET_SECONDS = "damage-history.bucket-seconds";
+
     public static final String CONFIG_RESPAWN_MESSAGES_MESSAGES = "respawn-messages.messages";
     public static final String CONFIG_RESPAWN_MESSAGES_CONDENSED = "respawn-messages.condensed";
     public static final String CONFIG_RESPAWN_MESSAGES_OMIT_TIME_UNITS = "respawn-messages.omit-time-units";
     public static final String CONFIG_RESPAWN_MESSAGES_RADIUS = "respawn-messages.radius";
 
+    public static final String CONFIG_PARTICLES_COMPILE_EXPRESSIONS = "particles.compile-expressions";
+    public static final String CONFIG_PARTICLES_MATH_MODE = "particles.math-mode";
+    public static final String CONFIG_PARTICLES_RENDERER = "particles.renderer";
+    public static final String CONFIG_PARTICLES_SHAPE_CACHE = "particles.shape-cache";
+    public static final String CONFIG_PARTICLES_RECEIVER_RADIUS = "particles.receiver-radius";
+    public static final String CONFIG_PARTICLES_MERGE_GRID = "particles.merge-grid";
+    public static final String CONFIG_PARTICLES_ADAPTIVE_DETAIL_ENABLED = "particles.adaptive-detail.enabled";
+    public static final String CONFIG_PARTICLES_ADAPTIVE_DETAIL_CHECK_INTERVAL = "particles.adaptive-detail.check-interval";
+    public static final String CONFIG_PARTICLES_ADAPTIVE_DETAIL_REDUCED_MSPT = "particles.adaptive-detail.reduced-mspt";
+    public static final String CONFIG_PARTICLES_ADAPTIVE_DETAIL_MINIMAL_MSPT = "particles.adaptive-detail.minimal-mspt";
+    public static final String CONFIG_PARTICLES_ADAPTIVE_DETAIL_RESTORE_MARGIN = "particles.adaptive-detail.restore-margin";
+    public static final String CONFIG_PARTICLES_ADAPTIVE_DETAIL_LOG_CHANGES = "particles.adaptive-detail.log-changes";
+    public static final String CONFIG_PARTICLES_BUDGET_PARTICLES_PER_TICK = "particles.budget.particles-per-tick";
+    public static final String CONFIG_PARTICLES_BUDGET_EVALUATIONS_PER_TICK = "particles.budget.evaluations-per-tick";
+    public static final String CONFIG_PARTICLES_ASYNC_COMPUTE_THREADS = "particles.async-compute.threads";
+    public static final String CONFIG_PARTICLES_ASYNC_COMPUTE_LOOKAHEAD_FRAMES = "particles.async-compute.lookahead-frames";
+    public static final String CONFIG_PARTICLES_LIMITS_EXPRESSION_NODES = "particles.limits.expression-nodes";
+    public static final String CONFIG_PARTICLES_LIMITS_EXPRESSION_DEPTH = "particles.limits.expression-depth";
+    public static final String CONFIG_PARTICLES_LIMITS_EVALUATIONS_PER_TICK = "particles.limits.evaluations-per-tick";
+    public static final String CONFIG_PARTICLES_LIMITS_PARTICLES_PER_SECOND = "particles.limits.particles-per-second";
+    public static final String CONFIG_PARTICLES_LIMITS_TOTAL_FRAMES = "particles.limits.total-frames";
+    public static final String CONFIG_PARTICLES_LIMITS_CLAMP = "particles.limits.clamp";
+
     // Template configuration paths
     public static final String TEMPLATE_DRAGON_NAME = "dragon-name";
     public static final String TEMPLATE_BAR_STYLE = "bar-style";
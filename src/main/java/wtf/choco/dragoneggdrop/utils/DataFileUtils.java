@@ -6,6 +6,7 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonIOException;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.stream.JsonWriter;
 
 import java.io.File;
@@ -26,6 +27,7 @@ import org.jetbrains.annotations.NotNull;
 import wtf.choco.dragoneggdrop.DragonEggDrop;
 import wtf.choco.dragoneggdrop.dragon.DragonTemplate;
 import wtf.choco.dragoneggdrop.dragon.loot.DragonLootTable;
+import wtf.choco.dragoneggdrop.particle.ParticleShapeCache;
 import wtf.choco.dragoneggdrop.particle.ParticleShapeDefinition;
 import wtf.choco.dragoneggdrop.registry.Registry;
 import wtf.choco.dragoneggdrop.world.DragonBattleRecord;
@@ -231,10 +233,39 @@ public final class DataFileUtils {
             logger.info("Loading particle shape definitions...");
         }
         Registry<@NotNull ParticleShapeDefinition> particleRegistry = plugin.getParticleShapeDefinitionRegistry();
+        particleRegistry.values().forEach(ParticleShapeDefinition::invalidateFrameCache);
         particleRegistry.clear();
+
+        // Unchanged shape definition files are read from the cache rather than parsed again
+        ParticleShapeCache shapeCache = null;
+        if (plugin.getConfig().getBoolean(DEDConstants.CONFIG_PARTICLES_SHAPE_CACHE, true)) {
+            shapeCache = new ParticleShapeCache(new File(plugin.getDataFolder(), "particles.cache"), plugin.getDescription().getVersion());
+            shapeCache.read();
+        }
+
         for (File file : plugin.getParticleDirectory().listFiles((file, name) -> name.endsWith(".json") && !name.equals("possible_conditions.json"))) {
-            ParticleShapeDefinition shapeDefinition = ParticleShapeDefinition.fromFile(file);
+            ParticleShapeDefinition shapeDefinition;
+
+            try {
+                shapeDefinition = ParticleShapeDefinition.fromFile(file, shapeCache);
+            } catch (JsonParseException e) {
+                logger.warning("Could not load particle shape definition \"" + file.getName() + "\"");
+                logger.warning(e.getMessage());
+                continue;
+            }
+
             particleRegistry.register(shapeDefinition);
+            if (log) {
+                logger.info("Loaded particle shape definition " + shapeDefinition.getId() + ". Estimated cost: " + shapeDefinition.getCost());
+            }
+        }
+
+        if (shapeCache != null) {
+            try {
+                shapeCache.write();
+            } catch (IOException e) {
+                logger.warning("Could not write particle shape cache: " + e.getMessage());
+            }
         }
         if (log) {
             logger.info("Done! Successfully loaded " + particleRegistry.size() + " shape definitions");
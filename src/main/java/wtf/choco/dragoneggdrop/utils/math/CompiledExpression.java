@@ -0,0 +1,49 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import com.google.common.base.Preconditions;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Represents a {@link MathExpression} that has been compiled to bytecode by the
+ * {@link ExpressionCompiler}. Every compiled expression retains the {@link ExpressionNode}
+ * tree from which it was generated such that its result may be compared against (or fall
+ * back to) the interpreted tree.
+ * <p>
+ * This class is public only so that generated classes, which are defined in their own
+ * class loaders, may extend it. It should not be extended otherwise.
+ *
+ * @author Parker Hawke - Choco
+ */
+public abstract class CompiledExpression implements MathExpression {
+
+    private final ExpressionNode source;
+
+    /**
+     * Construct a new compiled expression.
+     *
+     * @param source the tree from which this expression was compiled
+     */
+    protected CompiledExpression(@NotNull ExpressionNode source) {
+        Preconditions.checkArgument(source != null, "source must not be null");
+        this.source = source;
+    }
+
+    /**
+     * Get the expression tree from which this expression was compiled. The returned tree
+     * may be evaluated directly and will produce the same results as this expression.
+     *
+     * @return the source expression tree
+     */
+    @NotNull
+    public final ExpressionNode getSource() {
+        return source;
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return source.toString();
+    }
+
+}
@@ -0,0 +1,80 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import com.google.common.base.Preconditions;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+
+/**
+ * Represents a pair of expressions that have been compiled to bytecode by the
+ * {@link ExpressionCompiler} so as to be evaluated together. Subexpressions common to both
+ * expressions are evaluated only once, and subexpressions that do not depend on theta are
+ * evaluated only once per batch rather than once per value of theta.
+ * <p>
+ * This class is public only so that generated classes, which are defined in their own
+ * class loaders, may extend it. It should not be extended otherwise.
+ *
+ * @author Parker Hawke - Choco
+ *
+ * @see ExpressionCompiler#compilePair(ExpressionNode, ExpressionNode)
+ */
+public abstract class CompiledExpressionPair {
+
+    private final ExpressionNode first, second;
+
+    /**
+     * Construct a new compiled expression pair.
+     *
+     * @param first the tree from which the first expression was compiled
+     * @param second the tree from which the second expression was compiled
+     */
+    protected CompiledExpressionPair(@NotNull ExpressionNode first, @NotNull ExpressionNode second) {
+        Preconditions.checkArgument(first != null, "first must not be null");
+        Preconditions.checkArgument(second != null, "second must not be null");
+
+        this.first = first;
+        this.second = second;
+    }
+
+    /**
+     * Evaluate both expressions once for each of the given theta values. This is equivalent
+     * to {@link ParticleVariables#setTheta(double) setting theta} and evaluating the first and
+     * then the second expression with {@link MathExpression#evaluate(ParticleVariables)} for
+     * each value in turn, such that random values are read in the same order.
+     *
+     * @param variables a set of variables with which to replace special vars
+     * @param theta the values of theta for which to evaluate the expressions
+     * @param outFirst the array to which results of the first expression should be written
+     * @param outSecond the array to which results of the second expression should be written
+     * @param count the amount of values to evaluate. Must not exceed the length of any array
+     */
+    public abstract void evaluate(@NotNull ParticleVariables variables, @NotNull double[] theta, @NotNull double[] outFirst, @NotNull double[] outSecond, int count);
+
+    /**
+     * Get the expression tree from which the first expression was compiled.
+     *
+     * @return the first source expression tree
+     */
+    @NotNull
+    public final ExpressionNode getFirst() {
+        return first;
+    }
+
+    /**
+     * Get the expression tree from which the second expression was compiled.
+     *
+     * @return the second source expression tree
+     */
+    @NotNull
+    public final ExpressionNode getSecond() {
+        return second;
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return "(" + first + ", " + second + ")";
+    }
+
+}
@@ -0,0 +1,524 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.DoubleUnaryOperator;
+
+import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import wtf.choco.dragoneggdrop.particle.ParticleVariable;
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Binary;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Constant;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Function;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Negate;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Variable;
+
+/**
+ * Compiles {@link ExpressionNode} trees into JVM bytecode. Each compiled expression is
+ * emitted as its own class (extending {@link CompiledExpression}) whose evaluation method
+ * is a single straight-line sequence of arithmetic instructions, rather than a tree of
+ * virtual calls. The batch evaluation method is likewise emitted as a single counted loop
+ * over primitive arrays. Every generated class is defined in its own class loader so that
+ * it may be unloaded once the expression is no longer referenced (i.e. after a reload).
+ * <p>
+ * {@link FastTrig} functions are invoked statically. Where both the sine and cosine of the
+ * same deterministic argument are computed, the argument is evaluated and range reduced
+ * only once.
+ * <p>
+ * Deterministic subexpressions that occur more than once are evaluated once and stored in
+ * a local. In batch evaluation, the largest subexpressions that do not depend on theta are
+ * hoisted out of the loop and evaluated once per batch. A pair of expressions may also be
+ * compiled together (see {@link #compilePair(ExpressionNode, ExpressionNode)}) such that
+ * subexpressions common to both are shared.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class ExpressionCompiler {
+
+    private static final String GENERATED_PACKAGE = "wtf/choco/dragoneggdrop/utils/math/generated/";
+    private static final AtomicInteger CLASS_COUNTER = new AtomicInteger();
+
+    private static final String SUPER_NAME = Type.getInternalName(CompiledExpression.class);
+    private static final String PAIR_SUPER_NAME = Type.getInternalName(CompiledExpressionPair.class);
+    private static final String VARIABLES_NAME = Type.getInternalName(ParticleVariables.class);
+    private static final String VARIABLES_DESCRIPTOR = Type.getDescriptor(ParticleVariables.class);
+    private static final String NODE_DESCRIPTOR = Type.getDescriptor(ExpressionNode.class);
+    private static final String OPERATOR_NAME = Type.getInternalName(DoubleUnaryOperator.class);
+    private static final String OPERATOR_DESCRIPTOR = Type.getDescriptor(DoubleUnaryOperator.class);
+    private static final String FAST_TRIG_NAME = Type.getInternalName(FastTrig.class);
+
+    private ExpressionCompiler() { }
+
+    /**
+     * Compile the given expression tree into a {@link CompiledExpression}. The result will
+     * produce the same values as evaluating the tree directly.
+     *
+     * @param tree the expression tree to compile
+     *
+     * @return the compiled expression
+     *
+     * @throws IllegalStateException if the generated class could not be defined
+     */
+    @NotNull
+    public static CompiledExpression compile(@NotNull ExpressionNode tree) {
+        Preconditions.checkArgument(tree != null, "tree must not be null");
+
+        String className = GENERATED_PACKAGE + "CompiledExpression" + CLASS_COUNTER.incrementAndGet();
+        List<@NotNull DoubleUnaryOperator> functions = new ArrayList<>();
+        byte[] bytecode = generate(className, tree, functions);
+
+        try {
+            Class<?> generatedClass = new GeneratedClassLoader(ExpressionCompiler.class.getClassLoader()).define(className.replace('/', '.'), bytecode);
+            return (CompiledExpression) generatedClass.getConstructor(ExpressionNode.class, DoubleUnaryOperator[].class).newInstance(tree, functions.toArray(new DoubleUnaryOperator[0]));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IllegalStateException("Could not compile expression \"" + tree + "\"", e);
+        }
+    }
+
+    /**
+     * Compile the given pair of expression trees into a {@link CompiledExpressionPair}. The
+     * result will produce the same values as evaluating each tree directly.
+     *
+     * @param first the first expression tree to compile
+     * @param second the second expression tree to compile
+     *
+     * @return the compiled expression pair
+     *
+     * @throws IllegalStateException if the generated class could not be defined
+     */
+    @NotNull
+    public static CompiledExpressionPair compilePair(@NotNull ExpressionNode first, @NotNull ExpressionNode second) {
+        Preconditions.checkArgument(first != null, "first must not be null");
+        Preconditions.checkArgument(second != null, "second must not be null");
+
+        String className = GENERATED_PACKAGE + "CompiledExpressionPair" + CLASS_COUNTER.incrementAndGet();
+        List<@NotNull DoubleUnaryOperator> functions = new ArrayList<>();
+        byte[] bytecode = generatePair(className, first, second, functions);
+
+        try {
+            Class<?> generatedClass = new GeneratedClassLoader(ExpressionCompiler.class.getClassLoader()).define(className.replace('/', '.'), bytecode);
+            return (CompiledExpressionPair) generatedClass.getConstructor(ExpressionNode.class, ExpressionNode.class, DoubleUnaryOperator[].class).newInstance(first, second, functions.toArray(new DoubleUnaryOperator[0]));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IllegalStateException("Could not compile expressions \"" + first + "\" and \"" + second + "\"", e);
+        }
+    }
+
+    private static byte[] generate(@NotNull String className, @NotNull ExpressionNode tree, @NotNull List<@NotNull DoubleUnaryOperator> functions) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC, className, null, SUPER_NAME, null);
+
+        // double evaluate(ParticleVariables)
+        MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, "evaluate", "(" + VARIABLES_DESCRIPTOR + ")D", null, null);
+        method.visitCode();
+        MethodEmitter emitter = new MethodEmitter(method, className, functions, new EvaluationPlan(Collections.singletonList(tree), false, 2), -1, -1); // 0 = this, 1 = variables
+        emitter.emitTemporaries(false);
+        emitter.emit(tree);
+        method.visitInsn(Opcodes.DRETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+
+        // void evaluate(ParticleVariables, double[], double[], int)
+        method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, "evaluate", "(" + VARIABLES_DESCRIPTOR + "[D[DI)V", null, null);
+        method.visitCode();
+        emitter = new MethodEmitter(method, className, functions, new EvaluationPlan(Collections.singletonList(tree), true, 6), 2, 5); // 2 = theta, 3 = out, 4 = count, 5 = i
+        emitter.emitBatchLoop(Collections.singletonList(tree), new int[] { 3 }, 4);
+        method.visitInsn(Opcodes.RETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+
+        generateFunctionFields(writer, functions);
+
+        // <init>(ExpressionNode, DoubleUnaryOperator[])
+        MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "(" + NODE_DESCRIPTOR + "[" + OPERATOR_DESCRIPTOR + ")V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitVarInsn(Opcodes.ALOAD, 1);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, SUPER_NAME, "<init>", "(" + NODE_DESCRIPTOR + ")V", false);
+        generateFunctionAssignments(constructor, className, functions, 2);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static byte[] generatePair(@NotNull String className, @NotNull ExpressionNode first, @NotNull ExpressionNode second, @NotNull List<@NotNull DoubleUnaryOperator> functions) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER | Opcodes.ACC_SYNTHETIC, className, null, PAIR_SUPER_NAME, null);
+
+        // void evaluate(ParticleVariables, double[], double[], double[], int)
+        List<@NotNull ExpressionNode> trees = Arrays.asList(first, second);
+        MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, "evaluate", "(" + VARIABLES_DESCRIPTOR + "[D[D[DI)V", null, null);
+        method.visitCode();
+        MethodEmitter emitter = new MethodEmitter(method, className, functions, new EvaluationPlan(trees, true, 7), 2, 6); // 2 = theta, 3 = outFirst, 4 = outSecond, 5 = count, 6 = i
+        emitter.emitBatchLoop(trees, new int[] { 3, 4 }, 5);
+        method.visitInsn(Opcodes.RETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+
+        generateFunctionFields(writer, functions);
+
+        // <init>(ExpressionNode, ExpressionNode, DoubleUnaryOperator[])
+        MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "(" + NODE_DESCRIPTOR + NODE_DESCRIPTOR + "[" + OPERATOR_DESCRIPTOR + ")V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitVarInsn(Opcodes.ALOAD, 1);
+        constructor.visitVarInsn(Opcodes.ALOAD, 2);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, PAIR_SUPER_NAME, "<init>", "(" + NODE_DESCRIPTOR + NODE_DESCRIPTOR + ")V", false);
+        generateFunctionAssignments(constructor, className, functions, 3);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    // Functions are held in final fields so the JIT may treat them as constants
+    private static void generateFunctionFields(@NotNull ClassWriter writer, @NotNull List<@NotNull DoubleUnaryOperator> functions) {
+        for (int i = 0; i < functions.size(); i++) {
+            writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "function" + i, OPERATOR_DESCRIPTOR, null, null).visitEnd();
+        }
+    }
+
+    private static void generateFunctionAssignments(@NotNull MethodVisitor constructor, @NotNull String className, @NotNull List<@NotNull DoubleUnaryOperator> functions, int functionsLocal) {
+        for (int i = 0; i < functions.size(); i++) {
+            constructor.visitVarInsn(Opcodes.ALOAD, 0);
+            constructor.visitVarInsn(Opcodes.ALOAD, functionsLocal);
+            constructor.visitLdcInsn(i);
+            constructor.visitInsn(Opcodes.AALOAD);
+            constructor.visitFieldInsn(Opcodes.PUTFIELD, className, "function" + i, OPERATOR_DESCRIPTOR);
+        }
+    }
+
+    private static boolean isSinOrCos(@NotNull ExpressionNode node) {
+        return node instanceof Function && (((Function) node).getFunction() == FastTrig.SIN || ((Function) node).getFunction() == FastTrig.COS);
+    }
+
+    private static void emitConstant(@NotNull MethodVisitor method, double value) {
+        if (Double.doubleToRawLongBits(value) == 0L) {
+            method.visitInsn(Opcodes.DCONST_0);
+        } else if (value == 1.0) {
+            method.visitInsn(Opcodes.DCONST_1);
+        } else {
+            method.visitLdcInsn(value);
+        }
+    }
+
+    @NotNull
+    private static String getVariableGetter(@NotNull ParticleVariable variable) {
+        switch (variable) {
+            case X: return "getX";
+            case Y: return "getY";
+            case Z: return "getZ";
+            case T: return "getT";
+            case THETA: return "getTheta";
+            case RANDOM: return "getRandom";
+            default: throw new UnsupportedOperationException("Unsupported variable: " + variable);
+        }
+    }
+
+    /**
+     * Determines which subexpressions of a set of trees are stored in locals rather than
+     * evaluated every time they occur, and the order in which they must be evaluated.
+     */
+    private static final class EvaluationPlan {
+
+        // Evaluated once before the batch loop
+        private final List<@NotNull ExpressionNode> hoisted = new ArrayList<>();
+
+        // Evaluated once per evaluation, in order. Phase entries hold the argument of a fused sine/cosine
+        private final List<@NotNull ExpressionNode> temporaries = new ArrayList<>();
+        private final List<@NotNull Boolean> temporaryPhases = new ArrayList<>();
+
+        private final Map<@NotNull ExpressionNode, @NotNull Integer> valueLocals = new HashMap<>();
+        private final Map<@NotNull ExpressionNode, @NotNull Integer> phaseLocals = new HashMap<>();
+
+        private final boolean batch;
+        private int nextLocal;
+
+        private EvaluationPlan(@NotNull List<@NotNull ExpressionNode> trees, boolean batch, int firstLocal) {
+            this.batch = batch;
+            this.nextLocal = firstLocal;
+
+            Map<@NotNull ExpressionNode, @NotNull Integer> occurrences = new HashMap<>();
+            Map<@NotNull ExpressionNode, boolean @NotNull []> sinCosUsages = new HashMap<>();
+            for (ExpressionNode tree : trees) {
+                this.count(tree, occurrences, sinCosUsages);
+            }
+
+            // Temporaries are planned in post-order such that nested subexpressions are stored before their parents
+            for (ExpressionNode tree : trees) {
+                this.plan(tree, occurrences, sinCosUsages);
+            }
+        }
+
+        // Whether the node may be hoisted out of a batch loop. Constants are cheaper to load than locals
+        private boolean isHoistable(@NotNull ExpressionNode node) {
+            return batch && !(node instanceof Constant) && node.isDeterministic() && !node.references(ParticleVariable.THETA);
+        }
+
+        private void count(@NotNull ExpressionNode node, @NotNull Map<@NotNull ExpressionNode, @NotNull Integer> occurrences, @NotNull Map<@NotNull ExpressionNode, boolean @NotNull []> sinCosUsages) {
+            if (isHoistable(node)) {
+                return;
+            }
+
+            this.forEachChild(node, child -> count(child, occurrences, sinCosUsages));
+
+            if ((node instanceof Negate || node instanceof Binary || node instanceof Function) && node.isDeterministic()) {
+                occurrences.merge(node, 1, Integer::sum);
+            }
+
+            // Non-deterministic arguments (i.e. random) must be evaluated separately for each function
+            if (isSinOrCos(node) && ((Function) node).getArgument().isDeterministic()) {
+                Function function = (Function) node;
+                sinCosUsages.computeIfAbsent(function.getArgument(), key -> new boolean[2])[function.getFunction() == FastTrig.SIN ? 0 : 1] = true;
+            }
+        }
+
+        private void plan(@NotNull ExpressionNode node, @NotNull Map<@NotNull ExpressionNode, @NotNull Integer> occurrences, @NotNull Map<@NotNull ExpressionNode, boolean @NotNull []> sinCosUsages) {
+            if (isHoistable(node)) {
+                if (!valueLocals.containsKey(node)) {
+                    this.hoisted.add(node);
+                    this.valueLocals.put(node, allocateLocal());
+                }
+
+                return;
+            }
+
+            this.forEachChild(node, child -> plan(child, occurrences, sinCosUsages));
+
+            if (isSinOrCos(node)) {
+                ExpressionNode argument = ((Function) node).getArgument();
+                boolean[] usage = sinCosUsages.get(argument);
+
+                if (usage != null && usage[0] && usage[1] && !phaseLocals.containsKey(argument)) {
+                    this.temporaries.add(argument);
+                    this.temporaryPhases.add(true);
+                    this.phaseLocals.put(argument, allocateLocal());
+                }
+            }
+
+            if (occurrences.getOrDefault(node, 0) > 1 && !valueLocals.containsKey(node)) {
+                this.temporaries.add(node);
+                this.temporaryPhases.add(false);
+                this.valueLocals.put(node, allocateLocal());
+            }
+        }
+
+        private int allocateLocal() {
+            int local = nextLocal;
+            this.nextLocal += 2; // doubles occupy two local slots
+            return local;
+        }
+
+        private void forEachChild(@NotNull ExpressionNode node, @NotNull Consumer<@NotNull ExpressionNode> action) {
+            if (node instanceof Negate) {
+                action.accept(((Negate) node).getOperand());
+            } else if (node instanceof Binary) {
+                action.accept(((Binary) node).getLeft());
+                action.accept(((Binary) node).getRight());
+            } else if (node instanceof Function) {
+                action.accept(((Function) node).getArgument());
+            }
+        }
+
+    }
+
+    private static final class MethodEmitter {
+
+        private final MethodVisitor method;
+        private final String className;
+        private final List<@NotNull DoubleUnaryOperator> functions;
+        private final EvaluationPlan plan;
+        private final int thetaArrayLocal, indexLocal;
+
+        // Locals that have been stored so far. Locals are only ever loaded after the instructions storing them
+        private final Set<@NotNull ExpressionNode> storedValues = new HashSet<>(), storedPhases = new HashSet<>();
+
+        private MethodEmitter(@NotNull MethodVisitor method, @NotNull String className, @NotNull List<@NotNull DoubleUnaryOperator> functions, @NotNull EvaluationPlan plan, int thetaArrayLocal, int indexLocal) {
+            this.method = method;
+            this.className = className;
+            this.functions = functions;
+            this.plan = plan;
+            this.thetaArrayLocal = thetaArrayLocal;
+            this.indexLocal = indexLocal;
+        }
+
+        // Stores either the hoisted subexpressions or the temporaries of a single evaluation in their locals
+        private void emitTemporaries(boolean hoisted) {
+            if (hoisted) {
+                for (ExpressionNode node : plan.hoisted) {
+                    this.emitNode(node);
+                    this.method.visitVarInsn(Opcodes.DSTORE, plan.valueLocals.get(node));
+                    this.storedValues.add(node);
+                }
+
+                return;
+            }
+
+            for (int i = 0; i < plan.temporaries.size(); i++) {
+                ExpressionNode node = plan.temporaries.get(i);
+
+                if (plan.temporaryPhases.get(i)) { // Fused sine/cosine arguments are reduced once and stored
+                    this.emit(node);
+                    this.method.visitMethodInsn(Opcodes.INVOKESTATIC, FAST_TRIG_NAME, "phase", "(D)D", false);
+                    this.method.visitVarInsn(Opcodes.DSTORE, plan.phaseLocals.get(node));
+                    this.storedPhases.add(node);
+                } else {
+                    this.emitNode(node);
+                    this.method.visitVarInsn(Opcodes.DSTORE, plan.valueLocals.get(node));
+                    this.storedValues.add(node);
+                }
+            }
+        }
+
+        // for (int i = 0; i < count; i++) { out[0][i] = <trees[0]>; out[1][i] = <trees[1]>; ... }
+        private void emitBatchLoop(@NotNull List<@NotNull ExpressionNode> trees, int @NotNull [] outArrayLocals, int countLocal) {
+            Label condition = new Label(), body = new Label();
+
+            this.emitTemporaries(true);
+
+            this.method.visitInsn(Opcodes.ICONST_0);
+            this.method.visitVarInsn(Opcodes.ISTORE, indexLocal);
+            this.method.visitJumpInsn(Opcodes.GOTO, condition);
+
+            this.method.visitLabel(body);
+            this.emitTemporaries(false);
+
+            for (int i = 0; i < trees.size(); i++) {
+                this.method.visitVarInsn(Opcodes.ALOAD, outArrayLocals[i]);
+                this.method.visitVarInsn(Opcodes.ILOAD, indexLocal);
+                this.emit(trees.get(i));
+                this.method.visitInsn(Opcodes.DASTORE);
+            }
+
+            this.method.visitIincInsn(indexLocal, 1);
+
+            this.method.visitLabel(condition);
+            this.method.visitVarInsn(Opcodes.ILOAD, indexLocal);
+            this.method.visitVarInsn(Opcodes.ILOAD, countLocal);
+            this.method.visitJumpInsn(Opcodes.IF_ICMPLT, body);
+        }
+
+        // Leaves the value of the node on the stack, loading it from its local if already stored
+        private void emit(@NotNull ExpressionNode node) {
+            if (storedValues.contains(node)) {
+                this.method.visitVarInsn(Opcodes.DLOAD, plan.valueLocals.get(node));
+                return;
+            }
+
+            this.emitNode(node);
+        }
+
+        private void emitNode(@NotNull ExpressionNode node) {
+            if (node instanceof Constant) {
+                emitConstant(method, ((Constant) node).getValue());
+            }
+
+            else if (node instanceof Variable) {
+                ParticleVariable variable = ((Variable) node).getVariable();
+
+                if (variable == ParticleVariable.THETA && thetaArrayLocal >= 0) { // theta[i]
+                    this.method.visitVarInsn(Opcodes.ALOAD, thetaArrayLocal);
+                    this.method.visitVarInsn(Opcodes.ILOAD, indexLocal);
+                    this.method.visitInsn(Opcodes.DALOAD);
+                } else {
+                    this.method.visitVarInsn(Opcodes.ALOAD, 1);
+                    this.method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, VARIABLES_NAME, getVariableGetter(variable), "()D", false);
+                }
+            }
+
+            else if (node instanceof Negate) {
+                this.emit(((Negate) node).getOperand());
+                this.method.visitInsn(Opcodes.DNEG);
+            }
+
+            else if (node instanceof Binary) {
+                Binary binary = (Binary) node;
+                this.emit(binary.getLeft());
+                this.emit(binary.getRight());
+
+                switch (binary.getOperator()) {
+                    case ADD: method.visitInsn(Opcodes.DADD); break;
+                    case SUBTRACT: method.visitInsn(Opcodes.DSUB); break;
+                    case MULTIPLY: method.visitInsn(Opcodes.DMUL); break;
+                    case DIVIDE: method.visitInsn(Opcodes.DDIV); break;
+                    case POWER: method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "pow", "(DD)D", false); break;
+                    default: throw new UnsupportedOperationException("Unsupported operator: " + binary.getOperator());
+                }
+            }
+
+            else if (node instanceof Function) {
+                this.emitFunction((Function) node);
+            }
+
+            else {
+                throw new UnsupportedOperationException("Unsupported expression node: " + node.getClass().getName());
+            }
+        }
+
+        private void emitFunction(@NotNull Function function) {
+            MathFunction mathFunction = function.getFunction();
+
+            if (mathFunction == FastTrig.SIN || mathFunction == FastTrig.COS) {
+                boolean sin = (mathFunction == FastTrig.SIN);
+                ExpressionNode argument = function.getArgument();
+
+                if (storedPhases.contains(argument)) {
+                    this.method.visitVarInsn(Opcodes.DLOAD, plan.phaseLocals.get(argument));
+                    this.method.visitMethodInsn(Opcodes.INVOKESTATIC, FAST_TRIG_NAME, sin ? "sinPhase" : "cosPhase", "(D)D", false);
+                } else {
+                    this.emit(argument);
+                    this.method.visitMethodInsn(Opcodes.INVOKESTATIC, FAST_TRIG_NAME, sin ? "sin" : "cos", "(D)D", false);
+                }
+
+                return;
+            }
+
+            DoubleUnaryOperator operator = mathFunction.getOperator();
+            int index = functions.indexOf(operator);
+            if (index == -1) {
+                index = functions.size();
+                this.functions.add(operator);
+            }
+
+            this.method.visitVarInsn(Opcodes.ALOAD, 0);
+            this.method.visitFieldInsn(Opcodes.GETFIELD, className, "function" + index, OPERATOR_DESCRIPTOR);
+            this.emit(function.getArgument());
+            this.method.visitMethodInsn(Opcodes.INVOKEINTERFACE, OPERATOR_NAME, "applyAsDouble", "(D)D", true);
+        }
+
+    }
+
+    private static final class GeneratedClassLoader extends ClassLoader {
+
+        private GeneratedClassLoader(@NotNull ClassLoader parent) {
+            super(parent);
+        }
+
+        @NotNull
+        private Class<?> define(@NotNull String name, byte @NotNull [] bytecode) {
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+
+    }
+
+}
@@ -0,0 +1,554 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Objects;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dragoneggdrop.particle.ParticleVariable;
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+
+/**
+ * Represents a node in the parsed tree of a {@link MathExpression}. Expression nodes are
+ * immutable and may be evaluated directly, acting as a simple tree-walking interpreter, or
+ * handed to the {@link ExpressionCompiler} to be compiled into a single class.
+ *
+ * @author Parker Hawke - Choco
+ *
+ * @see ExpressionUtils#parseTree(String)
+ */
+public abstract class ExpressionNode implements MathExpression {
+
+    ExpressionNode() { }
+
+    /**
+     * Check whether or not this node is deterministic. A deterministic node will always
+     * evaluate to the same value given the same variables, and may therefore be evaluated
+     * once and reused. Nodes referencing {@link ParticleVariable#RANDOM} or impure functions
+     * are not deterministic.
+     *
+     * @return true if deterministic, false otherwise
+     */
+    public abstract boolean isDeterministic();
+
+    /**
+     * Check whether or not this node, or any of its children, references the given variable.
+     *
+     * @param variable the variable to check
+     *
+     * @return true if referenced, false otherwise
+     */
+    public abstract boolean references(@NotNull ParticleVariable variable);
+
+    /**
+     * Count the amount of times the given variable is referenced by this node and all of its
+     * children. Every reference is read once per evaluation.
+     *
+     * @param variable the variable to count
+     *
+     * @return the amount of references
+     */
+    public abstract int countReferences(@NotNull ParticleVariable variable);
+
+    /**
+     * Represents a constant numeric value.
+     */
+    public static final class Constant extends ExpressionNode {
+
+        private final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        /**
+         * Get the value of this constant.
+         *
+         * @return the value
+         */
+        public double getValue() {
+            return value;
+        }
+
+        @Override
+        public double evaluate(@NotNull ParticleVariables variables) {
+            return value;
+        }
+
+        @Override
+        public boolean isDeterministic() {
+            return true;
+        }
+
+        @Override
+        public boolean references(@NotNull ParticleVariable variable) {
+            return false;
+        }
+
+        @Override
+        public int countReferences(@NotNull ParticleVariable variable) {
+            return 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Double.hashCode(value);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj == this || (obj instanceof Constant && Double.compare(value, ((Constant) obj).value) == 0);
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+            return (value == (long) value) ? String.valueOf((long) value) : String.valueOf(value);
+        }
+
+    }
+
+    /**
+     * Represents a {@link ParticleVariable} whose value is fetched from a set of
+     * {@link ParticleVariables}. Variables are resolved when parsed.
+     */
+    public static final class Variable extends ExpressionNode {
+
+        private final ParticleVariable variable;
+
+        Variable(@NotNull ParticleVariable variable) {
+            this.variable = variable;
+        }
+
+        /**
+         * Get the variable whose value is fetched by this node.
+         *
+         * @return the variable
+         */
+        @NotNull
+        public ParticleVariable getVariable() {
+            return variable;
+        }
+
+        @Override
+        public double evaluate(@NotNull ParticleVariables variables) {
+            return variables.get(variable);
+        }
+
+        @Override
+        public boolean isDeterministic() {
+            return variable != ParticleVariable.RANDOM;
+        }
+
+        @Override
+        public boolean references(@NotNull ParticleVariable variable) {
+            return this.variable == variable;
+        }
+
+        @Override
+        public int countReferences(@NotNull ParticleVariable variable) {
+            return (this.variable == variable) ? 1 : 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return variable.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj == this || (obj instanceof Variable && variable == ((Variable) obj).variable);
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+            return variable.getName();
+        }
+
+    }
+
+    /**
+     * Represents the negation of another node (unary minus).
+     */
+    public static final class Negate extends ExpressionNode {
+
+        private final ExpressionNode operand;
+
+        Negate(@NotNull ExpressionNode operand) {
+            this.operand = operand;
+        }
+
+        /**
+         * Get the node being negated.
+         *
+         * @return the operand
+         */
+        @NotNull
+        public ExpressionNode getOperand() {
+            return operand;
+        }
+
+        @Override
+        public double evaluate(@NotNull ParticleVariables variables) {
+            return -operand.evaluate(variables);
+        }
+
+        @Override
+        public boolean isDeterministic() {
+            return operand.isDeterministic();
+        }
+
+        @Override
+        public boolean references(@NotNull ParticleVariable variable) {
+            return operand.references(variable);
+        }
+
+        @Override
+        public int countReferences(@NotNull ParticleVariable variable) {
+            return operand.countReferences(variable);
+        }
+
+        @Override
+        public int hashCode() {
+            return ~operand.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj == this || (obj instanceof Negate && operand.equals(((Negate) obj).operand));
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+            return "-" + operand;
+        }
+
+    }
+
+    /**
+     * Represents an arithmetic operation between two nodes.
+     */
+    public static final class Binary extends ExpressionNode {
+
+        private final Operator operator;
+        private final ExpressionNode left, right;
+
+        Binary(@NotNull Operator operator, @NotNull ExpressionNode left, @NotNull ExpressionNode right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        /**
+         * Get the operator applied to both operands.
+         *
+         * @return the operator
+         */
+        @NotNull
+        public Operator getOperator() {
+            return operator;
+        }
+
+        /**
+         * Get the left-hand operand.
+         *
+         * @return the left operand
+         */
+        @NotNull
+        public ExpressionNode getLeft() {
+            return left;
+        }
+
+        /**
+         * Get the right-hand operand.
+         *
+         * @return the right operand
+         */
+        @NotNull
+        public ExpressionNode getRight() {
+            return right;
+        }
+
+        @Override
+        public double evaluate(@NotNull ParticleVariables variables) {
+            return operator.apply(left.evaluate(variables), right.evaluate(variables));
+        }
+
+        @Override
+        public boolean isDeterministic() {
+            return left.isDeterministic() && right.isDeterministic();
+        }
+
+        @Override
+        public boolean references(@NotNull ParticleVariable variable) {
+            return left.references(variable) || right.references(variable);
+        }
+
+        @Override
+        public int countReferences(@NotNull ParticleVariable variable) {
+            return left.countReferences(variable) + right.countReferences(variable);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(operator, left, right);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+
+            if (!(obj instanceof Binary)) {
+                return false;
+            }
+
+            Binary other = (Binary) obj;
+            return operator == other.operator && left.equals(other.left) && right.equals(other.right);
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+            return "(" + left + " " + operator.getSymbol() + " " + right + ")";
+        }
+
+    }
+
+    /**
+     * Represents a named {@link MathFunction} (such as "sqrt" or "sin") applied to an argument.
+     */
+    public static final class Function extends ExpressionNode {
+
+        private final MathFunction function;
+        private final ExpressionNode argument;
+
+        Function(@NotNull MathFunction function, @NotNull ExpressionNode argument) {
+            this.function = function;
+            this.argument = argument;
+        }
+
+        /**
+         * Get the function being applied.
+         *
+         * @return the function
+         */
+        @NotNull
+        public MathFunction getFunction() {
+            return function;
+        }
+
+        /**
+         * Get the node passed as an argument to this function.
+         *
+         * @return the argument
+         */
+        @NotNull
+        public ExpressionNode getArgument() {
+            return argument;
+        }
+
+        @Override
+        public double evaluate(@NotNull ParticleVariables variables) {
+            return function.apply(argument.evaluate(variables));
+        }
+
+        @Override
+        public boolean isDeterministic() {
+            return function.isPure() && argument.isDeterministic();
+        }
+
+        @Override
+        public boolean references(@NotNull ParticleVariable variable) {
+            return argument.references(variable);
+        }
+
+        @Override
+        public int countReferences(@NotNull ParticleVariable variable) {
+            return argument.countReferences(variable);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * function.getName().hashCode() + argument.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+
+            if (!(obj instanceof Function)) {
+                return false;
+            }
+
+            Function other = (Function) obj;
+            return function == other.function && argument.equals(other.argument);
+        }
+
+        @NotNull
+        @Override
+        public String toString() {
+            return function.getName() + "(" + argument + ")";
+        }
+
+    }
+
+    /**
+     * Represents an arithmetic operator applicable in a {@link Binary} node.
+     */
+    public enum Operator {
+
+        /**
+         * Addition, a + b.
+         */
+        ADD('+') {
+            @Override
+            public double apply(double a, double b) {
+                return a + b;
+            }
+        },
+
+        /**
+         * Subtraction, a - b.
+         */
+        SUBTRACT('-') {
+            @Override
+            public double apply(double a, double b) {
+                return a - b;
+            }
+        },
+
+        /**
+         * Multiplication, a * b.
+         */
+        MULTIPLY('*') {
+            @Override
+            public double apply(double a, double b) {
+                return a * b;
+            }
+        },
+
+        /**
+         * Division, a / b.
+         */
+        DIVIDE('/') {
+            @Override
+            public double apply(double a, double b) {
+                return a / b;
+            }
+        },
+
+        /**
+         * Exponentiation, a ^ b.
+         */
+        POWER('^') {
+            @Override
+            public double apply(double a, double b) {
+                return Math.pow(a, b);
+            }
+        };
+
+        private final char symbol;
+
+        private Operator(char symbol) {
+            this.symbol = symbol;
+        }
+
+        /**
+         * Get the symbol used to represent this operator in an expression.
+         *
+         * @return the symbol
+         */
+        public char getSymbol() {
+            return symbol;
+        }
+
+        /**
+         * Apply this operator to the given operands.
+         *
+         * @param a the left operand
+         * @param b the right operand
+         *
+         * @return the result
+         */
+        public abstract double apply(double a, double b);
+
+    }
+
+    /**
+     * Create a constant node.
+     *
+     * @param value the constant value
+     *
+     * @return the node
+     */
+    @NotNull
+    public static ExpressionNode constant(double value) {
+        return new Constant(value);
+    }
+
+    /**
+     * Create a variable node.
+     *
+     * @param variable the variable
+     *
+     * @return the node
+     */
+    @NotNull
+    public static ExpressionNode variable(@NotNull ParticleVariable variable) {
+        Preconditions.checkArgument(variable != null, "variable must not be null");
+        return new Variable(variable);
+    }
+
+    /**
+     * Create a negation node.
+     *
+     * @param operand the node to negate
+     *
+     * @return the node
+     */
+    @NotNull
+    public static ExpressionNode negate(@NotNull ExpressionNode operand) {
+        Preconditions.checkArgument(operand != null, "operand must not be null");
+        return new Negate(operand);
+    }
+
+    /**
+     * Create a binary operation node.
+     *
+     * @param operator the operator
+     * @param left the left operand
+     * @param right the right operand
+     *
+     * @return the node
+     */
+    @NotNull
+    public static ExpressionNode binary(@NotNull Operator operator, @NotNull ExpressionNode left, @NotNull ExpressionNode right) {
+        Preconditions.checkArgument(operator != null, "operator must not be null");
+        Preconditions.checkArgument(left != null, "left must not be null");
+        Preconditions.checkArgument(right != null, "right must not be null");
+        return new Binary(operator, left, right);
+    }
+
+    /**
+     * Create a function node.
+     *
+     * @param function the function to apply
+     * @param argument the function argument
+     *
+     * @return the node
+     */
+    @NotNull
+    public static ExpressionNode function(@NotNull MathFunction function, @NotNull ExpressionNode argument) {
+        Preconditions.checkArgument(function != null, "function must not be null");
+        Preconditions.checkArgument(argument != null, "argument must not be null");
+        return new Function(function, argument);
+    }
+
+}
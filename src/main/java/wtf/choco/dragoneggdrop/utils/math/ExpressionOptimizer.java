@@ -0,0 +1,166 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import com.google.common.base.Preconditions;
+
+import org.jetbrains.annotations.NotNull;
+
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Binary;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Constant;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Function;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Negate;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Operator;
+
+/**
+ * An optimization pass over parsed {@link ExpressionNode} trees. Applied between parsing and
+ * evaluation (or compilation), this pass will:
+ * <ul>
+ *   <li>Fold constant subtrees into a single constant (i.e. {@code sqrt(2) * 3})
+ *   <li>Simplify arithmetic identities (i.e. {@code x * 1}, {@code x - 0} and {@code x ^ 1})
+ *   <li>Collapse redundant negations (i.e. {@code --x})
+ *   <li>Under {@link MathMode#FAST}, substitute functions with their
+ *       {@link MathFunction#getFastVariant() fast variants}
+ * </ul>
+ * Only {@link MathFunction#isPure() pure} functions are ever folded. Variables are never
+ * folded, nor are subtrees referencing {@code random} ever removed. Under {@link MathMode#STRICT}, the optimized tree will evaluate to the same values
+ * as the original.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class ExpressionOptimizer {
+
+    private ExpressionOptimizer() { }
+
+    /**
+     * Optimize the given expression tree under {@link MathMode#STRICT}.
+     *
+     * @param tree the tree to optimize
+     *
+     * @return the optimized tree. May be the same instance if no optimizations could be made
+     */
+    @NotNull
+    public static ExpressionNode optimize(@NotNull ExpressionNode tree) {
+        return optimize(tree, MathMode.STRICT);
+    }
+
+    /**
+     * Optimize the given expression tree.
+     *
+     * @param tree the tree to optimize
+     * @param mode the math mode under which the tree will be evaluated
+     *
+     * @return the optimized tree. May be the same instance if no optimizations could be made
+     */
+    @NotNull
+    public static ExpressionNode optimize(@NotNull ExpressionNode tree, @NotNull MathMode mode) {
+        Preconditions.checkArgument(tree != null, "tree must not be null");
+        Preconditions.checkArgument(mode != null, "mode must not be null");
+
+        if (tree instanceof Negate) {
+            return optimizeNegate(optimize(((Negate) tree).getOperand(), mode));
+        }
+
+        else if (tree instanceof Binary) {
+            Binary binary = (Binary) tree;
+            return optimizeBinary(binary.getOperator(), optimize(binary.getLeft(), mode), optimize(binary.getRight(), mode));
+        }
+
+        else if (tree instanceof Function) {
+            Function function = (Function) tree;
+            ExpressionNode argument = optimize(function.getArgument(), mode);
+
+            // Constants are always folded precisely, regardless of the mode
+            if (function.getFunction().isPure() && argument instanceof Constant) {
+                return ExpressionNode.constant(function.getFunction().apply(((Constant) argument).getValue()));
+            }
+
+            MathFunction mathFunction = function.getFunction();
+            if (mode == MathMode.FAST && mathFunction.getFastVariant() != null) {
+                mathFunction = mathFunction.getFastVariant();
+            }
+
+            return (argument == function.getArgument() && mathFunction == function.getFunction()) ? function : ExpressionNode.function(mathFunction, argument);
+        }
+
+        return tree; // Constants and variables cannot be optimized any further
+    }
+
+    @NotNull
+    private static ExpressionNode optimizeNegate(@NotNull ExpressionNode operand) {
+        if (operand instanceof Constant) {
+            return ExpressionNode.constant(-((Constant) operand).getValue());
+        }
+
+        if (operand instanceof Negate) { // --x = x
+            return ((Negate) operand).getOperand();
+        }
+
+        return ExpressionNode.negate(operand);
+    }
+
+    @NotNull
+    private static ExpressionNode optimizeBinary(@NotNull Operator operator, @NotNull ExpressionNode left, @NotNull ExpressionNode right) {
+        if (left instanceof Constant && right instanceof Constant) {
+            return ExpressionNode.constant(operator.apply(((Constant) left).getValue(), ((Constant) right).getValue()));
+        }
+
+        switch (operator) {
+            case ADD:
+                // Only for negative zero, as x + 0 = 0 (not x) where x is -0
+                if (isConstant(right, -0.0)) { // x + -0 = x
+                    return left;
+                }
+                if (isConstant(left, -0.0)) { // -0 + x = x
+                    return right;
+                }
+                break;
+            case SUBTRACT:
+                if (isConstant(right, 0.0)) { // x - 0 = x
+                    return left;
+                }
+                if (isConstant(left, -0.0)) { // -0 - x = -x
+                    return optimizeNegate(right);
+                }
+                break;
+            case MULTIPLY:
+                if (isConstant(right, 1.0)) { // x * 1 = x
+                    return left;
+                }
+                if (isConstant(left, 1.0)) { // 1 * x = x
+                    return right;
+                }
+                if (isConstant(right, -1.0)) { // x * -1 = -x
+                    return optimizeNegate(left);
+                }
+                if (isConstant(left, -1.0)) { // -1 * x = -x
+                    return optimizeNegate(right);
+                }
+                break;
+            case DIVIDE:
+                if (isConstant(right, 1.0)) { // x / 1 = x
+                    return left;
+                }
+                if (isConstant(right, -1.0)) { // x / -1 = -x
+                    return optimizeNegate(left);
+                }
+                break;
+            case POWER:
+                if (isConstant(right, 1.0)) { // x ^ 1 = x
+                    return left;
+                }
+                if (isConstant(right, 0.0) && left.isDeterministic()) { // x ^ 0 = 1 (even for NaN, as per Math#pow())
+                    return ExpressionNode.constant(1.0);
+                }
+                break;
+            default:
+                break;
+        }
+
+        return ExpressionNode.binary(operator, left, right);
+    }
+
+    // Compared bitwise such that 0 and -0 are distinct
+    private static boolean isConstant(@NotNull ExpressionNode node, double value) {
+        return node instanceof Constant && Double.doubleToLongBits(((Constant) node).getValue()) == Double.doubleToLongBits(value);
+    }
+
+}
@@ -4,9 +4,14 @@ import com.google.common.base.Preconditions;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Consumer;
 import java.util.function.DoubleUnaryOperator;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import wtf.choco.dragoneggdrop.particle.ParticleVariable;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Operator;
 
 /**
  * A utility class to parse and obtain instances of {@link MathExpression}
@@ -24,32 +29,33 @@ public final class ExpressionUtils {
      * Object-Oriented format
      */
 
-    private static final Map<@NotNull String, @NotNull DoubleUnaryOperator> OPERATORS = new HashMap<>();
+    private static final Map<@NotNull String, @NotNull MathFunction> OPERATORS = new HashMap<>();
 
     static {
         // Basic arithmetics
-        OPERATORS.put("sqrt", StrictMath::sqrt);
-        OPERATORS.put("abs", Math::abs);
-        OPERATORS.put("log", x -> x <= 0 ? Double.NaN : Math.log10(x));
+        registerPureOperator("sqrt", StrictMath::sqrt);
+        registerPureOperator("abs", Math::abs);
+        registerPureOperator("log", x -> x <= 0 ? Double.NaN : Math.log10(x));
 
-        // Trigonometric
-        OPERATORS.put("sin", x -> StrictMath.sin(Math.toRadians(x)));
-        OPERATORS.put("cos", x -> StrictMath.cos(Math.toRadians(x)));
-        OPERATORS.put("tan", x -> StrictMath.tan(Math.toRadians(x)));
+        // Trigonometric. Fast variants use a lookup table (sin, cos) or the non-strict intrinsics
+        registerPureOperator("sin", x -> StrictMath.sin(Math.toRadians(x)), FastTrig.SIN);
+        registerPureOperator("cos", x -> StrictMath.cos(Math.toRadians(x)), FastTrig.COS);
+        registerPureOperator("tan", x -> StrictMath.tan(Math.toRadians(x)), new MathFunction("tan", x -> Math.tan(Math.toRadians(x)), true));
 
-        OPERATORS.put("csc", x -> 1 / StrictMath.sin(Math.toRadians(x)));
-        OPERATORS.put("sec", x -> 1 / StrictMath.cos(Math.toRadians(x)));
-        OPERATORS.put("cot", x -> 1 / StrictMath.tan(Math.toRadians(x)));
+        registerPureOperator("csc", x -> 1 / StrictMath.sin(Math.toRadians(x)), new MathFunction("csc", x -> 1 / Math.sin(Math.toRadians(x)), true));
+        registerPureOperator("sec", x -> 1 / StrictMath.cos(Math.toRadians(x)), new MathFunction("sec", x -> 1 / Math.cos(Math.toRadians(x)), true));
+        registerPureOperator("cot", x -> 1 / StrictMath.tan(Math.toRadians(x)), new MathFunction("cot", x -> 1 / Math.tan(Math.toRadians(x)), true));
 
         // Conversion
-        OPERATORS.put("rad", Math::toRadians);
-        OPERATORS.put("deg", Math::toDegrees);
+        registerPureOperator("rad", Math::toRadians);
+        registerPureOperator("deg", Math::toDegrees);
     }
 
     private ExpressionUtils() {}
 
     /**
-     * Evaluate a basic mathematical expression.
+     * Evaluate a basic mathematical expression. The parsed expression will have been
+     * simplified by the {@link ExpressionOptimizer}.
      *
      * @param expression the string to parse
      *
@@ -57,12 +63,59 @@ public final class ExpressionUtils {
      */
     @NotNull
     public static MathExpression parseExpression(@NotNull String expression) {
+        return parseExpression(expression, MathMode.STRICT);
+    }
+
+    /**
+     * Evaluate a basic mathematical expression. The parsed expression will have been
+     * simplified by the {@link ExpressionOptimizer} under the given {@link MathMode}.
+     *
+     * @param expression the string to parse
+     * @param mode the math mode under which the expression will be evaluated
+     *
+     * @return The mathematical expression
+     */
+    @NotNull
+    public static MathExpression parseExpression(@NotNull String expression, @NotNull MathMode mode) {
+        return ExpressionOptimizer.optimize(parseTree(expression), mode);
+    }
+
+    /**
+     * Parse a basic mathematical expression into its tree of {@link ExpressionNode nodes}.
+     * The returned tree is unoptimized.
+     *
+     * @param expression the string to parse
+     *
+     * @return the root of the parsed expression tree
+     */
+    @NotNull
+    public static ExpressionNode parseTree(@NotNull String expression) {
+        return parseTree(expression, null);
+    }
+
+    /**
+     * Parse a basic mathematical expression into its tree of {@link ExpressionNode nodes}.
+     * Variables are resolved to their {@link ParticleVariable} while parsing. Any name that is
+     * neither a function nor a known variable is passed to the given callback (if present)
+     * and will evaluate to 0.0. The returned tree is unoptimized.
+     *
+     * @param expression the string to parse
+     * @param unknownVariableCallback the callback to which the names of unknown variables
+     * should be passed. May be null
+     *
+     * @return the root of the parsed expression tree
+     */
+    @NotNull
+    public static ExpressionNode parseTree(@NotNull String expression, @Nullable Consumer<@NotNull String> unknownVariableCallback) {
         Preconditions.checkArgument(expression != null, "expression must not be null");
-        return new ExpressionEvaluator(expression).parse();
+        return new ExpressionEvaluator(expression, unknownVariableCallback).parse();
     }
 
     /**
-     * Inject a custom mathematical operation into the expression parser.
+     * Inject a custom mathematical operation into the expression parser. Operations injected
+     * with this method are assumed to be impure and will never be folded into constants. If
+     * the operation is known to be pure, use {@link #injectMathematicalOperator(String, DoubleUnaryOperator, boolean)}
+     * instead.
      *
      * @param functionName the name of the function to inject (i.e. "sqrt")
      * @param operator the operation to perform when parsing this function
@@ -70,6 +123,21 @@ public final class ExpressionUtils {
      * @return true if successful. false if operator already exists
      */
     public static boolean injectMathematicalOperator(@NotNull String functionName, @NotNull DoubleUnaryOperator operator) {
+        return injectMathematicalOperator(functionName, operator, false);
+    }
+
+    /**
+     * Inject a custom mathematical operation into the expression parser.
+     *
+     * @param functionName the name of the function to inject (i.e. "sqrt")
+     * @param operator the operation to perform when parsing this function
+     * @param pure whether or not the operation is pure. Pure operations always return the
+     * same result given the same argument, and may be evaluated ahead of time if their
+     * argument is constant
+     *
+     * @return true if successful. false if operator already exists
+     */
+    public static boolean injectMathematicalOperator(@NotNull String functionName, @NotNull DoubleUnaryOperator operator, boolean pure) {
         Preconditions.checkArgument(functionName != null, "functionName must not be null");
         Preconditions.checkArgument(operator != null, "operator must not be null");
 
@@ -77,12 +145,34 @@ public final class ExpressionUtils {
             return false;
         }
 
-        OPERATORS.put(functionName, operator);
+        OPERATORS.put(functionName, new MathFunction(functionName, operator, pure));
         return true;
     }
 
     /**
-     * The logic behind the parsing of {@link MathExpression} objects.
+     * Get the mathematical operation with the given name, either built in or injected with
+     * {@link #injectMathematicalOperator(String, DoubleUnaryOperator, boolean)}.
+     *
+     * @param functionName the name of the function (i.e. "sqrt")
+     *
+     * @return the function. null if none exists with the given name
+     */
+    @Nullable
+    public static MathFunction getMathematicalOperator(@NotNull String functionName) {
+        Preconditions.checkArgument(functionName != null, "functionName must not be null");
+        return OPERATORS.get(functionName);
+    }
+
+    private static void registerPureOperator(@NotNull String functionName, @NotNull DoubleUnaryOperator operator) {
+        registerPureOperator(functionName, operator, null);
+    }
+
+    private static void registerPureOperator(@NotNull String functionName, @NotNull DoubleUnaryOperator operator, @Nullable MathFunction fastVariant) {
+        OPERATORS.put(functionName, new MathFunction(functionName, operator, true, fastVariant));
+    }
+
+    /**
+     * The logic behind the parsing of {@link ExpressionNode} trees.
      *
      * @author Parker Hawke - Choco
      */
@@ -91,9 +181,11 @@ public final class ExpressionUtils {
         private int pos = -1, ch;
 
         private final String expression;
+        private final Consumer<@NotNull String> unknownVariableCallback;
 
-        public ExpressionEvaluator(@NotNull String expression) {
+        public ExpressionEvaluator(@NotNull String expression, @Nullable Consumer<@NotNull String> unknownVariableCallback) {
             this.expression = expression;
+            this.unknownVariableCallback = unknownVariableCallback;
         }
 
         /**
@@ -130,10 +222,10 @@ public final class ExpressionUtils {
          * @return the parsed mathematical expression
          */
         @NotNull
-        public MathExpression parse() {
+        public ExpressionNode parse() {
             this.nextChar();
 
-            MathExpression x = this.parseExpression();
+            ExpressionNode x = this.parseExpression();
             if (pos < expression.length()) {
                 throw new RuntimeException("Unexpected: " + (char) ch);
             }
@@ -156,17 +248,15 @@ public final class ExpressionUtils {
          * @return the parsed expression
          */
         @NotNull
-        public MathExpression parseExpression() {
-            MathExpression x = parseTerm();
+        public ExpressionNode parseExpression() {
+            ExpressionNode x = parseTerm();
 
             while (true) {
                 if (eat('+')) { // addition
-                    MathExpression a = x, b = parseTerm();
-                    x = (variables -> a.evaluate(variables) + b.evaluate(variables));
+                    x = ExpressionNode.binary(Operator.ADD, x, parseTerm());
                 }
                 else if (eat('-')) { // subtraction
-                    MathExpression a = x, b = parseTerm();
-                    x = (variables -> a.evaluate(variables) - b.evaluate(variables));
+                    x = ExpressionNode.binary(Operator.SUBTRACT, x, parseTerm());
                 }
                 else {
                     return x;
@@ -180,17 +270,15 @@ public final class ExpressionUtils {
          * @return the parsed term
          */
         @NotNull
-        public MathExpression parseTerm() {
-            MathExpression x = parseFactor();
+        public ExpressionNode parseTerm() {
+            ExpressionNode x = parseFactor();
 
             while (true) {
                 if (eat('*')) { // multiplication
-                    MathExpression a = x, b = parseFactor();
-                    x = (variables -> a.evaluate(variables) * b.evaluate(variables));
+                    x = ExpressionNode.binary(Operator.MULTIPLY, x, parseFactor());
                 }
                 else if (eat('/')) { // division
-                    MathExpression a = x, b = parseFactor();
-                    x = (variables -> a.evaluate(variables) / b.evaluate(variables));
+                    x = ExpressionNode.binary(Operator.DIVIDE, x, parseFactor());
                 }
                 else {
                     return x;
@@ -205,16 +293,16 @@ public final class ExpressionUtils {
          * @return the parsed factor
          */
         @NotNull
-        public MathExpression parseFactor() {
+        public ExpressionNode parseFactor() {
             if (eat('+')) {
                 return parseFactor(); // unary plus
             }
 
             if (eat('-')) {
-                return variables -> -parseFactor().evaluate(variables); // unary minus
+                return ExpressionNode.negate(parseFactor()); // unary minus
             }
 
-            MathExpression x;
+            ExpressionNode x;
             int startPos = pos;
 
             if (eat('(')) { // parentheses
@@ -226,8 +314,7 @@ public final class ExpressionUtils {
                     this.nextChar();
                 }
 
-                String value = expression.substring(startPos, this.pos);
-                x = (variables -> Double.parseDouble(value));
+                x = ExpressionNode.constant(Double.parseDouble(expression.substring(startPos, this.pos)));
             }
             else if (ch >= 'a' && ch <= 'z') { // functions
                 while (ch >= 'a' && ch <= 'z') {
@@ -237,12 +324,21 @@ public final class ExpressionUtils {
                 String function = expression.substring(startPos, this.pos);
 
                 if (OPERATORS.containsKey(function)) {
-                    DoubleUnaryOperator operand = OPERATORS.get(function);
-                    MathExpression a = this.parseFactor();
-                    x = (variables -> operand.applyAsDouble(a.evaluate(variables)));
+                    x = ExpressionNode.function(OPERATORS.get(function), parseFactor());
                 }
                 else {
-                    x = (variables -> variables.get(function, 0.0));
+                    ParticleVariable variable = ParticleVariable.getByName(function);
+
+                    if (variable != null) {
+                        x = ExpressionNode.variable(variable);
+                    }
+                    else {
+                        if (unknownVariableCallback != null) {
+                            this.unknownVariableCallback.accept(function);
+                        }
+
+                        x = ExpressionNode.constant(0.0); // Unknown variables evaluate to 0
+                    }
                 }
             }
             else {
@@ -250,8 +346,7 @@ public final class ExpressionUtils {
             }
 
             if (eat('^')) { // exponentiation
-                MathExpression a = x, b = parseFactor();
-                x = (variables -> Math.pow(a.evaluate(variables), b.evaluate(variables)));
+                x = ExpressionNode.binary(Operator.POWER, x, parseFactor());
             }
 
             return x;
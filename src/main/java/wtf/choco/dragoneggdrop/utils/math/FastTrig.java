@@ -0,0 +1,110 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+/**
+ * Table-based trigonometric functions operating on degrees, used by {@link MathMode#FAST}.
+ * <p>
+ * Values are linearly interpolated from a table of {@value #STEPS} samples per full turn
+ * (a step of roughly 0.088 degrees). The absolute error of {@link #sin(double)} and
+ * {@link #cos(double)} is bounded by {@code h^2 / 8} where {@code h} is the step in
+ * radians, which is less than {@code 3.0E-7} for any finite argument. NaN and infinite
+ * arguments result in NaN.
+ * <p>
+ * Both functions share the same range reduction. Where the sine and cosine of the same
+ * argument are both required, the argument may be reduced once using {@link #phase(double)}
+ * and passed to {@link #sinPhase(double)} and {@link #cosPhase(double)}.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class FastTrig {
+
+    /**
+     * The maximum absolute error of {@link #sin(double)} and {@link #cos(double)}.
+     */
+    public static final double MAX_ERROR = 3.0E-7;
+
+    private static final int STEPS = 4096;
+    private static final int QUARTER = STEPS / 4;
+    private static final double STEPS_PER_DEGREE = STEPS / 360.0;
+
+    // STEPS + QUARTER for the cosine offset, + 2 so interpolation never exceeds the table
+    private static final double[] SIN_TABLE = new double[STEPS + QUARTER + 2];
+
+    static {
+        for (int i = 0; i < SIN_TABLE.length; i++) {
+            SIN_TABLE[i] = StrictMath.sin(i * (2 * Math.PI / STEPS));
+        }
+    }
+
+    static final MathFunction SIN = new MathFunction("sin", FastTrig::sin, true);
+    static final MathFunction COS = new MathFunction("cos", FastTrig::cos, true);
+
+    private FastTrig() { }
+
+    /**
+     * Get the sine of the given angle.
+     *
+     * @param degrees the angle in degrees
+     *
+     * @return the sine of the angle
+     */
+    public static double sin(double degrees) {
+        return sinPhase(phase(degrees));
+    }
+
+    /**
+     * Get the cosine of the given angle.
+     *
+     * @param degrees the angle in degrees
+     *
+     * @return the cosine of the angle
+     */
+    public static double cos(double degrees) {
+        return cosPhase(phase(degrees));
+    }
+
+    /**
+     * Reduce an angle in degrees to its position in the lookup table. The result is to be
+     * passed to {@link #sinPhase(double)} or {@link #cosPhase(double)}.
+     *
+     * @param degrees the angle in degrees
+     *
+     * @return the table phase, or NaN if the angle is not finite
+     */
+    public static double phase(double degrees) {
+        double phase = (degrees % 360.0) * STEPS_PER_DEGREE; // % is exact, and NaN for infinite values
+        return (phase < 0) ? phase + STEPS : phase;
+    }
+
+    /**
+     * Get the sine of an angle previously reduced with {@link #phase(double)}.
+     *
+     * @param phase the table phase
+     *
+     * @return the sine of the angle
+     */
+    public static double sinPhase(double phase) {
+        return interpolate(phase);
+    }
+
+    /**
+     * Get the cosine of an angle previously reduced with {@link #phase(double)}.
+     *
+     * @param phase the table phase
+     *
+     * @return the cosine of the angle
+     */
+    public static double cosPhase(double phase) {
+        return interpolate(phase + QUARTER);
+    }
+
+    private static double interpolate(double phase) {
+        if (phase != phase) { // NaN
+            return Double.NaN;
+        }
+
+        int index = (int) phase;
+        double a = SIN_TABLE[index];
+        return a + (SIN_TABLE[index + 1] - a) * (phase - index);
+    }
+
+}
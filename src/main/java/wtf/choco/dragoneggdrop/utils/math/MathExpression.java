@@ -21,4 +21,26 @@ public interface MathExpression {
      */
     public double evaluate(@NotNull ParticleVariables variables);
 
+    /**
+     * Evaluate the mathematical expression once for each of the given theta values, writing
+     * the results to the output array. All other variables are read from the provided set
+     * of variables. This is equivalent to, but may be considerably faster than, setting
+     * {@link ParticleVariables#setTheta(double) theta} and calling
+     * {@link #evaluate(ParticleVariables)} for each value.
+     * <p>
+     * The value of theta in the provided variables is unspecified after this method returns.
+     *
+     * @param variables a set of variables with which to replace special vars
+     * @param theta the values of theta for which to evaluate this expression
+     * @param out the array to which results should be written
+     * @param count the amount of values to evaluate. Must not exceed the length of either
+     * array
+     */
+    public default void evaluate(@NotNull ParticleVariables variables, @NotNull double[] theta, @NotNull double[] out, int count) {
+        for (int i = 0; i < count; i++) {
+            variables.setTheta(theta[i]);
+            out[i] = evaluate(variables);
+        }
+    }
+
 }
@@ -0,0 +1,106 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import com.google.common.base.Preconditions;
+
+import java.util.function.DoubleUnaryOperator;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Represents a named function that may be used in a {@link MathExpression} (such as "sqrt"
+ * or "sin"). A function is considered pure if it will always produce the same result for
+ * the same argument and has no side effects. Only pure functions may be folded into
+ * constants by the {@link ExpressionOptimizer}.
+ * <p>
+ * Built-in functions may additionally declare a faster, less precise variant to be used
+ * when expressions are optimized under {@link MathMode#FAST}.
+ *
+ * @author Parker Hawke - Choco
+ */
+public final class MathFunction {
+
+    private final String name;
+    private final DoubleUnaryOperator operator;
+    private final boolean pure;
+    private final MathFunction fastVariant;
+
+    /**
+     * Construct a new {@link MathFunction}.
+     *
+     * @param name the name of the function
+     * @param operator the operation to perform
+     * @param pure whether or not the function is pure
+     */
+    public MathFunction(@NotNull String name, @NotNull DoubleUnaryOperator operator, boolean pure) {
+        this(name, operator, pure, null);
+    }
+
+    MathFunction(@NotNull String name, @NotNull DoubleUnaryOperator operator, boolean pure, @Nullable MathFunction fastVariant) {
+        Preconditions.checkArgument(name != null, "name must not be null");
+        Preconditions.checkArgument(operator != null, "operator must not be null");
+
+        this.name = name;
+        this.operator = operator;
+        this.pure = pure;
+        this.fastVariant = fastVariant;
+    }
+
+    /**
+     * Get the name of this function.
+     *
+     * @return the function name
+     */
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the operation performed by this function.
+     *
+     * @return the operator
+     */
+    @NotNull
+    public DoubleUnaryOperator getOperator() {
+        return operator;
+    }
+
+    /**
+     * Check whether or not this function is pure. Pure functions always produce the same
+     * result given the same argument and may therefore be evaluated ahead of time.
+     *
+     * @return true if pure, false otherwise
+     */
+    public boolean isPure() {
+        return pure;
+    }
+
+    /**
+     * Get the variant of this function to be used under {@link MathMode#FAST}, if any.
+     *
+     * @return the fast variant. null if this function has none
+     */
+    @Nullable
+    public MathFunction getFastVariant() {
+        return fastVariant;
+    }
+
+    /**
+     * Apply this function to the given argument.
+     *
+     * @param argument the argument
+     *
+     * @return the result
+     */
+    public double apply(double argument) {
+        return operator.applyAsDouble(argument);
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
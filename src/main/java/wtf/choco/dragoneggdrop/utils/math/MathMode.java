@@ -0,0 +1,24 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+/**
+ * Represents the precision with which functions in a {@link MathExpression} are evaluated.
+ *
+ * @author Parker Hawke - Choco
+ */
+public enum MathMode {
+
+    /**
+     * Functions are evaluated exactly as specified by {@link StrictMath}. Results are
+     * identical across platforms.
+     */
+    STRICT,
+
+    /**
+     * Trigonometric functions are approximated. Sine and cosine are interpolated from a
+     * lookup table (see {@link FastTrig} for the error bound) and all other trigonometric
+     * functions use the platform's {@link Math} intrinsics. Well suited to particle
+     * coordinates where errors far below a pixel are not visible.
+     */
+    FAST;
+
+}
@@ -168,7 +168,9 @@ public class DragonBattleRecord {
         String templateId = JsonUtils.getRequiredField(object, "template", JsonElement::getAsString);
         String lootTableId = JsonUtils.getOptionalField(object, "lootTable", JsonElement::getAsString, "");
         long deathTimestamp = JsonUtils.getOptionalField(object, "deathTimestamp", JsonElement::getAsLong, 0L);
-        DamageHistory damageHistory = JsonUtils.getOptionalField(object, "damageHistory", element -> DamageHistory.fromJson(element.getAsJsonObject()), DamageHistory.dummy());
+
+        // Damage recorded by older versions has no timestamp, but was dealt no later than the dragon's death
+        DamageHistory damageHistory = JsonUtils.getOptionalField(object, "damageHistory", element -> DamageHistory.fromJson(element.getAsJsonObject(), (deathTimestamp > 0) ? deathTimestamp : -1), DamageHistory.dummy());
 
         DragonEggDrop plugin = DragonEggDrop.getInstance();
 
@@ -0,0 +1,522 @@
+package wtf.choco.dragoneggdrop.dragon;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import wtf.choco.dragoneggdrop.dragon.DamageHistory.DamageEntry;
+
+public class DamageHistoryTest {
+
+    // Exact binary fractions, such that totals do not depend on the order in which damage is summed. Few values make ties likely
+    private static final double[] DAMAGE = { 0.5, 1, 1.5, 2, 4 };
+
+    @Test
+    public void testRankingMatchesModel() {
+        Random random = new Random(0);
+
+        for (int damagerCount : new int[] { 1, 2, 3, 8, 9, 50, 300 }) {
+            DamageHistory history = createHistory(-1);
+            ReferenceHistory model = new ReferenceHistory();
+            UUID[] damagers = createDamagers(damagerCount);
+
+            for (int hit = 0; hit < damagerCount * 10; hit++) {
+                UUID source = damagers[random.nextInt(damagerCount)];
+                double damage = DAMAGE[random.nextInt(DAMAGE.length)];
+
+                history.recordDamage(source, damage, hit);
+                model.recordDamage(source, damage, hit);
+
+                if (damagerCount <= 50 || hit % 100 == 0) {
+                    assertMatchesModel(history, model);
+                }
+            }
+
+            assertMatchesModel(history, model);
+        }
+    }
+
+    @Test
+    public void testTieOrder() {
+        DamageHistory history = createHistory(-1);
+        UUID first = new UUID(0, 1), second = new UUID(0, 2), third = new UUID(0, 3);
+
+        history.recordDamage(first, 5, 0);
+        history.recordDamage(second, 5, 1);
+        assertRanking(history, first, second);
+
+        // Whoever reaches a total first is ranked ahead of those reaching it later
+        history.recordDamage(second, 1, 2);
+        history.recordDamage(first, 1, 3);
+        assertRanking(history, second, first);
+
+        history.recordDamage(third, 2, 4);
+        history.recordDamage(third, 4, 5);
+        assertRanking(history, second, first, third);
+
+        history.recordDamage(third, 1, 6);
+        assertRanking(history, third, second, first);
+    }
+
+    @Test
+    public void testTopDamagerBounds() {
+        DamageHistory history = createHistory(-1);
+        Assert.assertNull(history.getTopDamager());
+        Assert.assertNull(history.getTopDamager(0));
+        Assert.assertArrayEquals("No damagers", new DamageEntry[3], history.getTopDamagers(3));
+
+        history.recordDamage(new UUID(0, 1), 1, 0);
+        history.recordDamage(new UUID(0, 2), 2, 0);
+
+        DamageEntry[] topDamagers = history.getTopDamagers(4);
+        Assert.assertEquals(new UUID(0, 2), topDamagers[0].getSource());
+        Assert.assertEquals(new UUID(0, 1), topDamagers[1].getSource());
+        Assert.assertNull(topDamagers[2]);
+        Assert.assertNull(topDamagers[3]);
+
+        try {
+            history.getTopDamager(2);
+            Assert.fail("Expected an offset beyond the amount of damagers to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+    }
+
+    @Test(timeout = 10000) // A full table would never terminate lookups
+    public void testTableLookups() {
+        DamageHistory history = createHistory(-1);
+        ReferenceHistory model = new ReferenceHistory();
+
+        // UUIDs differing in only one half, or in only the upper or lower bits of a half, are likely to collide in the table
+        List<UUID> damagers = new ArrayList<>();
+        for (long i = 1; i <= 500; i++) {
+            damagers.add(new UUID(i, 0));
+            damagers.add(new UUID(0, i));
+            damagers.add(new UUID(i, i));
+            damagers.add(new UUID(i << 32, -(i << 32)));
+        }
+
+        for (int i = 0; i < damagers.size(); i++) {
+            UUID source = damagers.get(i);
+            double damage = DAMAGE[i % DAMAGE.length];
+
+            history.recordDamage(source, damage, i);
+            model.recordDamage(source, damage, i);
+        }
+
+        for (UUID damager : damagers) {
+            Assert.assertEquals(damager.toString(), model.getTotalDamageFrom(damager), history.getTotalDamageFrom(damager), 0.0);
+        }
+
+        for (long i = 501; i <= 600; i++) {
+            Assert.assertEquals(0.0, history.getTotalDamageFrom(new UUID(i, 0)), 0.0);
+            Assert.assertEquals(0.0, history.getTotalDamageFrom(new UUID(i, 1)), 0.0);
+        }
+
+        assertMatchesModel(history, model);
+    }
+
+    @Test(timeout = 10000)
+    public void testGrowthAfterCompact() {
+        Random random = new Random(1);
+
+        // Compacted arrays are sized to the amount of damagers, which is rarely a power of two
+        for (int initialCount : new int[] { 0, 1, 2, 3, 5, 7, 8, 9, 12, 16, 17, 100 }) {
+            DamageHistory history = createHistory(-1);
+            ReferenceHistory model = new ReferenceHistory();
+            UUID[] damagers = createDamagers(initialCount + 40);
+            long timestamp = 0;
+
+            for (int i = 0; i < initialCount; i++) {
+                history.recordDamage(damagers[i], DAMAGE[i % DAMAGE.length], timestamp);
+                model.recordDamage(damagers[i], DAMAGE[i % DAMAGE.length], timestamp++);
+            }
+
+            history.compact();
+            assertMatchesModel(history, model);
+
+            // New damagers interleaved with existing ones, compacting again every now and then
+            for (int i = initialCount; i < damagers.length; i++) {
+                UUID existing = damagers[random.nextInt(i + 1)];
+                history.recordDamage(existing, 1, timestamp);
+                model.recordDamage(existing, 1, timestamp++);
+
+                history.recordDamage(damagers[i], 2, timestamp);
+                model.recordDamage(damagers[i], 2, timestamp++);
+                assertMatchesModel(history, model);
+
+                if (random.nextInt(8) == 0) {
+                    history.compact();
+                    assertMatchesModel(history, model);
+                }
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testClearTotalDamage() {
+        DamageHistory history = createHistory(-1);
+        UUID[] damagers = createDamagers(20);
+        for (UUID damager : damagers) {
+            history.recordDamage(damager, 1, 0);
+        }
+
+        history.clearTotalDamage();
+        Assert.assertEquals(0, history.uniqueDamagers());
+        Assert.assertNull(history.getTopDamager());
+        for (UUID damager : damagers) {
+            Assert.assertEquals(0.0, history.getTotalDamageFrom(damager), 0.0);
+        }
+
+        ReferenceHistory model = new ReferenceHistory();
+        for (int i = damagers.length - 1; i >= 0; i--) {
+            history.recordDamage(damagers[i], DAMAGE[i % DAMAGE.length], 1);
+            model.recordDamage(damagers[i], DAMAGE[i % DAMAGE.length], 1);
+        }
+
+        assertMatchesModel(history, model);
+    }
+
+    @Test
+    public void testEvictionIntoAggregates() {
+        Random random = new Random(2);
+        DamageHistory history = createHistory(8);
+        ReferenceHistory model = new ReferenceHistory();
+        UUID[] damagers = createDamagers(5);
+        long timestamp = 1_000;
+
+        for (int hit = 0; hit < 2_000; hit++) {
+            UUID source = damagers[random.nextInt(damagers.length)];
+            double damage = DAMAGE[random.nextInt(DAMAGE.length)];
+            timestamp += random.nextInt(8);
+
+            history.recordDamage(source, damage, timestamp);
+            model.recordDamage(source, damage, timestamp);
+
+            // The most recent hits are retained as they were recorded
+            List<Hit> hits = model.getHits();
+            Assert.assertEquals(Math.min(hits.size(), 8), history.size());
+            for (int offset = 0; offset < history.size(); offset++) {
+                Hit expected = hits.get(hits.size() - 1 - offset);
+                Assert.assertEquals(expected.source, history.getMostRecentDamage(offset).getSource());
+                Assert.assertEquals(expected.damage, history.getMostRecentDamage(offset).getDamage(), 0.0);
+            }
+
+            if (hit % 50 == 0) {
+                assertMatchesModel(history, model);
+                assertDamageSinceWithinBounds(history, model, 8);
+            }
+        }
+
+        // Older hits are only kept in aggregates, which never exceed the maximum amount of buckets per damager
+        JsonObject aggregates = history.toJson().getAsJsonObject("damageAggregates");
+        Assert.assertNotNull(aggregates);
+        Assert.assertTrue(aggregates.getAsJsonArray("buckets").size() <= damagers.length * 64);
+        assertMatchesModel(history, model);
+    }
+
+    @Test
+    public void testCoalesceBuckets() {
+        DamageHistory history = createHistory(0, 1);
+        ReferenceHistory model = new ReferenceHistory();
+        UUID[] damagers = createDamagers(2);
+
+        for (int timestamp = 0; timestamp < 1_000; timestamp++) {
+            history.recordDamage(damagers[timestamp % 2], DAMAGE[timestamp % DAMAGE.length], timestamp);
+            model.recordDamage(damagers[timestamp % 2], DAMAGE[timestamp % DAMAGE.length], timestamp);
+        }
+
+        // The bucket width doubles from 1 until the last hit lies within the first 64 buckets
+        JsonObject aggregates = history.toJson().getAsJsonObject("damageAggregates");
+        Assert.assertEquals(0, aggregates.get("origin").getAsLong());
+        Assert.assertEquals(16, aggregates.get("bucketMillis").getAsLong());
+
+        // Every aggregate must hold exactly the damage dealt by its source within its bucket
+        Map<String, Double> expected = new HashMap<>();
+        for (Hit hit : model.getHits()) {
+            expected.merge(hit.source + "/" + (hit.timestamp / 16), hit.damage, Double::sum);
+        }
+
+        Map<String, Double> actual = new HashMap<>();
+        for (JsonElement element : aggregates.getAsJsonArray("buckets")) {
+            JsonObject bucket = element.getAsJsonObject();
+            Assert.assertTrue(bucket.get("bucket").getAsInt() < 64);
+            Assert.assertNull("Duplicate aggregate " + bucket, actual.put(bucket.get("source").getAsString() + "/" + bucket.get("bucket").getAsInt(), bucket.get("damage").getAsDouble()));
+        }
+
+        Assert.assertEquals(expected, actual);
+        assertMatchesModel(history, model);
+    }
+
+    @Test
+    public void testMaxSizeZero() {
+        DamageHistory history = createHistory(0);
+        ReferenceHistory model = new ReferenceHistory();
+        UUID[] damagers = createDamagers(3);
+
+        for (int hit = 0; hit < 100; hit++) {
+            history.recordDamage(damagers[hit % 3], DAMAGE[hit % DAMAGE.length], hit * 100L);
+            model.recordDamage(damagers[hit % 3], DAMAGE[hit % DAMAGE.length], hit * 100L);
+
+            Assert.assertEquals(0, history.size());
+            Assert.assertTrue(history.getDamageLog().isFull());
+            Assert.assertNull(history.getMostRecentDamage());
+        }
+
+        try {
+            history.getMostRecentDamage(0);
+            Assert.fail("Expected an offset beyond the size of the log to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // Expected
+        }
+
+        assertMatchesModel(history, model);
+        assertDamageSinceWithinBounds(history, model, 0);
+        Assert.assertEquals(0, history.getDamageLog().getAllocatedBytes());
+    }
+
+    @Test
+    public void testJsonRoundTrip() {
+        Random random = new Random(3);
+        DamageHistory history = createHistory(16);
+        ReferenceHistory model = new ReferenceHistory();
+        UUID[] damagers = createDamagers(6);
+        long timestamp = 1_700_000_000_000L;
+
+        for (int hit = 0; hit < 1_000; hit++) {
+            UUID source = damagers[random.nextInt(damagers.length)];
+            double damage = DAMAGE[random.nextInt(DAMAGE.length)];
+            timestamp += random.nextInt(50);
+
+            history.recordDamage(source, damage, timestamp);
+            model.recordDamage(source, damage, timestamp);
+        }
+
+        JsonObject object = history.toJson();
+        Assert.assertTrue(object.has("damageAggregates"));
+
+        DamageHistory restored = DamageHistory.fromJson(object, -1, 16, 10);
+        Assert.assertEquals(object, restored.toJson());
+        Assert.assertEquals(history.getEntityUUID(), restored.getEntityUUID());
+        Assert.assertEquals(history.size(), restored.size());
+        assertTotalsMatchModel(restored, model);
+
+        for (long since = timestamp - 25_000; since <= timestamp + 1; since += 997) {
+            for (UUID damager : damagers) {
+                Assert.assertEquals(history.getTotalDamageFrom(damager, since), restored.getTotalDamageFrom(damager, since), 0.0);
+            }
+        }
+
+        // Restoring with a smaller log evicts the oldest entries into aggregates
+        DamageHistory smaller = DamageHistory.fromJson(object, -1, 4, 10);
+        Assert.assertEquals(4, smaller.size());
+        assertTotalsMatchModel(smaller, model);
+        for (UUID damager : damagers) {
+            Assert.assertEquals(model.getTotalDamageFrom(damager), smaller.getTotalDamageFrom(damager, Long.MIN_VALUE), 0.0);
+        }
+    }
+
+    @Test
+    public void testEntriesWithoutTimestamp() {
+        ReferenceHistory model = new ReferenceHistory();
+        UUID[] damagers = createDamagers(4);
+
+        // As serialized by versions predating timestamps, most recent first and retaining every hit
+        JsonArray entries = new JsonArray();
+        for (int hit = 0; hit < 100; hit++) {
+            JsonObject entry = new JsonObject();
+            entry.addProperty("source", damagers[hit % 4].toString());
+            entry.addProperty("damage", DAMAGE[hit % DAMAGE.length]);
+            entries.add(entry);
+
+            model.recordDamage(damagers[hit % 4], DAMAGE[hit % DAMAGE.length], 0);
+        }
+
+        JsonObject object = new JsonObject();
+        object.addProperty("entityUUID", UUID.randomUUID().toString());
+        object.add("damageEntries", entries);
+
+        // Evicted entries are aggregated at the given time, without ever coalescing buckets
+        long deathTimestamp = 1_700_000_000_000L;
+        DamageHistory history = DamageHistory.fromJson(object, deathTimestamp, 10, 10_000);
+        JsonObject aggregates = history.toJson().getAsJsonObject("damageAggregates");
+
+        Assert.assertEquals(10, history.size());
+        Assert.assertEquals(deathTimestamp, aggregates.get("origin").getAsLong());
+        Assert.assertEquals(10_000, aggregates.get("bucketMillis").getAsLong());
+        assertTotalsMatchModel(history, model);
+        for (UUID damager : damagers) {
+            Assert.assertEquals(model.getTotalDamageFrom(damager), history.getTotalDamageFrom(damager, deathTimestamp), 0.0);
+        }
+
+        // Without a time, evicted entries are only accounted for by total damage
+        DamageHistory unknownTime = DamageHistory.fromJson(object, -1, 10, 10_000);
+        JsonObject serialized = unknownTime.toJson();
+
+        Assert.assertEquals(10, unknownTime.size());
+        Assert.assertFalse(serialized.has("damageAggregates"));
+        Assert.assertFalse(serialized.getAsJsonArray("damageEntries").get(0).getAsJsonObject().has("timestamp"));
+        assertTotalsMatchModel(unknownTime, model);
+        for (UUID damager : damagers) {
+            Assert.assertEquals(0.0, unknownTime.getTotalDamageFrom(damager, 0), 0.0);
+        }
+
+        Assert.assertEquals(serialized, DamageHistory.fromJson(serialized, -1, 10, 10_000).toJson());
+    }
+
+    static DamageHistory createHistory(int maxLogSize, long bucketMillis) {
+        return new DamageHistory(UUID.randomUUID(), maxLogSize, bucketMillis);
+    }
+
+    static DamageHistory createHistory(int maxLogSize) {
+        return new DamageHistory(UUID.randomUUID(), maxLogSize, 10);
+    }
+
+    static UUID[] createDamagers(int count) {
+        UUID[] damagers = new UUID[count];
+        for (int i = 0; i < count; i++) {
+            damagers[i] = new UUID(i * 31L, ~i);
+        }
+
+        return damagers;
+    }
+
+    static void assertMatchesModel(DamageHistory history, ReferenceHistory model) {
+        List<Map.Entry<UUID, Double>> ranking = model.getRanking();
+        Assert.assertEquals(ranking.size(), history.uniqueDamagers());
+
+        DamageEntry[] topDamagers = history.getTopDamagers(ranking.size() + 1);
+        for (int i = 0; i < ranking.size(); i++) {
+            Map.Entry<UUID, Double> expected = ranking.get(i);
+
+            Assert.assertEquals("Damager at rank " + i, expected.getKey(), topDamagers[i].getSource());
+            Assert.assertEquals("Damage at rank " + i, expected.getValue(), topDamagers[i].getDamage(), 0.0);
+            Assert.assertEquals(expected.getKey(), history.getTopDamager(i).getSource());
+            Assert.assertEquals(expected.getValue(), history.getTotalDamageFrom(expected.getKey()), 0.0);
+        }
+
+        Assert.assertNull(topDamagers[ranking.size()]);
+
+        if (!ranking.isEmpty()) {
+            Assert.assertEquals(ranking.get(0).getKey(), history.getTopDamager().getSource());
+        }
+    }
+
+    // Tied damagers may be ranked in a different order once deserialized, as damage is then recorded in a different order
+    private static void assertTotalsMatchModel(DamageHistory history, ReferenceHistory model) {
+        List<Map.Entry<UUID, Double>> ranking = model.getRanking();
+        Assert.assertEquals(ranking.size(), history.uniqueDamagers());
+
+        for (int i = 0; i < ranking.size(); i++) {
+            Map.Entry<UUID, Double> expected = ranking.get(i);
+            Assert.assertEquals(expected.getValue(), history.getTopDamager(i).getDamage(), 0.0);
+            Assert.assertEquals(expected.getValue(), history.getTotalDamageFrom(expected.getKey()), 0.0);
+        }
+    }
+
+    // Damage older than the log is counted by bucket, so up to a bucket's width of earlier damage may be counted too
+    private static void assertDamageSinceWithinBounds(DamageHistory history, ReferenceHistory model, int maxLogSize) {
+        JsonObject aggregates = history.toJson().getAsJsonObject("damageAggregates");
+        long bucketMillis = (aggregates != null) ? aggregates.get("bucketMillis").getAsLong() : 0;
+
+        List<Hit> hits = model.getHits();
+        long first = hits.get(0).timestamp, last = hits.get(hits.size() - 1).timestamp;
+
+        for (long since = first - 1; since <= last + 1; since += Math.max((last - first) / 20, 1)) {
+            for (UUID damager : model.getDamagers()) {
+                double lowerBound = 0.0, upperBound = 0.0;
+
+                for (int i = 0; i < hits.size(); i++) {
+                    Hit hit = hits.get(i);
+                    if (!hit.source.equals(damager)) {
+                        continue;
+                    }
+
+                    boolean evicted = i < hits.size() - maxLogSize;
+                    if (hit.timestamp >= since) {
+                        lowerBound += hit.damage;
+                        upperBound += hit.damage;
+                    } else if (evicted && hit.timestamp > since - bucketMillis) {
+                        upperBound += hit.damage;
+                    }
+                }
+
+                double actual = history.getTotalDamageFrom(damager, since);
+                Assert.assertTrue("Damage since " + since + " was " + actual + ", expected at least " + lowerBound, actual >= lowerBound);
+                Assert.assertTrue("Damage since " + since + " was " + actual + ", expected at most " + upperBound, actual <= upperBound);
+            }
+        }
+
+        for (UUID damager : model.getDamagers()) {
+            Assert.assertEquals(model.getTotalDamageFrom(damager), history.getTotalDamageFrom(damager, Long.MIN_VALUE), 0.0);
+        }
+    }
+
+    private static void assertRanking(DamageHistory history, UUID... expected) {
+        for (int i = 0; i < expected.length; i++) {
+            Assert.assertEquals("Damager at rank " + i, expected[i], history.getTopDamager(i).getSource());
+        }
+    }
+
+    // A naive history retaining every hit, ranking damagers by sorting them on every query
+    static final class ReferenceHistory {
+
+        private final Map<UUID, Double> totals = new LinkedHashMap<>();
+        private final Map<UUID, Integer> lastChanged = new HashMap<>();
+        private final List<Hit> hits = new ArrayList<>();
+
+        void recordDamage(UUID source, double damage, long timestamp) {
+            this.totals.merge(source, damage, Double::sum);
+            this.lastChanged.put(source, hits.size());
+            this.hits.add(new Hit(source, damage, timestamp));
+        }
+
+        // By total damage (most first), ties by whoever reached their total first
+        List<Map.Entry<UUID, Double>> getRanking() {
+            List<Map.Entry<UUID, Double>> ranking = new ArrayList<>(totals.entrySet());
+            ranking.sort(Comparator.comparing((Map.Entry<UUID, Double> entry) -> entry.getValue()).reversed().thenComparing(entry -> lastChanged.get(entry.getKey())));
+            return ranking;
+        }
+
+        Set<UUID> getDamagers() {
+            return totals.keySet();
+        }
+
+        double getTotalDamageFrom(UUID source) {
+            return totals.getOrDefault(source, 0.0);
+        }
+
+        List<Hit> getHits() {
+            return hits;
+        }
+
+    }
+
+    static final class Hit {
+
+        final UUID source;
+        final double damage;
+        final long timestamp;
+
+        Hit(UUID source, double damage, long timestamp) {
+            this.source = source;
+            this.damage = damage;
+            this.timestamp = timestamp;
+        }
+
+    }
+
+}
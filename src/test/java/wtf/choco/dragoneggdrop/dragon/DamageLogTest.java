@@ -0,0 +1,270 @@
+package wtf.choco.dragoneggdrop.dragon;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DamageLogTest {
+
+    @Test
+    public void testBoundedWrapAround() {
+        DamageLog log = new DamageLog(5);
+        Deque<long[]> model = new ArrayDeque<>();
+
+        // Evicted as by DamageHistory, such that the ring buffer wraps around several times
+        for (int hit = 0; hit < 23; hit++) {
+            if (log.isFull()) {
+                log.removeOldest();
+                model.removeFirst();
+            }
+
+            append(log, model, hit);
+            assertMatchesModel(log, model);
+        }
+
+        Assert.assertEquals(5 * DamageLog.ROW_BYTES, log.getAllocatedBytes());
+    }
+
+    @Test
+    public void testBoundedGrowth() {
+        DamageLog log = new DamageLog(20);
+        Deque<long[]> model = new ArrayDeque<>();
+
+        // Capacity grows to the maximum size rather than beyond it
+        for (int hit = 0; hit < 40; hit++) {
+            if (log.isFull()) {
+                log.removeOldest();
+                model.removeFirst();
+            }
+
+            append(log, model, hit);
+            assertMatchesModel(log, model);
+            Assert.assertTrue(log.getAllocatedBytes() <= 20 * DamageLog.ROW_BYTES);
+        }
+    }
+
+    @Test
+    public void testGrowWhileWrapped() {
+        DamageLog log = new DamageLog(-1);
+        Deque<long[]> model = new ArrayDeque<>();
+        int hit = 0;
+
+        // Fill the initial capacity, then remove the oldest rows such that appending wraps around to row 0
+        while (hit < 16) {
+            append(log, model, hit++);
+        }
+
+        for (int i = 0; i < 5; i++) {
+            log.removeOldest();
+            model.removeFirst();
+        }
+
+        while (hit < 21) {
+            append(log, model, hit++);
+            assertMatchesModel(log, model);
+        }
+
+        // The log is full while its oldest row is in the middle, so growing must copy both slices in order
+        Assert.assertEquals(16 * DamageLog.ROW_BYTES, log.getAllocatedBytes());
+        append(log, model, hit++);
+        Assert.assertEquals(32 * DamageLog.ROW_BYTES, log.getAllocatedBytes());
+        assertMatchesModel(log, model);
+
+        while (hit < 100) {
+            append(log, model, hit++);
+        }
+
+        assertMatchesModel(log, model);
+    }
+
+    @Test
+    public void testTrimThenAppend() {
+        DamageLog log = new DamageLog(-1);
+        Deque<long[]> model = new ArrayDeque<>();
+
+        for (int hit = 0; hit < 10; hit++) {
+            append(log, model, hit);
+        }
+
+        for (int i = 0; i < 3; i++) {
+            log.removeOldest();
+            model.removeFirst();
+        }
+
+        log.trim();
+        Assert.assertEquals(7 * DamageLog.ROW_BYTES, log.getAllocatedBytes());
+        assertMatchesModel(log, model);
+
+        // A trimmed log is full, and grows again once appended to
+        for (int hit = 10; hit < 30; hit++) {
+            append(log, model, hit);
+            assertMatchesModel(log, model);
+        }
+
+        log.trim();
+        Assert.assertEquals(model.size() * DamageLog.ROW_BYTES, log.getAllocatedBytes());
+        assertMatchesModel(log, model);
+    }
+
+    @Test
+    public void testEmpty() {
+        DamageLog log = new DamageLog(-1);
+        Deque<long[]> model = new ArrayDeque<>();
+
+        log.removeOldest();
+        log.trim();
+        Assert.assertEquals(0, log.getAllocatedBytes());
+        assertMatchesModel(log, model);
+
+        for (int hit = 0; hit < 4; hit++) {
+            append(log, model, hit);
+        }
+
+        // Trimming an emptied log releases all of its rows, after which it may still be appended to
+        log.clear();
+        model.clear();
+        assertMatchesModel(log, model);
+
+        log.trim();
+        Assert.assertEquals(0, log.getAllocatedBytes());
+
+        append(log, model, 4);
+        assertMatchesModel(log, model);
+
+        DamageLog disabled = new DamageLog(0);
+        Assert.assertTrue(disabled.isFull());
+        Assert.assertEquals(0, disabled.getMaxSize());
+        Assert.assertEquals(-1, log.getMaxSize());
+    }
+
+    @Test
+    public void testExportWrapped() {
+        DamageLog log = new DamageLog(8);
+        Deque<long[]> model = new ArrayDeque<>();
+
+        for (int hit = 0; hit < 13; hit++) {
+            if (log.isFull()) {
+                log.removeOldest();
+                model.removeFirst();
+            }
+
+            append(log, model, hit);
+        }
+
+        // The oldest row is in the middle of the buffer. Rows are exported after the destination's position, regardless of its byte order
+        ByteBuffer destination = ByteBuffer.allocate(10 + (8 * DamageLog.ROW_BYTES) + 3).order(ByteOrder.LITTLE_ENDIAN);
+        destination.position(10);
+
+        Assert.assertEquals(8, log.export(destination));
+        Assert.assertEquals(10 + (8 * DamageLog.ROW_BYTES), destination.position());
+
+        destination.flip().position(10);
+        assertExportMatchesModel(destination.slice(), model);
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(0, destination.get(i));
+        }
+    }
+
+    @Test
+    public void testExportEmpty() {
+        DamageLog log = new DamageLog(-1);
+
+        ByteBuffer destination = ByteBuffer.allocate(0);
+        Assert.assertEquals(0, log.export(destination));
+        Assert.assertEquals(0, destination.position());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testExportInsufficientSpace() {
+        DamageLog log = new DamageLog(-1);
+        Deque<long[]> model = new ArrayDeque<>();
+
+        for (int hit = 0; hit < 3; hit++) {
+            append(log, model, hit);
+        }
+
+        log.export(ByteBuffer.allocate((3 * DamageLog.ROW_BYTES) - 1));
+    }
+
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(0);
+
+        for (int maxSize : new int[] { -1, 1, 3, 16, 17, 50 }) {
+            DamageLog log = new DamageLog(maxSize);
+            Deque<long[]> model = new ArrayDeque<>();
+
+            for (int hit = 0; hit < 2_000; hit++) {
+                int operation = random.nextInt(20);
+
+                if (operation == 0) {
+                    log.trim();
+                } else if (operation < 4) {
+                    log.removeOldest();
+                    model.pollFirst();
+                } else {
+                    if (log.isFull()) {
+                        log.removeOldest();
+                        model.removeFirst();
+                    }
+
+                    append(log, model, hit);
+                }
+
+                assertMatchesModel(log, model);
+            }
+        }
+    }
+
+    private static void append(DamageLog log, Deque<long[]> model, int hit) {
+        long[] row = { 1_000L + hit, hit * 31L, ~hit, Double.doubleToLongBits(hit * 0.5) };
+        log.append(row[0], row[1], row[2], hit * 0.5);
+        model.addLast(row);
+    }
+
+    // The cursor must iterate from oldest to most recent, and offsets must count from the most recent
+    private static void assertMatchesModel(DamageLog log, Deque<long[]> model) {
+        Assert.assertEquals(model.size(), log.size());
+
+        List<long[]> rows = new ArrayList<>(model);
+        DamageLog.Cursor cursor = log.cursor();
+
+        for (long[] row : rows) {
+            Assert.assertTrue(cursor.next());
+            Assert.assertArrayEquals(row, new long[] { cursor.getTimestamp(), cursor.getSourceMostBits(), cursor.getSourceLeastBits(), Double.doubleToLongBits(cursor.getDamage()) });
+        }
+
+        Assert.assertFalse(cursor.next());
+
+        for (int offset = 0; offset < rows.size(); offset++) {
+            long[] row = rows.get(rows.size() - 1 - offset);
+            Assert.assertArrayEquals(row, new long[] { log.getTimestamp(offset), log.getMostBits(offset), log.getLeastBits(offset), Double.doubleToLongBits(log.getDamage(offset)) });
+        }
+
+        ByteBuffer export = ByteBuffer.allocate(log.size() * DamageLog.ROW_BYTES);
+        Assert.assertEquals(model.size(), log.export(export));
+        Assert.assertFalse(export.hasRemaining());
+
+        export.flip();
+        assertExportMatchesModel(export, model);
+    }
+
+    // Exported rows must be ordered from oldest to most recent, each holding big-endian values
+    private static void assertExportMatchesModel(ByteBuffer export, Deque<long[]> model) {
+        export.order(ByteOrder.BIG_ENDIAN);
+        Assert.assertEquals(model.size() * DamageLog.ROW_BYTES, export.remaining());
+
+        for (long[] row : model) {
+            Assert.assertArrayEquals(row, new long[] { export.getLong(), export.getLong(), export.getLong(), Double.doubleToLongBits(export.getDouble()) });
+        }
+    }
+
+}
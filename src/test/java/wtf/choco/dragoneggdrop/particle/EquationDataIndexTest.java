@@ -0,0 +1,202 @@
+package wtf.choco.dragoneggdrop.particle;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.bukkit.World;
+import org.junit.Assert;
+import org.junit.Test;
+
+import wtf.choco.dragoneggdrop.particle.condition.ConditionContext;
+import wtf.choco.dragoneggdrop.particle.condition.EquationCondition;
+import wtf.choco.dragoneggdrop.particle.condition.EquationConditionAlwaysTrue;
+import wtf.choco.dragoneggdrop.particle.condition.EquationConditionDoubleComparison;
+import wtf.choco.dragoneggdrop.particle.condition.EquationConditionDoubleComparison.Comparison;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionUtils;
+
+public class EquationDataIndexTest {
+
+    private static final World WORLD = (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[] { World.class }, (proxy, method, args) -> null);
+
+    private static final double[] COMPARED_VALUES = { -1, -0.0, 0, 0.5, 1, 2, Double.NaN };
+
+    private static final double[] TESTED_VALUES;
+
+    static {
+        List<Double> values = new ArrayList<>();
+        for (double value : COMPARED_VALUES) {
+            values.add(value);
+            values.add(Math.nextUp(value));
+            values.add(Math.nextDown(value));
+        }
+
+        values.addAll(Arrays.asList(-5.0, 0.25, 1.5, 10.0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, -Double.MAX_VALUE, Double.MAX_VALUE));
+
+        TESTED_VALUES = values.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    @Test
+    public void testOverlappingRegions() {
+        ConditionalEquationData aboveOne = create(compare(ParticleVariable.Y, 1, Comparison.GREATER_THAN));
+        ConditionalEquationData aboveZero = create(compare(ParticleVariable.Y, 0, Comparison.GREATER_THAN));
+        ConditionalEquationData belowTwo = create(compare(ParticleVariable.Y, 2, Comparison.LESS_THAN));
+        List<ConditionalEquationData> equationData = Arrays.asList(aboveOne, aboveZero, belowTwo);
+
+        // The first equation data whose conditions are met is selected, even where later equation data is also met
+        Assert.assertSame(aboveOne, select(equationData, 0, 3, 0));
+        Assert.assertSame(aboveOne, select(equationData, 0, 1.5, 0));
+        Assert.assertSame(aboveZero, select(equationData, 0, 1, 0));
+        Assert.assertSame(aboveZero, select(equationData, 0, 0.5, 0));
+        Assert.assertSame(belowTwo, select(equationData, 0, 0, 0));
+        Assert.assertSame(belowTwo, select(equationData, 0, -10, 0));
+        Assert.assertNull(select(equationData, 0, Double.NaN, 0));
+
+        assertMatchesLinearScan(equationData, 0, 0);
+    }
+
+    @Test
+    public void testOpenBounds() {
+        ConditionalEquationData below = create(compare(ParticleVariable.T, -1, Comparison.LESS_THAN));
+        ConditionalEquationData above = create(compare(ParticleVariable.T, 1, Comparison.GREATER_THAN));
+        ConditionalEquationData exact = create(compare(ParticleVariable.T, 0, Comparison.EQUAL_TO));
+        List<ConditionalEquationData> equationData = Arrays.asList(below, above, exact);
+
+        Assert.assertSame(below, select(equationData, 0, 0, Double.NEGATIVE_INFINITY));
+        Assert.assertSame(below, select(equationData, 0, 0, Math.nextDown(-1)));
+        Assert.assertNull(select(equationData, 0, 0, -1));
+        Assert.assertNull(select(equationData, 0, 0, -0.5));
+        Assert.assertSame(exact, select(equationData, 0, 0, 0));
+        Assert.assertSame(exact, select(equationData, 0, 0, -0.0));
+        Assert.assertNull(select(equationData, 0, 0, 1));
+        Assert.assertSame(above, select(equationData, 0, 0, Math.nextUp(1)));
+        Assert.assertSame(above, select(equationData, 0, 0, Double.POSITIVE_INFINITY));
+
+        assertMatchesLinearScan(equationData, 0, 0);
+    }
+
+    @Test
+    public void testFirstMatchOrder() {
+        ConditionalEquationData residual = create(compare(ParticleVariable.Y, 0, Comparison.GREATER_THAN), compare(ParticleVariable.THETA, 90, Comparison.LESS_THAN));
+        ConditionalEquationData unconditional = create();
+        ConditionalEquationData unreachable = create(compare(ParticleVariable.Y, 0, Comparison.GREATER_THAN));
+        List<ConditionalEquationData> equationData = Arrays.asList(residual, unconditional, unreachable);
+
+        Assert.assertSame(residual, select(equationData, 45, 1, 0));
+        Assert.assertSame(unconditional, select(equationData, 135, 1, 0));
+        Assert.assertSame(unconditional, select(equationData, 45, -1, 0));
+
+        assertMatchesLinearScan(equationData, 0, 0);
+    }
+
+    @Test
+    public void testSessionConditionsPruned() {
+        ConditionalEquationData wrongX = create(compare(ParticleVariable.X, 5, Comparison.GREATER_THAN));
+        ConditionalEquationData rightZ = create(compare(ParticleVariable.Z, 5, Comparison.LESS_THAN), compare(ParticleVariable.Y, 0, Comparison.GREATER_THAN));
+
+        EquationDataIndex index = new EquationDataIndex(Arrays.asList(wrongX, rightZ), createContext(0, 0, 0, 0, 0));
+        Assert.assertFalse(index.isEmpty());
+
+        EquationDataIndex prunedIndex = new EquationDataIndex(Arrays.asList(wrongX), createContext(0, 0, 0, 0, 0));
+        Assert.assertTrue(prunedIndex.isEmpty());
+
+        assertMatchesLinearScan(Arrays.asList(wrongX, rightZ), 0, 0);
+        assertMatchesLinearScan(Arrays.asList(wrongX, rightZ), 10, 0);
+    }
+
+    @Test
+    public void testRandomEquationData() {
+        Random random = new Random(0);
+
+        for (int i = 0; i < 150; i++) {
+            List<ConditionalEquationData> equationData = new ArrayList<>();
+            int equationDataCount = 1 + random.nextInt(6);
+
+            for (int j = 0; j < equationDataCount; j++) {
+                ConditionalEquationData data = create();
+
+                int conditionCount = random.nextInt(4);
+                for (int k = 0; k < conditionCount; k++) {
+                    data.addCondition(createRandomCondition(random));
+                }
+
+                equationData.add(data);
+            }
+
+            assertMatchesLinearScan(equationData, COMPARED_VALUES[random.nextInt(COMPARED_VALUES.length - 1)], COMPARED_VALUES[random.nextInt(COMPARED_VALUES.length - 1)]);
+        }
+    }
+
+    private static EquationCondition createRandomCondition(Random random) {
+        int type = random.nextInt(10);
+        double value = COMPARED_VALUES[random.nextInt(COMPARED_VALUES.length)];
+        Comparison comparison = Comparison.values()[random.nextInt(Comparison.values().length)];
+
+        if (type == 0) {
+            return EquationConditionAlwaysTrue.INSTANCE;
+        } else if (type == 1) { // Not indexable, compares an arbitrary value
+            return new EquationConditionDoubleComparison(context -> context.getVariables().getT(), value, comparison);
+        } else if (type == 2) {
+            return compare(random.nextBoolean() ? ParticleVariable.X : ParticleVariable.Z, value, comparison);
+        }
+
+        ParticleVariable[] frameVariables = { ParticleVariable.Y, ParticleVariable.T, ParticleVariable.THETA };
+        return compare(frameVariables[random.nextInt(frameVariables.length)], value, comparison);
+    }
+
+    // Every combination of tested values must select the same equation data as a linear scan, whether or not the region of the previous combination is passed as a hint
+    private static void assertMatchesLinearScan(List<ConditionalEquationData> equationData, double x, double z) {
+        EquationDataIndex index = new EquationDataIndex(equationData, createContext(x, 0, z, 0, 0));
+        int hint = -1;
+
+        for (double y : TESTED_VALUES) {
+            for (double t : TESTED_VALUES) {
+                for (double theta : TESTED_VALUES) {
+                    ParticleVariables variables = new ParticleVariables(x, y, z, t, theta);
+                    ConditionContext context = new ConditionContext(variables, WORLD);
+
+                    ConditionalEquationData expected = null;
+                    for (ConditionalEquationData data : equationData) {
+                        if (data.isMet(context)) {
+                            expected = data;
+                            break;
+                        }
+                    }
+
+                    int region = index.findRegion(variables, -1);
+                    Assert.assertSame("y = " + y + ", t = " + t + ", theta = " + theta, expected, index.select(region, context));
+
+                    hint = index.findRegion(variables, hint);
+                    Assert.assertEquals(region, hint);
+                }
+            }
+        }
+    }
+
+    private static ConditionalEquationData select(List<ConditionalEquationData> equationData, double theta, double y, double t) {
+        ParticleVariables variables = new ParticleVariables(0, y, 0, t, theta);
+        ConditionContext context = new ConditionContext(variables, WORLD);
+        EquationDataIndex index = new EquationDataIndex(equationData, context);
+        return index.select(index.findRegion(variables, -1), context);
+    }
+
+    private static ConditionalEquationData create(EquationCondition... conditions) {
+        ConditionalEquationData data = new ConditionalEquationData(ExpressionUtils.parseTree("0"), ExpressionUtils.parseTree("0"));
+        for (EquationCondition condition : conditions) {
+            data.addCondition(condition);
+        }
+
+        return data;
+    }
+
+    private static EquationCondition compare(ParticleVariable variable, double value, Comparison comparison) {
+        return new EquationConditionDoubleComparison(variable, value, comparison);
+    }
+
+    private static ConditionContext createContext(double x, double y, double z, double t, double theta) {
+        return new ConditionContext(new ParticleVariables(x, y, z, t, theta), WORLD);
+    }
+
+}
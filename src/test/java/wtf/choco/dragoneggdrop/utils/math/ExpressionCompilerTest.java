@@ -0,0 +1,227 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import wtf.choco.dragoneggdrop.particle.ParticleVariable;
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+
+/*
+ * Compares expressions compiled by the ExpressionCompiler against the interpreted expression
+ * trees from which they were compiled. Results must be identical to the bit, including NaN
+ * and signed zeroes, for every evaluation path (single, batch and pair).
+ */
+@RunWith(Parameterized.class)
+public class ExpressionCompilerTest {
+
+    private static final String[] BUILT_IN_FUNCTIONS = {
+        "sqrt", "abs", "log", "sin", "cos", "tan", "csc", "sec", "cot", "rad", "deg"
+    };
+
+    // An impure function returning a different value on every call, such that the amount and order of calls is observable
+    private static final AtomicInteger IMPURE_CALLS = new AtomicInteger();
+
+    static {
+        ExpressionUtils.injectMathematicalOperator("impure", x -> x + IMPURE_CALLS.incrementAndGet(), false);
+    }
+
+    private static final double[][] VARIABLES = {
+        // x, y, z, t. Every slot holds a distinct value (as does theta) such that reading the wrong slot is observable
+        { 1.5, -2.25, 3.75, 7 },
+        { -4, 0.5, -0.125, 0 },
+        { 0, -0.0, 0.25, 1 },
+        { 1.0E9, -1.0E-9, 12345.678, 20000 },
+        { -1, 2, Double.MAX_VALUE, Double.MIN_VALUE }
+    };
+
+    private static final double[] THETA = {
+        0, -0.0, 1, 45, 90, 180, 270, 359.9, 360, -720.5, 1.0E9, -1.0E-300, Double.NaN
+    };
+
+    // Shares subexpressions with most of the parameterised expressions, evaluated alongside them as a pair
+    private static final String PAIR_EXPRESSION = "cos(theta) * x + (x + theta) / sin(t * 2) + (x + theta)";
+
+    private final String expression;
+    private final MathMode mode;
+
+    public ExpressionCompilerTest(String expression, MathMode mode) {
+        this.expression = expression;
+        this.mode = mode;
+    }
+
+    @Parameters(name = "{0} ({1})")
+    public static Collection<Object[]> parameters() {
+        List<String> expressions = new ArrayList<>();
+
+        // Constants and every variable slot
+        expressions.add("2.5");
+        for (ParticleVariable variable : ParticleVariable.values()) {
+            if (variable.getSlot() >= 0) {
+                expressions.add(variable.getName());
+                expressions.add("-" + variable.getName());
+            }
+        }
+
+        // Every operator
+        expressions.add("x + y - z");
+        expressions.add("x * theta / t");
+        expressions.add("x ^ 2 + z ^ y + theta ^ 0.5");
+        expressions.add("-(x * y) - -z");
+        expressions.add("1 / (theta - theta)");
+        expressions.add("0 * -theta");
+
+        // Every built-in function, with deterministic, theta-dependent and constant arguments
+        for (String function : BUILT_IN_FUNCTIONS) {
+            Assert.assertNotNull("Missing built-in function " + function, ExpressionUtils.getMathematicalOperator(function));
+
+            expressions.add(function + "(x * t + y)");
+            expressions.add(function + "(theta * z - t)");
+            expressions.add(function + "(45)");
+        }
+
+        // Hoisting of deterministic subexpressions not referencing theta out of the batch loop
+        expressions.add("sin(t * 2) * theta + sqrt(x * x + z * z)");
+        expressions.add("theta * (y - 3) * (y - 3) + abs(y - 3)");
+
+        // Temporaries for repeated subexpressions, nested temporaries and fused sine and cosine
+        expressions.add("(x + theta) * (x + theta) + sin(theta) * cos(theta)");
+        expressions.add("sin(theta * t) + cos(theta * t) + (theta * t) ^ 2 - sin(theta * t)");
+        expressions.add("sqrt(abs(theta * y)) + sqrt(abs(theta * y)) * abs(theta * y)");
+        expressions.add("cos(x + theta) * sin(x + theta) + cos(x) * sin(x) + cos(theta)");
+
+        // Impure functions are neither hoisted nor shared
+        expressions.add("impure(x) + impure(x) * impure(theta)");
+        expressions.add("impure(t * 2) * theta + sin(impure(theta)) * cos(impure(theta))");
+
+        List<Object[]> parameters = new ArrayList<>();
+        for (String expression : expressions) {
+            for (MathMode mode : MathMode.values()) {
+                parameters.add(new Object[] { expression, mode });
+            }
+        }
+
+        return parameters;
+    }
+
+    @Test
+    public void testEvaluate() {
+        ExpressionNode tree = parse(expression);
+        CompiledExpression compiled = ExpressionCompiler.compile(tree);
+
+        for (double[] values : VARIABLES) {
+            for (double theta : THETA) {
+                IMPURE_CALLS.set(0);
+                double expected = tree.evaluate(createVariables(values, theta));
+
+                IMPURE_CALLS.set(0);
+                double actual = compiled.evaluate(createVariables(values, theta));
+
+                assertIdentical(expression + " with theta = " + theta, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void testEvaluateBatch() {
+        ExpressionNode tree = parse(expression);
+        CompiledExpression compiled = ExpressionCompiler.compile(tree);
+
+        for (double[] values : VARIABLES) {
+            double[] expected = new double[THETA.length];
+            ParticleVariables interpretedVariables = createVariables(values, 0);
+
+            IMPURE_CALLS.set(0);
+            for (int i = 0; i < THETA.length; i++) {
+                interpretedVariables.setTheta(THETA[i]);
+                expected[i] = tree.evaluate(interpretedVariables);
+            }
+
+            double[] actual = new double[THETA.length];
+
+            IMPURE_CALLS.set(0);
+            compiled.evaluate(createVariables(values, 0), THETA, actual, THETA.length);
+
+            for (int i = 0; i < THETA.length; i++) {
+                assertIdentical(expression + " with theta = " + THETA[i], expected[i], actual[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testEvaluateBatchPartial() {
+        CompiledExpression compiled = ExpressionCompiler.compile(parse(expression));
+
+        double[] out = { 1, 2, 3 };
+        compiled.evaluate(createVariables(VARIABLES[0], 0), THETA, out, 0);
+        Assert.assertArrayEquals("Nothing may be written for a count of 0", new double[] { 1, 2, 3 }, out, 0.0);
+    }
+
+    @Test
+    public void testEvaluatePair() {
+        ExpressionNode first = parse(expression), second = parse(PAIR_EXPRESSION);
+        CompiledExpressionPair compiled = ExpressionCompiler.compilePair(first, second);
+
+        for (double[] values : VARIABLES) {
+            double[] expectedFirst = new double[THETA.length], expectedSecond = new double[THETA.length];
+            ParticleVariables interpretedVariables = createVariables(values, 0);
+
+            // The first and then the second expression of each theta value in turn
+            IMPURE_CALLS.set(0);
+            for (int i = 0; i < THETA.length; i++) {
+                interpretedVariables.setTheta(THETA[i]);
+                expectedFirst[i] = first.evaluate(interpretedVariables);
+                expectedSecond[i] = second.evaluate(interpretedVariables);
+            }
+
+            double[] actualFirst = new double[THETA.length], actualSecond = new double[THETA.length];
+
+            IMPURE_CALLS.set(0);
+            compiled.evaluate(createVariables(values, 0), THETA, actualFirst, actualSecond, THETA.length);
+
+            for (int i = 0; i < THETA.length; i++) {
+                assertIdentical(expression + " with theta = " + THETA[i], expectedFirst[i], actualFirst[i]);
+                assertIdentical(PAIR_EXPRESSION + " with theta = " + THETA[i], expectedSecond[i], actualSecond[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testUnoptimizedTree() {
+        // The compiler must not rely on the optimizer having run
+        ExpressionNode tree = ExpressionUtils.parseTree(expression);
+        CompiledExpression compiled = ExpressionCompiler.compile(tree);
+
+        for (double[] values : VARIABLES) {
+            IMPURE_CALLS.set(0);
+            double expected = tree.evaluate(createVariables(values, 60));
+
+            IMPURE_CALLS.set(0);
+            double actual = compiled.evaluate(createVariables(values, 60));
+
+            assertIdentical(expression, expected, actual);
+        }
+    }
+
+    private ExpressionNode parse(String expression) {
+        return ExpressionOptimizer.optimize(ExpressionUtils.parseTree(expression), mode);
+    }
+
+    private static ParticleVariables createVariables(double[] values, double theta) {
+        return new ParticleVariables(values[0], values[1], values[2], values[3], theta);
+    }
+
+    private static void assertIdentical(String message, double expected, double actual) {
+        if (Double.doubleToLongBits(expected) != Double.doubleToLongBits(actual)) {
+            Assert.fail(message + ": expected " + expected + " but was " + actual);
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import wtf.choco.dragoneggdrop.particle.ParticleVariable;
+import wtf.choco.dragoneggdrop.particle.ParticleVariables;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Binary;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Constant;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Function;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Negate;
+import wtf.choco.dragoneggdrop.utils.math.ExpressionNode.Variable;
+
+public class ExpressionOptimizerTest {
+
+    private static final String[] EXPRESSIONS = {
+        // Constant folding
+        "sqrt(2) * 3 + x", "-0 + x", "-(0) * x", "0 / 0 + x", "log(0) * x", "(-0) ^ -1 + x",
+
+        // Identities of every operator, with positive and negative zero on either side
+        "x + 0", "0 + x", "x + -0", "-0 + x", "x + (0 - 0)",
+        "x - 0", "0 - x", "x - -0", "-0 - x",
+        "x * 1", "1 * x", "x * -1", "-1 * x", "x * 0", "0 * x", "x * -0",
+        "x / 1", "x / -1", "1 / x", "0 / x", "x / -0",
+        "x ^ 1", "x ^ 0", "x ^ -0", "1 ^ x", "0 ^ x",
+
+        // Negations
+        "--x", "---x", "-(-(x * y))", "-0 - -x",
+
+        // Nested and mixed
+        "(x - 0) * (1 * y) + (z / 1) ^ 1", "sin(x) * (y + 0) - cos(0) * x", "abs(-x) + -(-0 * y)"
+    };
+
+    private static final String[] RANDOM_EXPRESSIONS = {
+        "random", "random ^ 0", "random * 0", "0 * random", "random * 1 + -(-random)", "(random + 0) ^ 0 + x",
+        "sin(random) * cos(random)", "sqrt(4) * random ^ 1"
+    };
+
+    // Each is 0 if all references to random read the same value
+    private static final String[] SHARED_RANDOM_EXPRESSIONS = {
+        "random - random", "random * 1 - (random - 0)", "sin(random) - sin(random)", "cos(random * 2) - cos(random * 2)"
+    };
+
+    private static final double[] VALUES = {
+        0, -0.0, 1, -1, 0.5, -2.5, 90, 1.0E300, -1.0E-300, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY
+    };
+
+    @Test
+    public void testPreservesResults() {
+        for (String expression : EXPRESSIONS) {
+            ExpressionNode tree = ExpressionUtils.parseTree(expression);
+            ExpressionNode optimized = ExpressionOptimizer.optimize(tree);
+
+            for (double x : VALUES) {
+                for (double y : VALUES) {
+                    ParticleVariables variables = new ParticleVariables(x, y, -y, 0, 0);
+                    double expected = tree.evaluate(variables), actual = optimized.evaluate(variables);
+
+                    if (Double.doubleToLongBits(expected) != Double.doubleToLongBits(actual)) {
+                        Assert.fail(expression + " optimized to " + optimized + " with x = " + x + ", y = " + y + ": expected " + expected + " but was " + actual);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConstantsFolded() {
+        for (String expression : EXPRESSIONS) {
+            assertFolded(expression, ExpressionOptimizer.optimize(ExpressionUtils.parseTree(expression)));
+        }
+
+        Assert.assertTrue(ExpressionOptimizer.optimize(ExpressionUtils.parseTree("sqrt(16) * 3 - -(2 ^ 3)")) instanceof Constant);
+        Assert.assertSame(ParticleVariable.X, ((Variable) ExpressionOptimizer.optimize(ExpressionUtils.parseTree("--(x * 1) / 1 - 0"))).getVariable());
+    }
+
+    @Test
+    public void testRandomNeverFolded() {
+        for (String expression : RANDOM_EXPRESSIONS) {
+            ExpressionNode tree = ExpressionUtils.parseTree(expression);
+
+            for (MathMode mode : MathMode.values()) {
+                ExpressionNode optimized = ExpressionOptimizer.optimize(tree, mode);
+
+                Assert.assertEquals(expression + " optimized to " + optimized, tree.countReferences(ParticleVariable.RANDOM), optimized.countReferences(ParticleVariable.RANDOM));
+                Assert.assertFalse(expression + " optimized to " + optimized, optimized.isDeterministic());
+            }
+        }
+    }
+
+    @Test
+    public void testRandomNeverShared() {
+        for (String expression : SHARED_RANDOM_EXPRESSIONS) {
+            for (MathMode mode : MathMode.values()) {
+                ExpressionNode optimized = ExpressionOptimizer.optimize(ExpressionUtils.parseTree(expression), mode);
+
+                Assert.assertTrue(expression + " shares random values", readsDistinctValues(optimized));
+                Assert.assertTrue(expression + " shares random values once compiled", readsDistinctValues(ExpressionCompiler.compile(optimized)));
+            }
+        }
+    }
+
+    private static boolean readsDistinctValues(MathExpression expression) {
+        ParticleVariables variables = new ParticleVariables(1, 2, 3, 4, 5);
+
+        for (int i = 0; i < 100; i++) {
+            if (expression.evaluate(variables) != 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Every subtree left without variables must have been folded into a single constant
+    private static void assertFolded(String expression, ExpressionNode node) {
+        if (node instanceof Constant || node instanceof Variable) {
+            return;
+        }
+
+        boolean hasVariables = false;
+        for (ParticleVariable variable : ParticleVariable.values()) {
+            hasVariables |= node.references(variable);
+        }
+
+        Assert.assertTrue(node + " in " + expression + " was not folded", hasVariables);
+
+        if (node instanceof Negate) {
+            assertFolded(expression, ((Negate) node).getOperand());
+        } else if (node instanceof Binary) {
+            assertFolded(expression, ((Binary) node).getLeft());
+            assertFolded(expression, ((Binary) node).getRight());
+        } else if (node instanceof Function) {
+            assertFolded(expression, ((Function) node).getArgument());
+        }
+    }
+
+}
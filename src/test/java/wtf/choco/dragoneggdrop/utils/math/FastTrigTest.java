@@ -0,0 +1,85 @@
+package wtf.choco.dragoneggdrop.utils.math;
+
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FastTrigTest {
+
+    private static final double[] EDGE_CASES = {
+        0, -0.0, Double.MIN_VALUE, -Double.MIN_VALUE, -1.0E-300, 1.0E-12, -1.0E-12,
+        90, 180, 270, 360, -90, -180, -270, -360, 359.9999999999, -359.9999999999, 360.0000000001,
+        Math.nextDown(360.0), Math.nextUp(-360.0), 1.0E15 + 0.5, -1.0E15 - 0.5,
+        Double.MAX_VALUE, -Double.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE
+    };
+
+    @Test
+    public void testSweep() {
+        // Steps of 0.001 degrees across three turns in either direction, offset such that samples fall between table entries
+        for (int i = -1_080_000; i <= 1_080_000; i++) {
+            assertWithinBound(i * 0.001 + 0.0003);
+        }
+    }
+
+    @Test
+    public void testLargeAndNegativeAngles() {
+        Random random = new Random(0);
+
+        for (int magnitude = 3; magnitude <= 18; magnitude++) {
+            double scale = Math.pow(10, magnitude);
+
+            for (int i = 0; i < 10_000; i++) {
+                assertWithinBound(random.nextDouble() * scale);
+                assertWithinBound(-random.nextDouble() * scale);
+            }
+        }
+    }
+
+    @Test
+    public void testEdgeCases() {
+        for (double degrees : EDGE_CASES) {
+            assertWithinBound(degrees);
+        }
+    }
+
+    @Test
+    public void testNonFinite() {
+        for (double degrees : new double[] { Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY }) {
+            Assert.assertTrue(Double.isNaN(FastTrig.sin(degrees)));
+            Assert.assertTrue(Double.isNaN(FastTrig.cos(degrees)));
+            Assert.assertTrue(Double.isNaN(FastTrig.phase(degrees)));
+        }
+    }
+
+    @Test
+    public void testPhase() {
+        Random random = new Random(1);
+
+        // The fused sine and cosine must produce exactly the same values as sin() and cos()
+        for (int i = 0; i < 100_000; i++) {
+            double degrees = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12));
+            double phase = FastTrig.phase(degrees);
+
+            Assert.assertEquals(Double.doubleToLongBits(FastTrig.sin(degrees)), Double.doubleToLongBits(FastTrig.sinPhase(phase)));
+            Assert.assertEquals(Double.doubleToLongBits(FastTrig.cos(degrees)), Double.doubleToLongBits(FastTrig.cosPhase(phase)));
+        }
+    }
+
+    private static void assertWithinBound(double degrees) {
+        // The remainder is exact, whereas converting large angles to radians is not
+        double radians = Math.toRadians(degrees % 360.0);
+
+        double sinError = Math.abs(FastTrig.sin(degrees) - Math.sin(radians));
+        double cosError = Math.abs(FastTrig.cos(degrees) - Math.cos(radians));
+
+        if (!(sinError <= FastTrig.MAX_ERROR)) {
+            Assert.fail("sin(" + degrees + ") is off by " + sinError);
+        }
+
+        if (!(cosError <= FastTrig.MAX_ERROR)) {
+            Assert.fail("cos(" + degrees + ") is off by " + cosError);
+        }
+    }
+
+}